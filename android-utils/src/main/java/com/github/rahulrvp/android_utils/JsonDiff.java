@@ -0,0 +1,455 @@
+package com.github.rahulrvp.android_utils;
+
+import android.util.Log;
+
+import org.json.JSONException;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Structural diff of two {@link JsonTree}s, written with the rendering primitives of a
+ * {@link JsonFormatter} so that the output uses its format, colors and indentation.
+ * <p>
+ * Subtrees with equal hashes are taken as identical and are skipped without looking deeper than
+ * their direct children, see {@link #isSame(int, int)}. A run of unchanged members is written as
+ * a single line with their count, so the size of the output depends on the changes rather than
+ * on the size of the documents. Object members are matched by key. Array elements are matched
+ * in order by their hashes, so an inserted or removed element shows up as a single added or
+ * removed line instead of shifting the rest of the array.
+ * Values that differ are written as a removed line followed by an added line, unless both are
+ * objects or both are arrays, in which case their members are compared in turn.
+ * <p>
+ * Every line starts with a two char prefix: {@code "+ "} for added, {@code "- "} for removed and
+ * two spaces for unchanged lines. Commas are left out.
+ */
+
+class JsonDiff {
+
+    static final char SAME = ' ';
+    static final char ADDED = '+';
+    static final char REMOVED = '-';
+
+    /**
+     * Changed containers nested deeper than this are written as removed and added instead of
+     * being compared, which keeps the recursion of the comparison bounded.
+     */
+    private static final int MAX_COMPARE_DEPTH = 256;
+
+    private final JsonFormatter formatter;
+    private final JsonOutput output;
+    private final JsonTree oldTree;
+    private final JsonTree newTree;
+
+    private JsonDiff(JsonFormatter formatter, JsonOutput output, JsonTree oldTree, JsonTree newTree) {
+        this.formatter = formatter;
+        this.output = output;
+        this.oldTree = oldTree;
+        this.newTree = newTree;
+    }
+
+    /**
+     * Formats the differences between two documents, see
+     * {@link JsonFormatter#formatDiff(String, String)}.
+     *
+     * @return true if both inputs are valid and the differences were written; else the output
+     * is discarded.
+     */
+    static boolean write(JsonFormatter formatter, JsonOutput output, String oldJson, String newJson) {
+        boolean result = false;
+
+        try {
+            JsonTree oldTree = JsonTree.parse(tokenizer(formatter, oldJson));
+            JsonTree newTree = JsonTree.parse(tokenizer(formatter, newJson));
+
+            new JsonDiff(formatter, output, oldTree, newTree).write();
+            formatter.closeStyle(output);
+            result = true;
+        } catch (JSONException e) {
+            Log.e("JsonFormatter", "Input is not a valid JSON. " + e.getMessage());
+        } catch (IOException e) {
+            Log.e("JsonFormatter", "Unable to write the output. " + e.getMessage());
+        }
+
+        if (!result) {
+            output.discard();
+        }
+
+        return result;
+    }
+
+    /**
+     * Strings are compared whole, so the string length limit is applied only when writing.
+     */
+    private static JsonTokenizer tokenizer(JsonFormatter formatter, String json) {
+        JsonTokenizer tokenizer = new JsonTokenizer(json == null ? "" : json, true);
+        tokenizer.setRawStrings(formatter.isRawStrings());
+
+        return tokenizer;
+    }
+
+    private void write() throws IOException {
+        compare(JsonTree.ROOT, JsonTree.ROOT, 0);
+    }
+
+    /**
+     * Writes the difference between a node of the old tree and a node of the new tree. Both
+     * nodes have the same key, if any.
+     */
+    private void compare(int oldNode, int newNode, int level) throws IOException {
+        int type = newTree.getType(newNode);
+
+        if (isSame(oldNode, newNode)) {
+            writeCollapsed(newTree, newNode, SAME, level);
+        } else if (oldTree.getType(oldNode) == type && newTree.isContainer(newNode) && level < MAX_COMPARE_DEPTH) {
+            addLine(SAME, level);
+            addKey(newTree.getKey(newNode));
+            addToken(type, null);
+
+            if (type == JsonTokenizer.BEGIN_OBJECT) {
+                compareMembers(oldNode, newNode, level + 1);
+            } else {
+                compareElements(oldNode, newNode, level + 1);
+            }
+
+            addLine(SAME, level);
+            addToken(closing(type), null);
+        } else {
+            writeSubtree(oldTree, oldNode, REMOVED, level);
+            writeSubtree(newTree, newNode, ADDED, level);
+        }
+
+        output.checkpoint();
+    }
+
+    /**
+     * Checks whether two subtrees are identical by their hashes. A match is confirmed by
+     * comparing the values of scalars, and the child counts and keys of containers, so that a
+     * hash collision between two values, or between two objects with different members, doesn't
+     * hide a change. The descendants of containers are not compared, so a collision deeper in the
+     * subtrees, which takes colliding 64 bit hashes on every level above it, still would.
+     */
+    private boolean isSame(int oldNode, int newNode) {
+        if (oldTree.getHash(oldNode) != newTree.getHash(newNode) || oldTree.getType(oldNode) != newTree.getType(newNode)) {
+            return false;
+        }
+
+        if (!newTree.isContainer(newNode)) {
+            return oldTree.getValue(oldNode).equals(newTree.getValue(newNode));
+        }
+
+        if (oldTree.getChildCount(oldNode) != newTree.getChildCount(newNode)) {
+            return false;
+        }
+
+        if (newTree.getType(newNode) == JsonTokenizer.BEGIN_OBJECT) {
+            Set<String> keys = new HashSet<String>();
+            for (int child = oldTree.getFirstChild(oldNode); child != JsonTree.NONE; child = oldTree.getNextSibling(child)) {
+                keys.add(oldTree.getKey(child));
+            }
+            for (int child = newTree.getFirstChild(newNode); child != JsonTree.NONE; child = newTree.getNextSibling(child)) {
+                if (!keys.contains(newTree.getKey(child))) {
+                    return false;
+                }
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Writes the line for a run of unchanged members, if there is one.
+     *
+     * @return 0, the length of the next run.
+     */
+    private int writeUnchanged(int count, int level) {
+        if (count > 0) {
+            addLine(SAME, level);
+            addUnchanged(count);
+        }
+
+        return 0;
+    }
+
+    /**
+     * Compares the members of two objects by key. Members of the new object that are not in
+     * the old one are written at the end.
+     */
+    private void compareMembers(int oldNode, int newNode, int level) throws IOException {
+        Map<String, Integer> newMembers = new HashMap<String, Integer>();
+        for (int child = newTree.getFirstChild(newNode); child != JsonTree.NONE; child = newTree.getNextSibling(child)) {
+            newMembers.put(newTree.getKey(child), child);
+        }
+
+        int unchanged = 0;
+        for (int child = oldTree.getFirstChild(oldNode); child != JsonTree.NONE; child = oldTree.getNextSibling(child)) {
+            Integer match = newMembers.remove(oldTree.getKey(child));
+            if (match != null && isSame(child, match)) {
+                unchanged++;
+                continue;
+            }
+
+            unchanged = writeUnchanged(unchanged, level);
+            if (match != null) {
+                compare(child, match, level);
+            } else {
+                writeSubtree(oldTree, child, REMOVED, level);
+            }
+        }
+        writeUnchanged(unchanged, level);
+
+        for (int child = newTree.getFirstChild(newNode); child != JsonTree.NONE; child = newTree.getNextSibling(child)) {
+            if (newMembers.containsKey(newTree.getKey(child))) {
+                writeSubtree(newTree, child, ADDED, level);
+            }
+        }
+    }
+
+    /**
+     * Compares the elements of two arrays. Equal elements are matched in order; when the
+     * current elements differ, the one that appears again sooner on the other side decides
+     * whether the elements in between were added or removed. Elements without any match are
+     * compared pairwise.
+     */
+    private void compareElements(int oldNode, int newNode, int level) throws IOException {
+        int[] oldElements = children(oldTree, oldNode);
+        int[] newElements = children(newTree, newNode);
+        long[] oldHashes = hashes(oldTree, oldElements);
+        long[] newHashes = hashes(newTree, newElements);
+
+        Map<Long, int[]> oldPositions = positions(oldHashes);
+        Map<Long, int[]> newPositions = positions(newHashes);
+
+        int i = 0;
+        int j = 0;
+        int unchanged = 0;
+        while (i < oldElements.length && j < newElements.length) {
+            if (isSame(oldElements[i], newElements[j])) {
+                unchanged++;
+                i++;
+                j++;
+                continue;
+            }
+
+            unchanged = writeUnchanged(unchanged, level);
+
+            // the current elements may have equal hashes without being the same, so the search
+            // starts after them
+            int inNew = nextPosition(newPositions, oldHashes[i], j + 1);
+            int inOld = nextPosition(oldPositions, newHashes[j], i + 1);
+
+            if (inNew != -1 && (inOld == -1 || inNew - j <= inOld - i)) {
+                while (j < inNew) {
+                    writeSubtree(newTree, newElements[j++], ADDED, level);
+                }
+            } else if (inOld != -1) {
+                while (i < inOld) {
+                    writeSubtree(oldTree, oldElements[i++], REMOVED, level);
+                }
+            } else {
+                compare(oldElements[i++], newElements[j++], level);
+            }
+        }
+
+        writeUnchanged(unchanged, level);
+
+        while (i < oldElements.length) {
+            writeSubtree(oldTree, oldElements[i++], REMOVED, level);
+        }
+        while (j < newElements.length) {
+            writeSubtree(newTree, newElements[j++], ADDED, level);
+        }
+    }
+
+    /**
+     * Writes an unchanged value on a single line, with objects and arrays collapsed.
+     */
+    private void writeCollapsed(JsonTree tree, int node, char sign, int level) {
+        addLine(sign, level);
+        addKey(tree.getKey(node));
+
+        int type = tree.getType(node);
+        addToken(type, tree.getValue(node));
+        if (tree.isContainer(node)) {
+            addCollapsed(tree.getChildCount(node));
+            addToken(closing(type), null);
+        }
+    }
+
+    /**
+     * Writes a whole added or removed subtree, every line with the given sign. Uses an explicit
+     * stack, so the depth of the subtree doesn't matter.
+     */
+    private void writeSubtree(JsonTree tree, int root, char sign, int level) throws IOException {
+        int[] stack = new int[16];
+        int depth = 0;
+
+        int node = root;
+        while (true) {
+            addLine(sign, level + depth);
+            addKey(tree.getKey(node));
+
+            int type = tree.getType(node);
+            addToken(type, tree.getValue(node));
+            output.checkpoint();
+
+            if (tree.isContainer(node) && tree.getChildCount(node) > 0) {
+                if (depth == stack.length) {
+                    int[] newStack = new int[depth * 2];
+                    System.arraycopy(stack, 0, newStack, 0, depth);
+                    stack = newStack;
+                }
+                stack[depth++] = node;
+                node = tree.getFirstChild(node);
+                continue;
+            }
+
+            if (tree.isContainer(node)) {
+                addToken(closing(type), null);
+            }
+
+            // close the containers whose last child was just written
+            while (depth > 0 && tree.getNextSibling(node) == JsonTree.NONE) {
+                node = stack[--depth];
+                addLine(sign, level + depth);
+                addToken(closing(tree.getType(node)), null);
+            }
+
+            if (depth == 0) {
+                break;
+            }
+            node = tree.getNextSibling(node);
+        }
+    }
+
+    /**
+     * Starts a line. Lines are always separated, also for {@link JsonFormatter#COMPACT} output.
+     *
+     * @param sign one of {@link #SAME}, {@link #ADDED} or {@link #REMOVED}.
+     */
+    private void addLine(char sign, int level) {
+        if (output.size() > 0) {
+            output.append(formatter.getLineBreak());
+        }
+
+        boolean html = formatter.isHtml();
+        if (sign == SAME) {
+            output.append(html ? "&nbsp;&nbsp;" : "  ");
+        } else {
+            int colorRole = sign == ADDED ? JsonFormatter.COLOR_ADDED : JsonFormatter.COLOR_REMOVED;
+            int start = formatter.openToken(output, colorRole);
+            output.append(sign);
+            formatter.closeToken(output, colorRole, start);
+            output.append(html ? "&nbsp;" : " ");
+        }
+
+        formatter.addIndent(output, level);
+    }
+
+    private void addKey(String key) {
+        if (key != null) {
+            formatter.addKey(output, key);
+        }
+    }
+
+    /**
+     * Adds a value, or an opening or closing bracket.
+     */
+    private void addToken(int token, String value) {
+        formatter.addToken(output, token, value);
+    }
+
+    /**
+     * Adds the marker for the members of an unchanged object or array.
+     */
+    private void addCollapsed(int count) {
+        if (count > 0) {
+            formatter.addItemsMarker(output, count);
+        }
+    }
+
+    /**
+     * Adds the marker for a run of unchanged members.
+     */
+    private void addUnchanged(int count) {
+        formatter.addMarker(output, count == 1 ? " 1 unchanged item" : " " + count + " unchanged items");
+    }
+
+    private static int closing(int type) {
+        return type == JsonTokenizer.BEGIN_OBJECT ? JsonTokenizer.END_OBJECT : JsonTokenizer.END_ARRAY;
+    }
+
+    private static int[] children(JsonTree tree, int node) {
+        int[] children = new int[tree.getChildCount(node)];
+
+        int index = 0;
+        for (int child = tree.getFirstChild(node); child != JsonTree.NONE; child = tree.getNextSibling(child)) {
+            children[index++] = child;
+        }
+
+        return children;
+    }
+
+    private static long[] hashes(JsonTree tree, int[] nodes) {
+        long[] hashes = new long[nodes.length];
+        for (int i = 0; i < nodes.length; i++) {
+            hashes[i] = tree.getHash(nodes[i]);
+        }
+
+        return hashes;
+    }
+
+    /**
+     * @return for every distinct hash, the ascending positions where it occurs.
+     */
+    private static Map<Long, int[]> positions(long[] hashes) {
+        Map<Long, int[]> counts = new HashMap<Long, int[]>();
+        for (long hash : hashes) {
+            int[] count = counts.get(hash);
+            if (count == null) {
+                counts.put(hash, new int[]{1});
+            } else {
+                count[0]++;
+            }
+        }
+
+        Map<Long, int[]> positions = new HashMap<Long, int[]>();
+        for (int i = 0; i < hashes.length; i++) {
+            int[] list = positions.get(hashes[i]);
+            if (list == null) {
+                // the first slot holds the number of positions added so far
+                list = new int[counts.get(hashes[i])[0] + 1];
+                positions.put(hashes[i], list);
+            }
+            list[++list[0]] = i;
+        }
+
+        return positions;
+    }
+
+    /**
+     * @return the first position of the hash at or after {@code from}, or -1 if there is none.
+     */
+    private static int nextPosition(Map<Long, int[]> positions, long hash, int from) {
+        int[] list = positions.get(hash);
+        if (list == null) {
+            return -1;
+        }
+
+        int low = 1;
+        int high = list[0] + 1;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (list[mid] < from) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+
+        return low <= list[0] ? list[low] : -1;
+    }
+}
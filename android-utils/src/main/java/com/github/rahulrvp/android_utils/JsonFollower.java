@@ -0,0 +1,281 @@
+package com.github.rahulrvp.android_utils;
+
+import android.util.Log;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+
+/**
+ * Follows a growing file of concatenated JSON documents, like {@code tail -f}: every call of
+ * {@link #poll()} reads only the bytes appended since the previous call, and formats and
+ * delivers the documents they complete.
+ * <p>
+ * Between calls the follower keeps its byte offset in the file, the state of the UTF-8 decoder
+ * and of a small boundary scanner (nesting depth, inside a string or not), and the text of the
+ * document that is not complete yet. Documents are objects or arrays; they can be separated by
+ * whitespace or line breaks, or not separated at all. Text outside of a document is delivered
+ * as an invalid document, up to the next line break or document. A document that grows past
+ * {@link #setMaxPendingLength(int)} without being complete is delivered as an invalid document
+ * too, and the rest of it is skipped up to the next line break. If the file gets shorter, it
+ * is assumed to be truncated or rotated and is followed again from the start.
+ * <p>
+ * Instances are created with {@link JsonFormatter#follow(File, Listener)}. This class is not
+ * thread safe; call {@link #poll()} from a single background thread, e.g. on a timer or when a
+ * {@link android.os.FileObserver} reports a modification. The listener is called on that thread.
+ */
+
+public class JsonFollower {
+
+    private static final int BUFFER_SIZE = 8192;
+
+    /**
+     * Default limit of the length of a document that is not complete yet, in chars.
+     */
+    public static final int DEFAULT_MAX_PENDING_LENGTH = 4 * 1024 * 1024;
+
+    private final JsonFormatter formatter;
+    private final File file;
+    private final Listener listener;
+
+    private final ByteBuffer bytes;
+    private final CharBuffer chars;
+    private final CharsetDecoder decoder;
+
+    private long offset;
+    private final StringBuilder document;
+    private int depth;
+    private boolean inString;
+    private boolean escaped;
+    /**
+     * True while text outside of any document is collected.
+     */
+    private boolean junk;
+    /**
+     * True while the rest of a document that was too long is skipped, up to the next line break.
+     */
+    private boolean skipping;
+    private int maxPendingLength = DEFAULT_MAX_PENDING_LENGTH;
+
+    JsonFollower(JsonFormatter formatter, File file, Listener listener) {
+        this.formatter = formatter;
+        this.file = file;
+        this.listener = listener;
+
+        bytes = ByteBuffer.allocate(BUFFER_SIZE);
+        chars = CharBuffer.allocate(BUFFER_SIZE);
+        decoder = Charset.forName("UTF-8").newDecoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        document = new StringBuilder();
+    }
+
+    /**
+     * Reads whatever was appended to the file since the last call, and formats and delivers the
+     * documents that are now complete.
+     *
+     * @return number of documents delivered, or -1 if the file could not be read.
+     */
+    public int poll() {
+        int count = -1;
+
+        FileInputStream stream = null;
+        try {
+            stream = new FileInputStream(file);
+            FileChannel channel = stream.getChannel();
+
+            if (channel.size() < offset) {
+                reset();
+            }
+
+            count = 0;
+            channel.position(offset);
+            int read;
+            while ((read = channel.read(bytes)) > 0) {
+                // a char split by the end of the data stays in the buffer for the next read
+                offset += read;
+                bytes.flip();
+
+                decoder.decode(bytes, chars, false);
+                bytes.compact();
+
+                chars.flip();
+                count += scan();
+                chars.clear();
+            }
+        } catch (IOException e) {
+            Log.e("JsonFormatter", "Unable to read the file. " + e.getMessage());
+        } finally {
+            if (stream != null) {
+                try {
+                    stream.close();
+                } catch (IOException e) {
+                    // nothing left to read
+                }
+            }
+        }
+
+        return count;
+    }
+
+    /**
+     * @return number of bytes of the file read so far.
+     */
+    public long getOffset() {
+        return offset;
+    }
+
+    /**
+     * @return number of chars of the document that is not complete yet.
+     */
+    public int getPendingLength() {
+        return document.length();
+    }
+
+    /**
+     * Limits the length of a document that is not complete yet, so that a document that is
+     * never closed can't take up memory without bound. Once the pending text is longer, an
+     * invalid result is delivered for it, and the text up to the next line break is skipped.
+     * Defaults to {@link #DEFAULT_MAX_PENDING_LENGTH}.
+     *
+     * @param maxLength maximum number of chars of an incomplete document; 0 disables the limit.
+     */
+    public void setMaxPendingLength(int maxLength) {
+        this.maxPendingLength = Math.max(0, maxLength);
+    }
+
+    /**
+     * Forgets everything read so far, so the next {@link #poll()} starts again at the beginning
+     * of the file.
+     */
+    public void reset() {
+        offset = 0;
+        bytes.clear();
+        decoder.reset();
+        document.setLength(0);
+        depth = 0;
+        inString = false;
+        escaped = false;
+        junk = false;
+        skipping = false;
+    }
+
+    /**
+     * Scans the decoded chars for the ends of documents.
+     *
+     * @return number of documents delivered.
+     */
+    private int scan() {
+        int count = 0;
+
+        int start = chars.position();
+        int limit = chars.limit();
+        for (int i = start; i < limit; i++) {
+            char c = chars.get(i);
+
+            if (skipping) {
+                // resynchronizes after a document that was too long
+                if (c == '\n') {
+                    skipping = false;
+                }
+                start = i + 1;
+                continue;
+            }
+
+            if (depth > 0) {
+                if (inString) {
+                    if (escaped) {
+                        escaped = false;
+                    } else if (c == '\\') {
+                        escaped = true;
+                    } else if (c == '"') {
+                        inString = false;
+                    }
+                } else if (c == '"') {
+                    inString = true;
+                } else if (c == '{' || c == '[') {
+                    depth++;
+                } else if ((c == '}' || c == ']') && --depth == 0) {
+                    document.append(chars, start, i + 1);
+                    start = i + 1;
+                    deliver();
+                    count++;
+                }
+                continue;
+            }
+
+            if (c == '{' || c == '[') {
+                if (junk) {
+                    document.append(chars, start, i);
+                    deliver();
+                    count++;
+                }
+                start = i;
+                depth = 1;
+            } else if (junk) {
+                if (c == '\n') {
+                    document.append(chars, start, i);
+                    start = i + 1;
+                    deliver();
+                    count++;
+                }
+            } else if (c == ' ' || c == '\t' || c == '\n' || c == '\r') {
+                start = i + 1;
+            } else {
+                start = i;
+                junk = true;
+            }
+        }
+
+        if (depth > 0 || junk) {
+            document.append(chars, start, limit);
+
+            if (maxPendingLength > 0 && document.length() > maxPendingLength) {
+                discard();
+                count++;
+            }
+        }
+
+        return count;
+    }
+
+    /**
+     * Delivers an invalid result for a document that is too long, and skips the rest of it.
+     */
+    private void discard() {
+        document.setLength(0);
+        depth = 0;
+        inString = false;
+        escaped = false;
+        junk = false;
+        skipping = true;
+
+        listener.onDocument(new JsonFormatter.Result(
+                "Document longer than " + maxPendingLength + " chars", -1, -1, -1));
+    }
+
+    private void deliver() {
+        String text = document.toString();
+        document.setLength(0);
+        junk = false;
+
+        listener.onDocument(formatter.tryFormatText(text));
+    }
+
+    /**
+     * Receives the documents found by {@link #poll()}, in the order they appear in the file.
+     */
+    public interface Listener {
+
+        /**
+         * @param result formatted document, or the details of why it is not valid JSON.
+         */
+        void onDocument(JsonFormatter.Result result);
+    }
+}
@@ -0,0 +1,147 @@
+package com.github.rahulrvp.android_utils;
+
+import android.util.LruCache;
+
+/**
+ * Optional cache in front of {@link JsonFormatter}, for screens that render the same payloads
+ * over and over (scrolling back, rotation, refresh). Formatted results are looked up by a 64 bit
+ * hash and the length of the input, together with the configuration of the formatter, so equal
+ * inputs hit the cache even when they are different String instances, and formatters with the
+ * same configuration share entries.
+ * <p>
+ * The input itself is not kept, so if two different inputs of the same length have the same
+ * hash, the second one gets the cached output of the first. Even with a million distinct inputs
+ * of one length the chance of that is about one in 30 million, but don't use the cache where
+ * showing the output of another payload is not acceptable.
+ * <p>
+ * The cache is bounded by the size of the formatted output, and the least recently used results
+ * are evicted first. Hit and miss counters help to tune the size.
+ * <p>
+ * Instances can be shared between threads. Two threads that miss the same input at the same
+ * time both format it. Cached texts are shared, so a {@link android.text.Spanned} result must
+ * not be modified.
+ */
+
+public class JsonFormatCache {
+
+    /**
+     * Approximate memory used by an entry besides the text itself, so that even empty results
+     * count towards the size.
+     */
+    private static final int ENTRY_OVERHEAD = 64;
+
+    private final LruCache<Key, CharSequence> cache;
+
+    /**
+     * @param maxBytes maximum size of the cached output in bytes, counting 2 bytes per char.
+     */
+    public JsonFormatCache(int maxBytes) {
+        cache = new LruCache<Key, CharSequence>(maxBytes) {
+            @Override
+            protected int sizeOf(Key key, CharSequence value) {
+                return ENTRY_OVERHEAD + value.length() * 2;
+            }
+        };
+    }
+
+    /**
+     * Same as {@link JsonFormatter#format(String)}, returning the cached output if the same
+     * input was formatted before with the same configuration.
+     *
+     * @param formatter  formatter used on a cache miss.
+     * @param jsonString input JSON String
+     * @return if input is valid, returns formatted output JSON; else empty string.
+     */
+    public String format(JsonFormatter formatter, String jsonString) {
+        return formatText(formatter, jsonString).toString();
+    }
+
+    /**
+     * Same as {@link JsonFormatter#formatText(String)}, returning the cached text if the same
+     * input was formatted before with the same configuration.
+     *
+     * @param formatter  formatter used on a cache miss.
+     * @param jsonString input JSON String
+     * @return if input is valid, returns formatted output JSON; else empty string.
+     */
+    public CharSequence formatText(JsonFormatter formatter, String jsonString) {
+        if (formatter == null || jsonString == null) {
+            return "";
+        }
+
+        Key key = new Key(JsonHash.hash(jsonString), jsonString.length(), formatter.getConfigKey());
+
+        CharSequence text = cache.get(key);
+        if (text == null) {
+            text = formatter.formatText(jsonString);
+            cache.put(key, text);
+        }
+
+        return text;
+    }
+
+    /**
+     * @return number of lookups that found a cached result.
+     */
+    public int getHitCount() {
+        return cache.hitCount();
+    }
+
+    /**
+     * @return number of lookups that had to format the input.
+     */
+    public int getMissCount() {
+        return cache.missCount();
+    }
+
+    /**
+     * @return number of results evicted to stay within the size limit.
+     */
+    public int getEvictionCount() {
+        return cache.evictionCount();
+    }
+
+    /**
+     * @return current size of the cached output in bytes.
+     */
+    public int getSize() {
+        return cache.size();
+    }
+
+    /**
+     * Removes all the cached results. The counters are kept.
+     */
+    public void clear() {
+        cache.evictAll();
+    }
+
+    private static class Key {
+        final long hash;
+        final int length;
+        final String config;
+
+        Key(long hash, int length, String config) {
+            this.hash = hash;
+            this.length = length;
+            this.config = config;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+
+            Key key = (Key) o;
+            return hash == key.hash && length == key.length && config.equals(key.config);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * (int) (hash ^ (hash >>> 32)) + length;
+        }
+    }
+}
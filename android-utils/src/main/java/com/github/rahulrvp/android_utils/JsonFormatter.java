@@ -1,5 +1,10 @@
 package com.github.rahulrvp.android_utils;
 
+import android.graphics.Color;
+import android.os.AsyncTask;
+import android.os.Handler;
+import android.os.Looper;
+import android.text.Spanned;
 import android.text.TextUtils;
 import android.util.Log;
 
@@ -7,14 +12,57 @@ import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
 
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.InterruptedIOException;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
 import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * This class helps you format a raw JSON input and give you a pretty formatted output in
- * either String or HTML format. The HTML format supports color. User can customize the
- * colors used with the help of {@link Builder} class.
+ * String, HTML or Spannable format. The HTML and Spannable formats support color. User can
+ * customize the colors used with the help of {@link Builder} class.
  * <p>
- * The class supports inputs as String, JSONObject and JSONArray.
+ * Built formatters are immutable and can be shared between threads. Use {@link #getStringFormatter()},
+ * {@link #getHtmlFormatter()} or {@link #getSpannableFormatter()} for the default colors.
+ * <p>
+ * The Spannable format colors the text with spans directly, so it can be set on a TextView
+ * without generating HTML markup and parsing it back with {@link android.text.Html#fromHtml(String)}.
+ * Use the formatText(...) methods to get the colored {@link Spanned} output; the format(...)
+ * methods return it as plain text.
+ * <p>
+ * The Compact format goes the other way: it strips all the insignificant whitespace, to shrink
+ * a payload before it is stored or sent. Strings are copied as they are written in the input.
+ * <p>
+ * The HTML CSS format is a smaller HTML output for large documents: tokens are marked with short
+ * class names instead of inline font colors, and adjacent tokens of the same color share one
+ * span. Add {@link #getStyleSheet()} once to the page that shows it.
+ * <p>
+ * The class supports inputs as String, JSONObject, JSONArray, Reader and UTF-8 bytes. String,
+ * Reader and byte inputs are formatted in a single streaming pass without building a JSONObject
+ * or JSONArray tree; byte inputs are not even decoded as UTF-8. Numbers of these inputs are
+ * copied as they are written, without being parsed; see {@link Builder#setPreserveLiterals(boolean)}
+ * to copy strings unchanged as well.
  *
  * @author Rahul Raveendran V P
  *         Created on 23/1/17 @ 5:27 PM
@@ -27,27 +75,142 @@ public class JsonFormatter {
     public static final int STRING = 900;
     @SuppressWarnings("WeakerAccess")
     public static final int HTML = 901;
+    @SuppressWarnings("WeakerAccess")
+    public static final int SPANNABLE = 902;
+    @SuppressWarnings("WeakerAccess")
+    public static final int COMPACT = 903;
+    @SuppressWarnings("WeakerAccess")
+    public static final int HTML_CSS = 904;
+
+    private static final int COLOR_BRACES = 0;
+    private static final int COLOR_SQ_BRACKET = 1;
+    private static final int COLOR_COMMA = 2;
+    private static final int COLOR_KEY = 3;
+    private static final int COLOR_STRING = 4;
+    private static final int COLOR_NUMBER = 5;
+    private static final int COLOR_BOOLEAN = 6;
+    private static final int COLOR_NULL = 7;
+    static final int COLOR_ADDED = 8;
+    static final int COLOR_REMOVED = 9;
+    private static final int COLOR_HIGHLIGHT = 10;
+    private static final int COLOR_COUNT = 11;
+
+    private static final int INDENT_CACHE_SIZE = 16;
+    private static final int MIN_PARALLEL_CHUNK = 64;
+    private static final long MAX_MAPPED_SIZE = 64L * 1024 * 1024;
+    private static final String KEY_SEPARATOR = " : ";
+    private static final String COMPACT_KEY_SEPARATOR = ":";
+    private static final String NULL_STRING = "null";
+    private static final int ESCAPE_TABLE_SIZE = 128;
+
+    /**
+     * Class names of the colors in {@link #HTML_CSS} output, in the order of the color constants.
+     */
+    private static final String[] CSS_CLASSES = {"jo", "ja", "jc", "jk", "js", "jn", "jb", "jz", "jp", "jm", "jh"};
+    private static final String CSS_CLOSE_TAG = "</span>";
+    private static final String ELLIPSIS = "\u2026";
+    private static final String ELLIPSIS_UTF8 = "\u00e2\u0080\u00a6";
+
+    private final String colorBraces;
+    private final String colorSqBracket;
+    private final String colorComma;
+    private final String colorKey;
+    private final String colorString;
+    private final String colorNumber;
+    private final String colorBoolean;
+    private final String colorNull;
+    private final String colorAdded;
+    private final String colorRemoved;
+    private final String colorHighlight;
+    private final int outputFormat;
+    private final int parallelThreshold;
+    private final int indentWidth;
+    private final int maxDepth;
+    private final int maxElements;
+    private final int maxStringLength;
+    private final long outputBudget;
+    private final JsonPathFilter pathFilter;
+    private final int summarySamples;
+    private final boolean preserveLiterals;
+
+    private final String newLine;
+    private final String keySeparator;
+    private final boolean rawStrings;
+    private final String[] indents;
+    private final String[] openTags;
+    private final String[] closeTags;
+    private final int[] spanColors;
+    private final String configKey;
+    private final String[] stringEscapes;
+    private final String[] rawEscapes;
+
+    /**
+     * Copies the configuration of the builder and precomputes the lookup tables used while
+     * formatting: the indent string for each level, the open and close tags for each color and
+     * the parsed span colors. This keeps the formatting itself free of string concatenation.
+     * None of these are changed afterwards, so an instance can be shared between threads.
+     */
+    private JsonFormatter(Builder builder) {
+        colorBraces = builder.colorBraces;
+        colorSqBracket = builder.colorSqBracket;
+        colorComma = builder.colorComma;
+        colorKey = builder.colorKey;
+        colorString = builder.colorString;
+        colorNumber = builder.colorNumber;
+        colorBoolean = builder.colorBoolean;
+        colorNull = builder.colorNull;
+        colorAdded = builder.colorAdded;
+        colorRemoved = builder.colorRemoved;
+        colorHighlight = builder.colorHighlight;
+        outputFormat = builder.outputFormat;
+        parallelThreshold = builder.parallelThreshold;
+        indentWidth = builder.indentWidth;
+        maxDepth = builder.maxDepth;
+        maxElements = builder.maxElements;
+        maxStringLength = builder.maxStringLength;
+        outputBudget = builder.outputBudget;
+        pathFilter = JsonPathFilter.create(builder.includePaths, builder.excludePaths, builder.maskPaths);
+        summarySamples = builder.summarySamples;
+        preserveLiterals = builder.preserveLiterals;
+
+        newLine = getNewlineString();
+        keySeparator = outputFormat == COMPACT ? COMPACT_KEY_SEPARATOR : KEY_SEPARATOR;
+        rawStrings = outputFormat == COMPACT || preserveLiterals;
+        indents = buildIndents(getTabString());
+        openTags = buildOpenTags();
+        closeTags = buildCloseTags();
+        spanColors = parseSpanColors();
+        configKey = buildConfigKey();
+        stringEscapes = buildEscapes(true);
+        rawEscapes = buildEscapes(false);
+    }
+
+    /**
+     * @return a shared formatter with the default colors and {@link #STRING} output format.
+     */
+    public static JsonFormatter getStringFormatter() {
+        return Defaults.STRING_FORMATTER;
+    }
+
+    /**
+     * @return a shared formatter with the default colors and {@link #HTML} output format.
+     */
+    public static JsonFormatter getHtmlFormatter() {
+        return Defaults.HTML_FORMATTER;
+    }
+
+    /**
+     * @return a shared formatter with the default colors and {@link #SPANNABLE} output format.
+     */
+    public static JsonFormatter getSpannableFormatter() {
+        return Defaults.SPANNABLE_FORMATTER;
+    }
 
-    private String colorBraces;
-    private String colorSqBracket;
-    private String colorComma;
-    private String colorKey;
-    private String colorString;
-    private String colorNumber;
-    private String colorBoolean;
-    private String colorNull;
-    private int outputFormat;
-
-    private JsonFormatter() {
-        colorBraces = "#729fcf";
-        colorSqBracket = "#a4074f";
-        colorComma = "#370007";
-        colorKey = "#2d4a8e";
-        colorString = "#53a06b";
-        colorNumber = "#af83a8";
-        colorBoolean = "#ddab1f";
-        colorNull = "#c0c3ca";
-        outputFormat = STRING;
+    /**
+     * @return a shared formatter with {@link #COMPACT} output format.
+     */
+    public static JsonFormatter getCompactFormatter() {
+        return Defaults.COMPACT_FORMATTER;
     }
 
     /**
@@ -57,199 +220,1907 @@ public class JsonFormatter {
      * @return if input is valid, returns formatted output JSON either in String or HTML format; else empty string.
      */
     public String format(String jsonString) {
-        StringBuilder stringBuilder = new StringBuilder();
+        JsonOutput output = new JsonOutput();
+        writeJson(output, jsonString);
+        return output.toString();
+    }
+
+    /**
+     * Formats the raw JSON string input and reports the outcome as a {@link Result}. The input
+     * is parsed exactly once. Invalid input is rejected at the first error, with its line,
+     * column and offset, and nothing is logged.
+     *
+     * @param jsonString input JSON String
+     * @return a {@link Result} holding either the formatted output or the error details.
+     */
+    public Result tryFormat(String jsonString) {
+        JsonOutput output = new JsonOutput();
+        Result error = writeDocument(output, jsonString);
+        return error != null ? error : new Result(output.toString());
+    }
+
+    /**
+     * Same as {@link #tryFormat(String)}, keeping the colors of {@link #SPANNABLE} output in
+     * {@link Result#getText()}.
+     */
+    Result tryFormatText(String jsonString) {
+        JsonOutput output = new JsonOutput();
+        Result error = writeDocument(output, jsonString);
+        return error != null ? error : new Result(output.toText());
+    }
+
+    /**
+     * Formats the raw JSON string input on a background thread and delivers the {@link Result}
+     * to the callback on the main thread. Parsing, formatting and, for {@link #SPANNABLE}
+     * output, building the spans all happen off the main thread. Use {@link Result#getText()}
+     * to get the colored text.
+     *
+     * @param jsonString input JSON String
+     * @param callback   receives the result on the main thread, unless the request is cancelled first.
+     * @return handle that can be used to cancel the request.
+     */
+    public AsyncRequest formatAsync(String jsonString, Callback callback) {
+        return formatAsync(jsonString == null ? "" : jsonString, null, callback, AsyncTask.THREAD_POOL_EXECUTOR);
+    }
+
+    /**
+     * Same as {@link #formatAsync(String, Callback)} for JSON read from the given {@link Reader}.
+     * The reader is read on the background thread and is not closed by this method.
+     *
+     * @param reader   input JSON source.
+     * @param callback receives the result on the main thread, unless the request is cancelled first.
+     * @return handle that can be used to cancel the request.
+     */
+    public AsyncRequest formatAsync(Reader reader, Callback callback) {
+        return formatAsync(null, reader, callback, AsyncTask.THREAD_POOL_EXECUTOR);
+    }
+
+    /**
+     * Starts formatting either the given String, or if that is null, the given reader, on the
+     * given executor.
+     */
+    AsyncRequest formatAsync(final String jsonString, final Reader reader, Callback callback, Executor executor) {
+        AsyncRequest request = new AsyncRequest(callback, new Callable<Result>() {
+            @Override
+            public Result call() throws Exception {
+                if (jsonString == null && reader == null) {
+                    return new Result("Empty input", 1, 1, 0);
+                }
+
+                JsonOutput output = new JsonOutput();
+                output.stopOnInterrupt();
+
+                Result error = jsonString != null
+                        ? writeDocument(output, jsonString)
+                        : writeDocument(output, reader, false);
+                return error != null ? error : new Result(output.toText());
+            }
+        });
+
+        executor.execute(request.task);
+
+        return request;
+    }
+
+    /**
+     * Creates a line indexed view of the formatted JSON, to back a virtualized (RecyclerView
+     * style) viewer. Lines are formatted lazily as they are requested, and each line is turned
+     * into colored text only when it is asked for. The colors and indentation of this formatter
+     * are used, whatever the output format is.
+     *
+     * @param jsonString input JSON String
+     * @return lazily formatted lines of the input.
+     */
+    public JsonLines formatLines(String jsonString) {
+        JsonFormatter formatter = asSpannable();
+        return new JsonLines(formatter, jsonString == null ? "" : jsonString);
+    }
+
+    /**
+     * Same as {@link #formatLines(String)} for JSON read from the given {@link Reader}. The reader
+     * is read as more lines are requested, so it must stay open while the lines are in use. What
+     * is read is kept, so that lines can be formatted again once their text is dropped.
+     *
+     * @param reader input JSON source.
+     * @return lazily formatted lines of the input.
+     */
+    public JsonLines formatLines(Reader reader) {
+        JsonFormatter formatter = asSpannable();
+        return new JsonLines(formatter, reader);
+    }
+
+    /**
+     * Formats the raw JSON string input and records where every object and array is in the
+     * output, in the same pass. A viewer can then fold and unfold any of them by hiding a range
+     * of the text, see {@link JsonIndex}, instead of formatting the document again. Use it with
+     * {@link #STRING} or {@link #SPANNABLE} output; for the HTML formats the offsets point into
+     * the markup.
+     *
+     * @param jsonString input JSON String
+     * @return the formatted text and its index; if the input is not valid, an empty text without nodes.
+     */
+    public JsonIndex formatIndexed(String jsonString) {
+        return JsonIndex.format(this, jsonString);
+    }
+
+    /**
+     * Formats the input again after an edit, reusing the result for the input before the edit.
+     * Only the innermost object or array around the edited range is tokenized and formatted
+     * again, and spliced into the previous text with its indentation and colors; the rest of
+     * the text is kept as it is, and the nodes after it are moved. The whole input is formatted
+     * again when the edit touches the brackets of the top level container, when the edited
+     * container is no longer valid on its own, or for {@link #HTML_CSS} output or when a limit
+     * or path rule is set, as these depend on the surrounding output.
+     * <p>
+     * Only the tokenizing and formatting is limited to the edited container. Splicing the text
+     * and moving the nodes and keys after it still take time linear in the size of the whole
+     * document, as the offsets are kept as absolute values. These are plain copies of chars
+     * and passes over int arrays, so they cost far less than formatting the document again.
+     *
+     * @param previous       index of the input before the edit, from {@link #formatIndexed(String)}
+     *                       or an earlier call of this method, of this formatter. It is updated in
+     *                       place, along with its text.
+     * @param jsonString     the whole input after the edit.
+     * @param editStart      offset of the edit in the input.
+     * @param removedLength  number of chars of the previous input replaced by the edit.
+     * @param insertedLength number of chars inserted instead.
+     * @return the updated index: previous itself, or a new index if the whole input was formatted
+     * again; null if the input is not valid, in which case previous is not changed.
+     */
+    public JsonIndex reformat(JsonIndex previous, String jsonString, int editStart, int removedLength, int insertedLength) {
+        return JsonIndex.reformat(this, previous, jsonString, editStart, removedLength, insertedLength);
+    }
+
+    /**
+     * Follows a file of concatenated JSON documents that keeps growing, e.g. a log. Every call
+     * of {@link JsonFollower#poll()} reads only the newly appended bytes and formats the
+     * documents they complete, so refreshing doesn't read or format the file again. The
+     * documents are delivered as {@link Result}s, colored for {@link #SPANNABLE} output.
+     *
+     * @param file     file to follow, from its start.
+     * @param listener receives the documents as they are completed.
+     * @return the follower, which reads nothing until it is polled.
+     */
+    public JsonFollower follow(File file, JsonFollower.Listener listener) {
+        return new JsonFollower(this, file, listener);
+    }
+
+    /**
+     * Compares two JSON documents and formats the differences. Objects are compared by key and
+     * arrays by element; identical branches are found by comparing hashes of whole subtrees, so
+     * only their direct children are visited, and each run of them is written as a single line
+     * with their count. Every line starts with {@code "+ "} if it was added, {@code "- "} if it
+     * was removed and two spaces if it is unchanged. A changed value shows up as a removed line
+     * followed by an added line. The prefixes are colored with the diff colors of the
+     * {@link Builder}.
+     *
+     * @param oldJson the old JSON object or array.
+     * @param newJson the new JSON object or array.
+     * @return if both inputs are valid, the formatted differences; else empty string.
+     */
+    public String formatDiff(String oldJson, String newJson) {
+        JsonOutput output = new JsonOutput();
+        JsonDiff.write(this, output, oldJson, newJson);
+        return output.toString();
+    }
+
+    /**
+     * Same as {@link #formatDiff(String, String)}, returning colored {@link Spanned} text for
+     * the {@link #SPANNABLE} output format.
+     *
+     * @param oldJson the old JSON object or array.
+     * @param newJson the new JSON object or array.
+     * @return if both inputs are valid, the formatted differences; else empty string.
+     */
+    public CharSequence formatDiffText(String oldJson, String newJson) {
+        JsonOutput output = new JsonOutput();
+        JsonDiff.write(this, output, oldJson, newJson);
+        return output.toText();
+    }
+
+    /**
+     * @return this formatter if it already produces {@link #SPANNABLE} output, else a copy of it that does.
+     */
+    private JsonFormatter asSpannable() {
+        return outputFormat == SPANNABLE ? this : new Builder(this).setOutputFormat(SPANNABLE).build();
+    }
+
+    /**
+     * Formats the JSONObject instance input. The output will be either in String or HTML format.
+     *
+     * @param jsonObject input JSONObject instance.
+     * @return if input is valid, returns formatted output JSON either in String or HTML format; else empty string.
+     */
+    public String format(JSONObject jsonObject) {
+        JsonOutput output = new JsonOutput();
+        writeJson(output, jsonObject);
+        return output.toString();
+    }
+
+    /**
+     * Formats the JSONArray instance input. The output will be either in String or HTML format.
+     *
+     * @param jsonArray input JSONArray instance.
+     * @return if input is valid, returns formatted output JSON either in String or HTML format; else empty string.
+     */
+    public String format(JSONArray jsonArray) {
+        JsonOutput output = new JsonOutput();
+        writeJson(output, jsonArray);
+        return output.toString();
+    }
+
+    /**
+     * Formats the JSON read from the given {@link Reader}. The input is tokenized and formatted
+     * in a single pass, without building a JSONObject or JSONArray tree, so the memory used is
+     * proportional to the nesting depth of the input rather than its size. The reader is not
+     * closed by this method.
+     *
+     * @param reader input JSON source.
+     * @return if input is valid, returns formatted output JSON either in String or HTML format; else empty string.
+     */
+    public String format(Reader reader) {
+        JsonOutput output = new JsonOutput();
+        writeJson(output, reader);
+        return output.toString();
+    }
+
+    /**
+     * Formats the raw JSON string input and returns the result as text that can be set on a
+     * TextView directly. For {@link #SPANNABLE} output format it is a colored {@link Spanned}
+     * text; for the other formats it is the same String returned by {@link #format(String)}.
+     *
+     * @param jsonString input JSON String
+     * @return if input is valid, returns formatted output JSON; else empty string.
+     */
+    public CharSequence formatText(String jsonString) {
+        JsonOutput output = new JsonOutput();
+        writeJson(output, jsonString);
+        return output.toText();
+    }
+
+    /**
+     * Same as {@link #formatText(String)} for a JSONObject instance input.
+     *
+     * @param jsonObject input JSONObject instance.
+     * @return if input is valid, returns formatted output JSON; else empty string.
+     */
+    public CharSequence formatText(JSONObject jsonObject) {
+        JsonOutput output = new JsonOutput();
+        writeJson(output, jsonObject);
+        return output.toText();
+    }
+
+    /**
+     * Same as {@link #formatText(String)} for a JSONArray instance input.
+     *
+     * @param jsonArray input JSONArray instance.
+     * @return if input is valid, returns formatted output JSON; else empty string.
+     */
+    public CharSequence formatText(JSONArray jsonArray) {
+        JsonOutput output = new JsonOutput();
+        writeJson(output, jsonArray);
+        return output.toText();
+    }
+
+    /**
+     * Same as {@link #formatText(String)} for JSON read from the given {@link Reader}. The
+     * reader is not closed by this method.
+     *
+     * @param reader input JSON source.
+     * @return if input is valid, returns formatted output JSON; else empty string.
+     */
+    public CharSequence formatText(Reader reader) {
+        JsonOutput output = new JsonOutput();
+        writeJson(output, reader);
+        return output.toText();
+    }
+
+    /**
+     * Formats the raw JSON string input and writes the result into the given {@link Appendable}
+     * (a {@link java.io.Writer}, {@link StringBuilder} etc.) in chunks, instead of building the
+     * whole result in memory. {@link #SPANNABLE} output is written as plain text, as spans can't
+     * be carried over to an Appendable.
+     *
+     * @param jsonString input JSON String
+     * @param out        destination of the formatted output.
+     * @return true if the whole input was formatted and written; false otherwise.
+     */
+    public boolean format(String jsonString, Appendable out) {
+        return format(jsonString, out, null);
+    }
+
+    /**
+     * Same as {@link #format(String, Appendable)}, and also passes every chunk written to the
+     * given {@link ChunkListener}.
+     *
+     * @param jsonString input JSON String
+     * @param out        destination of the formatted output. Can be null if only the listener is needed.
+     * @param listener   receives the output chunk by chunk. Can be null.
+     * @return true if the whole input was formatted and written; false otherwise.
+     */
+    public boolean format(String jsonString, Appendable out, ChunkListener listener) {
+        JsonOutput output = new JsonOutput(out, listener);
+        return writeJson(output, jsonString) && finish(output);
+    }
+
+    /**
+     * Formats the JSONObject instance input and writes the result into the given {@link Appendable}.
+     *
+     * @param jsonObject input JSONObject instance.
+     * @param out        destination of the formatted output.
+     * @return true if the whole input was formatted and written; false otherwise.
+     */
+    public boolean format(JSONObject jsonObject, Appendable out) {
+        JsonOutput output = new JsonOutput(out, null);
+        return writeJson(output, jsonObject) && finish(output);
+    }
+
+    /**
+     * Formats the JSONArray instance input and writes the result into the given {@link Appendable}.
+     *
+     * @param jsonArray input JSONArray instance.
+     * @param out       destination of the formatted output.
+     * @return true if the whole input was formatted and written; false otherwise.
+     */
+    public boolean format(JSONArray jsonArray, Appendable out) {
+        JsonOutput output = new JsonOutput(out, null);
+        return writeJson(output, jsonArray) && finish(output);
+    }
+
+    /**
+     * Formats the JSON read from the given {@link Reader} and writes the result into the given
+     * {@link Appendable} as it goes. Neither the input nor the output is held in memory as a whole.
+     * Neither the reader nor the destination is closed by this method.
+     *
+     * @param reader input JSON source.
+     * @param out    destination of the formatted output.
+     * @return true if the whole input was formatted and written; false otherwise.
+     */
+    public boolean format(Reader reader, Appendable out) {
+        return format(reader, out, null);
+    }
+
+    /**
+     * Same as {@link #format(Reader, Appendable)}, and also passes every chunk written to the
+     * given {@link ChunkListener}, e.g. to show the first screen of a large document before the
+     * formatting finishes.
+     *
+     * @param reader   input JSON source.
+     * @param out      destination of the formatted output. Can be null if only the listener is needed.
+     * @param listener receives the output chunk by chunk. Can be null.
+     * @return true if the whole input was formatted and written; false otherwise.
+     */
+    public boolean format(Reader reader, Appendable out, ChunkListener listener) {
+        JsonOutput output = new JsonOutput(out, listener);
+        return writeJson(output, reader) && finish(output);
+    }
+
+    /**
+     * Formats newline delimited JSON (JSON Lines, NDJSON) read from the given {@link Reader}:
+     * every line is a separate JSON value, and every formatted record is followed by
+     * a line break, so {@link #COMPACT} output is newline delimited JSON again. Records are
+     * formatted in batches on worker threads and written in their original order. Only a few
+     * batches are in flight at a time, so neither the input nor the output is held in memory as
+     * a whole. Neither the reader nor the destination is closed by this method.
+     * <p>
+     * A line that is not valid JSON doesn't stop the formatting: it is left out of the output
+     * and passed to the listener. Blank lines are skipped.
+     *
+     * @param reader   input records, one per line.
+     * @param out      destination of the formatted output.
+     * @param listener receives the invalid records, in order, on the calling thread. Can be null.
+     * @return true if the whole input was read and the output written; false otherwise.
+     */
+    public boolean formatRecords(Reader reader, Appendable out, RecordListener listener) {
+        if (reader == null) {
+            return false;
+        }
+
+        JsonOutput output = new JsonOutput(out, null);
+        return new JsonRecords(this, output, listener).write(reader) && finish(output);
+    }
+
+    /**
+     * Summarizes the JSON read from the given {@link Reader} instead of formatting it: the
+     * document is read once, and the output describes its structure, with the number of values,
+     * their types, the range of numbers, string lengths and array sizes, and the keys of the
+     * objects for every path. All the elements of an array share a path, so a large array of
+     * records is described once. The summary is a JSON document itself and is formatted with
+     * the output format, colors and indentation of this formatter. Only the summary is held in
+     * memory, so it suits exports that are too large to be formatted usefully. The reader is
+     * not closed by this method.
+     * <p>
+     * Path rules apply to the input; depth limits don't apply to the summary. Example values are
+     * added with {@link Builder#setSummarySamples(int)}.
+     *
+     * @param reader input JSON source.
+     * @return if input is valid, returns the formatted summary; else empty string.
+     */
+    public String formatSummary(Reader reader) {
+        JsonOutput output = new JsonOutput();
+        JsonSummary.write(this, output, reader);
+        return output.toString();
+    }
+
+    /**
+     * Same as {@link #formatSummary(Reader)}, and returns the result as text that can be set on
+     * a TextView directly, see {@link #formatText(String)}.
+     *
+     * @param reader input JSON source.
+     * @return if input is valid, returns the formatted summary; else empty string.
+     */
+    public CharSequence formatSummaryText(Reader reader) {
+        JsonOutput output = new JsonOutput();
+        JsonSummary.write(this, output, reader);
+        return output.toText();
+    }
+
+    /**
+     * Same as {@link #formatSummary(Reader)}, and writes the summary into the given
+     * {@link Appendable}. Neither the reader nor the destination is closed by this method.
+     *
+     * @param reader input JSON source.
+     * @param out    destination of the formatted summary.
+     * @return true if the whole input was read and the summary written; false otherwise.
+     */
+    public boolean formatSummary(Reader reader, Appendable out) {
+        JsonOutput output = new JsonOutput(out, null);
+        return JsonSummary.write(this, output, reader) && finish(output);
+    }
+
+    /**
+     * Formats UTF-8 encoded JSON bytes straight into UTF-8 encoded bytes. The bytes are not
+     * decoded as UTF-8 and no charset encoder runs: the JSON syntax is ASCII, so strings and
+     * numbers are copied byte by byte, with their escape sequences as written. Each byte is
+     * carried through the tokenizer and the output buffer as a char of the same value and
+     * written back as that byte, so the bytes are still widened to chars and buffered as chars
+     * on the way. Use it for {@link #STRING} or {@link #HTML} or {@link #HTML_CSS} output;
+     * {@link #SPANNABLE} output is written as plain text.
+     *
+     * @param input  UTF-8 JSON, read from its position to its limit. A heap, direct or
+     *               memory-mapped buffer can be used.
+     * @param output destination buffer. The formatted bytes are put at its position. If it runs
+     *               out of space, formatting stops and false is returned.
+     * @return true if the whole input was formatted and written; false otherwise.
+     */
+    public boolean formatUtf8(ByteBuffer input, ByteBuffer output) {
+        return input != null && output != null && writeUtf8(new JsonOutput(output), new JsonTokenizer(input, false));
+    }
+
+    /**
+     * Same as {@link #formatUtf8(ByteBuffer, ByteBuffer)}, writing the formatted bytes into the
+     * given channel as it goes. The channel is not closed by this method.
+     *
+     * @param input  UTF-8 JSON, read from its position to its limit.
+     * @param output destination channel, e.g. a file or a socket.
+     * @return true if the whole input was formatted and written; false otherwise.
+     */
+    public boolean formatUtf8(ByteBuffer input, WritableByteChannel output) {
+        return input != null && output != null && writeUtf8(new JsonOutput(output), new JsonTokenizer(input, false));
+    }
+
+    /**
+     * Same as {@link #formatUtf8(ByteBuffer, WritableByteChannel)} for a whole file. Files of up
+     * to {@value #MAX_MAPPED_SIZE} bytes are memory-mapped, so they are read by the tokenizer
+     * directly from the page cache. Larger files, and files that can't be mapped, e.g. for lack
+     * of address space on a 32-bit device, are read through a buffer instead. Neither channel is
+     * closed by this method.
+     *
+     * @param input  channel of a UTF-8 JSON file.
+     * @param output destination channel.
+     * @return true if the whole input was formatted and written; false otherwise.
+     */
+    public boolean formatUtf8(FileChannel input, WritableByteChannel output) {
+        boolean result = false;
+
+        if (input != null && output != null) {
+            try {
+                result = writeUtf8(new JsonOutput(output), utf8Tokenizer(input, MAX_MAPPED_SIZE));
+            } catch (IOException e) {
+                Log.e("JsonFormatter", "Unable to read the input. " + e.getMessage());
+            }
+        }
+
+        return result;
+    }
 
+    /**
+     * Formats gzip or zlib compressed JSON, inflating it as it is read instead of into a String
+     * first. Only a few small buffers and the window of the inflater are held in memory, never
+     * the whole inflated text. The format is detected from the first bytes, and
+     * input that is not compressed is formatted as it is. The stream is not closed by this method.
+     *
+     * @param input compressed UTF-8 JSON, e.g. a stored {@code .json.gz} file or a response body.
+     * @return if input is valid, returns formatted output JSON either in String or HTML format; else empty string.
+     */
+    public String formatCompressed(InputStream input) {
+        JsonOutput output = new JsonOutput();
+        writeCompressed(output, input, false);
+        return output.toString();
+    }
+
+    /**
+     * Same as {@link #formatCompressed(InputStream)}, and writes the result into the given
+     * {@link Appendable} as it goes. Neither the stream nor the destination is closed by this method.
+     *
+     * @param input compressed UTF-8 JSON.
+     * @param out   destination of the formatted output.
+     * @return true if the whole input was formatted and written; false otherwise.
+     */
+    public boolean formatCompressed(InputStream input, Appendable out) {
+        JsonOutput output = new JsonOutput(out, null);
+        return writeCompressed(output, input, false) && finish(output);
+    }
+
+    /**
+     * Same as {@link #formatCompressed(InputStream)}, and writes UTF-8 encoded bytes into the
+     * given channel. The inflated bytes are not decoded as UTF-8, see
+     * {@link #formatUtf8(ByteBuffer, WritableByteChannel)}. Neither the stream nor the channel is
+     * closed by this method.
+     *
+     * @param input  compressed UTF-8 JSON.
+     * @param output destination channel, e.g. a file or a socket.
+     * @return true if the whole input was formatted and written; false otherwise.
+     */
+    public boolean formatCompressed(InputStream input, WritableByteChannel output) {
+        if (output == null) {
+            return false;
+        }
+
+        JsonOutput bytes = new JsonOutput(output);
+        return writeCompressed(bytes, input, true) && finish(bytes);
+    }
+
+    /**
+     * @param bytes true to tokenize the inflated bytes without decoding them, for byte output.
+     */
+    private boolean writeCompressed(JsonOutput output, InputStream input, boolean bytes) {
+        if (input == null) {
+            return false;
+        }
+
+        JsonInflater inflater = new JsonInflater(input);
         try {
-            formatJson(stringBuilder, 0, new JSONObject(jsonString), false);
-        } catch (Exception e) {
+            JsonTokenizer tokenizer = configure(bytes
+                    ? new JsonTokenizer(inflater, false)
+                    : new JsonTokenizer(new InputStreamReader(inflater, Charset.forName("UTF-8")), false));
+
+            Result error = writeDocument(output, tokenizer);
+            if (error != null) {
+                Log.e("JsonFormatter", "Unable to format the input. " + error);
+            }
+
+            return error == null;
+        } finally {
+            inflater.close();
+        }
+    }
+
+    /**
+     * Creates the tokenizer for {@link #formatUtf8(FileChannel, WritableByteChannel)}, reading
+     * the file from its start.
+     *
+     * @param maxMappedSize size up to which the file is memory-mapped instead of streamed.
+     */
+    JsonTokenizer utf8Tokenizer(FileChannel input, long maxMappedSize) throws IOException {
+        long size = input.size();
+        if (size <= maxMappedSize) {
             try {
-                formatJson(stringBuilder, 0, new JSONArray(jsonString), false);
-            } catch (Exception err) {
-                Log.e("JsonFormatter", "Input is not a valid JSON. Value: " + String.valueOf(jsonString));
+                return new JsonTokenizer(input.map(FileChannel.MapMode.READ_ONLY, 0, size), false);
+            } catch (IOException e) {
+                Log.e("JsonFormatter", "Unable to map the input, reading it instead. " + e.getMessage());
             }
         }
 
-        return stringBuilder.toString();
+        // the mapped buffer skips a byte order mark by itself, the stream doesn't
+        ByteBuffer mark = ByteBuffer.allocate(3);
+        while (mark.hasRemaining() && input.read(mark, mark.position()) > 0) {
+            // reading the first bytes
+        }
+        boolean hasMark = !mark.hasRemaining() && mark.get(0) == (byte) 0xEF
+                && mark.get(1) == (byte) 0xBB && mark.get(2) == (byte) 0xBF;
+        input.position(hasMark ? 3 : 0);
+
+        return new JsonTokenizer(Channels.newInputStream(input), false);
+    }
+
+    boolean writeUtf8(JsonOutput output, JsonTokenizer tokenizer) {
+        Result error = writeDocument(output, configure(tokenizer));
+        if (error != null) {
+            Log.e("JsonFormatter", "Unable to format the input. " + error);
+        }
+
+        return error == null && finish(output);
+    }
+
+    private boolean writeJson(JsonOutput output, String jsonString) {
+        Result error = writeDocument(output, jsonString);
+        if (error != null) {
+            Log.e("JsonFormatter", "Input is not a valid JSON. " + error);
+        }
+
+        return error == null;
+    }
+
+    /**
+     * Formats a raw JSON string with a single parse. The first significant character decides
+     * whether the input can be a JSON object or array at all, and the input is then tokenized
+     * and formatted in the same pass, without building a JSONObject or JSONArray.
+     *
+     * @return null if the input was formatted, else a {@link Result} describing the error.
+     */
+    Result writeDocument(JsonOutput output, String jsonString) {
+        String json = jsonString == null ? "" : jsonString;
+
+        JsonSplitter splitter = null;
+        if (parallelThreshold > 0 && !isLimited() && json.length() >= parallelThreshold * 2) {
+            try {
+                splitter = JsonSplitter.scan(json);
+            } catch (JsonTokenizer.SyntaxException e) {
+                return new Result(e.reason, e.line, e.column, e.offset);
+            }
+            if (splitter != null && splitter.count < parallelThreshold) {
+                splitter = null;
+            }
+        }
+
+        return writeDocument(output, splitter == null ? configure(new JsonTokenizer(json, true)) : null, splitter);
+    }
+
+    /**
+     * Tokenizes and formats the JSON read from the given reader in a single pass.
+     *
+     * @return null if the input was formatted, else a {@link Result} describing the error.
+     */
+    private Result writeDocument(JsonOutput output, Reader reader, boolean containerRequired) {
+        return writeDocument(output, configure(new JsonTokenizer(reader, containerRequired)));
+    }
+
+    /**
+     * @return the path rules, or null if there are none.
+     */
+    JsonPathFilter getPathFilter() {
+        return pathFilter;
+    }
+
+    /**
+     * @return number of example values per path of a summary, see
+     * {@link Builder#setSummarySamples(int)}.
+     */
+    int getSummarySamples() {
+        return summarySamples;
+    }
+
+    /**
+     * @return true if strings are reported as they are written in the input, see
+     * {@link #configure(JsonTokenizer)}.
+     */
+    boolean isRawStrings() {
+        return rawStrings;
+    }
+
+    /**
+     * Makes the tokenizer report strings as they are written in the input for {@link #COMPACT}
+     * output or when literals are preserved, so the escape sequences are copied unchanged, and
+     * passes on the string length limit so that long strings are not kept whole.
+     */
+    JsonTokenizer configure(JsonTokenizer tokenizer) {
+        if (rawStrings) {
+            tokenizer.setRawStrings(true);
+        }
+
+        tokenizer.setMaxStringLength(maxStringLength);
+
+        return tokenizer;
+    }
+
+    /**
+     * @return true if any of the depth, element, string length or output limits, or any path
+     * rule is set. These need the whole document in a single pass, so parallel formatting is
+     * not used.
+     */
+    boolean isLimited() {
+        return maxDepth > 0 || maxElements > 0 || maxStringLength > 0 || outputBudget > 0 || pathFilter != null;
+    }
+
+    /**
+     * Formats the input of the tokenizer in a single pass, on the calling thread.
+     *
+     * @return null if the input was formatted, else a {@link Result} describing the error.
+     */
+    Result writeDocument(JsonOutput output, JsonTokenizer tokenizer) {
+        return writeDocument(output, tokenizer, new TokenState());
+    }
+
+    /**
+     * Formats the input of the tokenizer in a single pass, with the given state.
+     *
+     * @return null if the input was formatted, else a {@link Result} describing the error.
+     */
+    Result writeDocument(JsonOutput output, JsonTokenizer tokenizer, TokenState state) {
+        return writeDocument(output, tokenizer, null, state);
+    }
+
+    /**
+     * Formats the input of the tokenizer, or the members found by the splitter in parallel.
+     *
+     * @return null if the input was formatted, else a {@link Result} describing the error.
+     */
+    private Result writeDocument(JsonOutput output, JsonTokenizer tokenizer, JsonSplitter splitter) {
+        return writeDocument(output, tokenizer, splitter, new TokenState());
+    }
+
+    /**
+     * @param state state for the tokenizer, ignored when formatting in parallel.
+     */
+    private Result writeDocument(JsonOutput output, JsonTokenizer tokenizer, JsonSplitter splitter, TokenState state) {
+        Result error = null;
+
+        try {
+            if (splitter != null) {
+                formatParallel(output, splitter);
+            } else {
+                formatTokens(output, tokenizer, state);
+            }
+            closeStyle(output);
+        } catch (JsonTokenizer.SyntaxException e) {
+            error = new Result(e.reason, e.line, e.column, e.offset);
+        } catch (JSONException e) {
+            error = new Result(e.getMessage(), -1, -1, -1);
+        } catch (IOException e) {
+            error = new Result("I/O error. " + e.getMessage(), -1, -1, -1);
+        }
+
+        if (error != null) {
+            output.discard();
+        }
+
+        return error;
+    }
+
+    private boolean writeJson(JsonOutput output, JSONObject jsonObject) {
+        boolean result = false;
+
+        try {
+            if (outputFormat == COMPACT && !isLimited()) {
+                output.append(jsonObject != null ? jsonObject.toString() : "");
+            } else if (jsonObject != null) {
+                formatJson(output, jsonObject);
+                closeStyle(output);
+            }
+            result = true;
+        } catch (JSONException e) {
+            Log.e("JsonFormatter", e.getMessage());
+        } catch (IOException e) {
+            Log.e("JsonFormatter", "Unable to write the output. " + e.getMessage());
+        }
+
+        return result;
+    }
+
+    private boolean writeJson(JsonOutput output, JSONArray jsonArray) {
+        boolean result = false;
+
+        try {
+            if (outputFormat == COMPACT && !isLimited()) {
+                output.append(jsonArray != null ? jsonArray.toString() : "");
+            } else if (jsonArray != null) {
+                formatJson(output, jsonArray);
+                closeStyle(output);
+            }
+            result = true;
+        } catch (JSONException e) {
+            Log.e("JsonFormatter", e.getMessage());
+        } catch (IOException e) {
+            Log.e("JsonFormatter", "Unable to write the output. " + e.getMessage());
+        }
+
+        return result;
+    }
+
+    private boolean writeJson(JsonOutput output, Reader reader) {
+        Result error = null;
+
+        if (reader != null) {
+            error = writeDocument(output, reader, false);
+            if (error != null) {
+                Log.e("JsonFormatter", "Unable to format the input. " + error);
+            }
+        }
+
+        return reader != null && error == null;
+    }
+
+    /**
+     * @return this formatter if it has neither path rules nor a depth limit, else a copy of it
+     * without them. The rules are applied while the input is summarized, and don't match the
+     * paths of the summary itself.
+     */
+    JsonFormatter forSummary() {
+        if (pathFilter == null && maxDepth == 0) {
+            return this;
+        }
+
+        Builder builder = new Builder(this).setMaxDepth(0);
+        builder.includePaths.clear();
+        builder.excludePaths.clear();
+        builder.maskPaths.clear();
+
+        return builder.build();
+    }
+
+    private boolean finish(JsonOutput output) {
+        boolean result = false;
+
+        try {
+            output.finish();
+            result = true;
+        } catch (IOException e) {
+            Log.e("JsonFormatter", "Unable to write the output. " + e.getMessage());
+        }
+
+        return result;
+    }
+
+    private void formatTokens(JsonOutput output, JsonTokenizer tokenizer, TokenState state) throws IOException, JSONException {
+        int token;
+        while (!state.stopped && (token = tokenizer.next()) != JsonTokenizer.END_DOCUMENT) {
+            formatToken(output, tokenizer, token, state);
+
+            output.checkpoint();
+        }
+    }
+
+    /**
+     * Formats the top level object or array found by the splitter. Runs of members are formatted
+     * into separate buffers on worker threads and then joined in order, separated by commas.
+     */
+    private void formatParallel(JsonOutput output, final JsonSplitter splitter) throws IOException, JSONException {
+        int count = splitter.count;
+        int perChunk = Math.max(MIN_PARALLEL_CHUNK, (count + Workers.CHUNK_COUNT - 1) / Workers.CHUNK_COUNT);
+
+        final int colorRole = splitter.object ? COLOR_BRACES : COLOR_SQ_BRACKET;
+
+        List<Callable<JsonOutput>> chunks = new ArrayList<Callable<JsonOutput>>();
+        for (int from = 0; from < count; from += perChunk) {
+            final int chunkFrom = from;
+            final int chunkTo = Math.min(count, from + perChunk);
+
+            chunks.add(new Callable<JsonOutput>() {
+                @Override
+                public JsonOutput call() throws Exception {
+                    JsonOutput chunk = newChunk(chunkFrom == 0 ? colorRole : COLOR_COMMA);
+
+                    JsonTokenizer tokenizer = configure(splitter.tokenizer(chunkFrom, chunkTo));
+                    if (formatMembers(chunk, tokenizer) != chunkTo - chunkFrom) {
+                        throw tokenizer.syntaxError("Unexpected ','");
+                    }
+                    return chunk;
+                }
+            });
+        }
+
+        addNonQuotedElement(output, splitter.object ? '{' : '[', colorRole);
+        joinChunks(output, chunks);
+        output.append(newLine);
+        addNonQuotedElement(output, splitter.object ? '}' : ']', colorRole);
+    }
+
+    /**
+     * Same as {@link #formatTokens(JsonOutput, JsonTokenizer, TokenState)} for a tokenizer created with
+     * {@link JsonTokenizer#forFragment(String, int, int, boolean, int, int)}.
+     *
+     * @return number of top level members formatted.
+     */
+    private int formatMembers(JsonOutput output, JsonTokenizer tokenizer) throws IOException, JSONException {
+        TokenState state = new TokenState();
+        int members = 0;
+
+        int token;
+        while ((token = tokenizer.next()) != JsonTokenizer.END_DOCUMENT) {
+            if (tokenizer.getDepth() == 1 && (token == JsonTokenizer.NAME || tokenizer.isArrayElement())) {
+                members++;
+            }
+
+            formatToken(output, tokenizer, token, state);
+
+            output.checkpoint();
+        }
+
+        return members;
+    }
+
+    /**
+     * Creates the output of a chunk formatted on a worker thread.
+     *
+     * @param precedingRole color of the token written in front of the chunk, the opening bracket
+     *                      or a comma. In {@link #HTML_CSS} output its class span is still open
+     *                      where the chunk is appended, so the chunk continues it like the
+     *                      sequential formatter would.
+     */
+    private JsonOutput newChunk(int precedingRole) {
+        JsonOutput chunk = new JsonOutput();
+        chunk.stopOnInterrupt();
+
+        if (outputFormat == HTML_CSS) {
+            chunk.setOpenStyle(precedingRole);
+        }
+
+        return chunk;
+    }
+
+    /**
+     * Runs the chunk jobs on the worker threads and appends their output in order, separated by
+     * commas. Only a limited number of chunks are in flight at a time, so a slow destination
+     * holds back the workers instead of piling up formatted output. The class span left open by
+     * a chunk of {@link #HTML_CSS} output stays open in the output.
+     */
+    private void joinChunks(JsonOutput output, List<Callable<JsonOutput>> chunks) throws IOException, JSONException {
+        int size = chunks.size();
+        List<Future<JsonOutput>> futures = new ArrayList<Future<JsonOutput>>(size);
+
+        try {
+            for (int i = 0; i < size; i++) {
+                while (futures.size() < size && futures.size() < i + Workers.MAX_IN_FLIGHT) {
+                    futures.add(Workers.EXECUTOR.submit(chunks.get(futures.size())));
+                }
+
+                JsonOutput chunk = futures.get(i).get();
+                futures.set(i, null);
+
+                if (i > 0) {
+                    addNonQuotedElement(output, ',', COLOR_COMMA);
+                }
+                output.append(chunk);
+                output.setOpenStyle(chunk.getOpenStyle());
+                output.checkpoint();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Formatting cancelled");
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof JSONException) {
+                throw (JSONException) cause;
+            } else if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            throw new JSONException(String.valueOf(cause));
+        } finally {
+            for (Future<JsonOutput> future : futures) {
+                if (future != null) {
+                    future.cancel(true);
+                }
+            }
+        }
+    }
+
+    /**
+     * Formats a single token read from the tokenizer. A token starts at most one new line,
+     * except for the line of the marker added when the output budget runs out.
+     * <p>
+     * Members past the element limit and the contents of containers past the depth limit are
+     * skipped; the tokenizer still reads them, but nothing is written until the container
+     * closes, where a marker with the number of skipped items is added.
+     *
+     * @param state formatting state, carried from one token to the next.
+     */
+    void formatToken(JsonOutput output, JsonTokenizer tokenizer, int token, TokenState state) {
+        int level = tokenizer.getDepth() + state.baseLevel;
+
+        if (state.skipLevel >= 0) {
+            if (level != state.skipLevel || (token != JsonTokenizer.END_OBJECT && token != JsonTokenizer.END_ARRAY)) {
+                return;
+            }
+
+            int count = tokenizer.getMemberCount();
+            if (!state.collapsed) {
+                if (!state.isFirst) {
+                    addNonQuotedElement(output, ',', COLOR_COMMA);
+                }
+                output.append(newLine);
+                addIndent(output, level + 1);
+                addMoreMarker(output, count - maxElements);
+                state.isFirst = false;
+            } else if (count > 0) {
+                addItemsMarker(output, count);
+            }
+
+            state.skipLevel = -1;
+        }
+
+        if (state.dropLevel >= 0) {
+            if (level == state.dropLevel) {
+                if (state.dropOpen) {
+                    // end of the dropped object or array
+                    state.dropLevel = -1;
+                    state.dropOpen = false;
+                } else if (token == JsonTokenizer.BEGIN_OBJECT || token == JsonTokenizer.BEGIN_ARRAY) {
+                    state.dropOpen = true;
+                } else {
+                    state.dropLevel = -1;
+                }
+            }
+
+            return;
+        }
+
+        switch (token) {
+            case JsonTokenizer.END_OBJECT:
+            case JsonTokenizer.END_ARRAY:
+                if (!state.isFirst) {
+                    output.append(newLine);
+                    addIndent(output, level);
+                }
+                int contentEnd = output.length();
+
+                if (token == JsonTokenizer.END_OBJECT) {
+                    addNonQuotedElement(output, '}', COLOR_BRACES);
+                } else {
+                    addNonQuotedElement(output, ']', COLOR_SQ_BRACKET);
+                }
+                state.isFirst = false;
+
+                if (state.index != null) {
+                    state.index.close(contentEnd, output.length(), tokenizer.getMemberCount(), tokenizer.getOffset());
+                }
+                break;
+
+            case JsonTokenizer.NAME:
+                if (isPastElementLimit(tokenizer.getMemberIndex())) {
+                    state.skip(level - 1, false);
+                    return;
+                }
+
+                int action = filterMember(state, level, tokenizer.getValue(), -1);
+                if (action == JsonPathFilter.DROP) {
+                    // drop the value that follows
+                    state.drop(level, false);
+                    return;
+                }
+                if ((action & JsonPathFilter.PARTIAL) != 0) {
+                    // written with the value, if that is an object or array
+                    state.hold(tokenizer.getValue().toString(), tokenizer.isStringTruncated(), action);
+                    return;
+                }
+                state.maskLevel = action == JsonPathFilter.MASK ? level : -1;
+
+                addMemberKey(output, state, level, tokenizer.getValue(), tokenizer.isStringTruncated(), tokenizer.getMemberIndex());
+                break;
+
+            default:
+                boolean container = token == JsonTokenizer.BEGIN_OBJECT || token == JsonTokenizer.BEGIN_ARRAY;
+
+                if (state.heldKey != null) {
+                    String key = state.heldKey;
+                    state.heldKey = null;
+
+                    int heldAction = JsonPathFilter.resolve(state.heldAction, container);
+                    if (heldAction == JsonPathFilter.DROP) {
+                        return;
+                    }
+                    state.maskLevel = heldAction == JsonPathFilter.MASK ? level : -1;
+
+                    addMemberKey(output, state, level, key, state.heldKeyTruncated, tokenizer.getMemberIndex());
+                }
+
+                boolean masked = state.maskLevel == level;
+                state.maskLevel = -1;
+
+                if (tokenizer.isArrayElement()) {
+                    if (isPastElementLimit(tokenizer.getMemberIndex())) {
+                        state.skip(level - 1, false);
+                        return;
+                    }
+
+                    int elementAction = JsonPathFilter.resolve(
+                            filterMember(state, level, null, tokenizer.getMemberIndex()), container);
+                    if (elementAction == JsonPathFilter.DROP) {
+                        if (container) {
+                            state.drop(level, true);
+                        }
+                        return;
+                    }
+                    masked = elementAction == JsonPathFilter.MASK;
+
+                    if (!state.isFirst) {
+                        addNonQuotedElement(output, ',', COLOR_COMMA);
+                    }
+
+                    output.append(newLine);
+                    addIndent(output, level);
+
+                    if (state.index != null) {
+                        state.index.addElement(level, tokenizer.getMemberIndex());
+                    }
+                }
+
+                // the top level value is not a member
+                boolean member = state.index != null && tokenizer.getDepth() > 0;
+
+                if (masked) {
+                    addQuotedElement(output, JsonPathFilter.MASK_TEXT, COLOR_STRING);
+                    if (member) {
+                        state.index.setValue(JsonTokenizer.STRING, output.getTokenStart(), output.getTokenEnd(), false);
+                    }
+                    if (container) {
+                        state.drop(level, true);
+                    }
+                    state.isFirst = false;
+                } else {
+                    int start = output.length();
+                    state.isFirst = addTokenElement(output, token, tokenizer.getValue(), tokenizer.isStringTruncated());
+                    if (state.isFirst && state.index != null) {
+                        state.index.open(start, output.length(), level, tokenizer.getOffset() - 1);
+                    }
+                    if (member) {
+                        state.index.setValue(token, output.getTokenStart(), output.getTokenEnd(), state.isFirst);
+                    }
+                    if (state.isFirst && isPastDepthLimit(level)) {
+                        state.skip(level, true);
+                    }
+                }
+        }
+
+        if (isOverBudget(output)) {
+            output.append(newLine);
+            addMarker(output, " output truncated");
+            state.stopped = true;
+        }
+    }
+
+    /**
+     * Adds the key of an object member to the output, on a new line.
+     */
+    private void addMemberKey(JsonOutput output, TokenState state, int level, CharSequence key, boolean truncated, int memberIndex) {
+        if (!state.isFirst) {
+            addNonQuotedElement(output, ',', COLOR_COMMA);
+        }
+
+        output.append(newLine);
+        addIndent(output, level);
+
+        addQuotedToken(output, key, COLOR_KEY, truncated);
+        if (state.index != null) {
+            state.index.addKey(level, memberIndex, output.getTokenStart(), output.getTokenEnd());
+        }
+
+        output.append(keySeparator);
+        state.isFirst = false;
+    }
+
+    /**
+     * Adds the key of an object member and the separator after it, as written outside of a
+     * document, e.g. in a diff.
+     */
+    void addKey(JsonOutput output, CharSequence key) {
+        addQuotedToken(output, key, COLOR_KEY, false);
+        output.append(keySeparator);
+    }
+
+    /**
+     * Adds a value, or an opening or closing bracket, as written outside of a document, e.g. in
+     * a diff.
+     *
+     * @param token one of the token constants of {@link JsonTokenizer}, except NAME.
+     * @param value text of the value, or null for brackets.
+     */
+    void addToken(JsonOutput output, int token, CharSequence value) {
+        if (token == JsonTokenizer.END_OBJECT) {
+            addNonQuotedElement(output, '}', COLOR_BRACES);
+        } else if (token == JsonTokenizer.END_ARRAY) {
+            addNonQuotedElement(output, ']', COLOR_SQ_BRACKET);
+        } else {
+            addTokenElement(output, token, value, false);
+        }
+    }
+
+    /**
+     * @return the line break of the output format, also for {@link #COMPACT} output, which
+     * has none between tokens.
+     */
+    String getLineBreak() {
+        return newLine.length() > 0 ? newLine : "\n";
+    }
+
+    /**
+     * Adds a value token to the output.
+     *
+     * @return true if the token opens a new object or array.
+     */
+    private boolean addTokenElement(JsonOutput output, int token, CharSequence value, boolean truncated) {
+        switch (token) {
+            case JsonTokenizer.BEGIN_OBJECT:
+                addNonQuotedElement(output, '{', COLOR_BRACES);
+                return true;
+
+            case JsonTokenizer.BEGIN_ARRAY:
+                addNonQuotedElement(output, '[', COLOR_SQ_BRACKET);
+                return true;
+
+            case JsonTokenizer.STRING:
+                addQuotedToken(output, value, COLOR_STRING, truncated);
+                break;
+
+            case JsonTokenizer.NUMBER:
+                addNonQuotedElement(output, value, COLOR_NUMBER);
+                break;
+
+            case JsonTokenizer.BOOLEAN:
+                addNonQuotedElement(output, value, COLOR_BOOLEAN);
+                break;
+
+            case JsonTokenizer.NULL:
+            default:
+                addNullElement(output);
+        }
+
+        return false;
+    }
+
+    /**
+     * Applies the path rules to a member.
+     *
+     * @return one of the actions of {@link JsonPathFilter}, see
+     * {@link JsonPathFilter#enter(JsonPathFilter.Cursor, int, CharSequence, int)}.
+     */
+    private int filterMember(TokenState state, int level, CharSequence key, int index) {
+        if (pathFilter == null) {
+            return JsonPathFilter.KEEP;
+        }
+
+        if (state.cursor == null) {
+            state.cursor = new JsonPathFilter.Cursor(pathFilter);
+        }
+
+        return pathFilter.enter(state.cursor, level, key, index);
+    }
+
+    private boolean isPastElementLimit(int index) {
+        return maxElements > 0 && index >= maxElements;
+    }
+
+    /**
+     * @return true if the contents of a container at the given level are beyond the depth limit.
+     */
+    private boolean isPastDepthLimit(int level) {
+        return maxDepth > 0 && level >= maxDepth;
+    }
+
+    private boolean isOverBudget(JsonOutput output) {
+        return outputBudget > 0 && output.size() >= outputBudget;
+    }
+
+    /**
+     * Formats a JSONObject tree, see {@link #formatTree(JsonOutput, TreeFrame)}.
+     */
+    private void formatJson(JsonOutput output, JSONObject jsonObject) throws JSONException, IOException {
+        TreeFrame root = openValue(output, jsonObject, 0);
+        if (root != null) {
+            formatTree(output, root);
+        }
+    }
+
+    /**
+     * Formats a JSONArray tree. A large array is formatted in parallel if that is enabled and
+     * no limits are set.
+     */
+    private void formatJson(JsonOutput output, JSONArray jsonArray) throws JSONException, IOException {
+        int len = jsonArray.length();
+
+        if (parallelThreshold > 0 && !isLimited() && len >= parallelThreshold) {
+            addNonQuotedElement(output, '[', COLOR_SQ_BRACKET);
+            formatElementsParallel(output, jsonArray);
+            output.append(newLine);
+            addNonQuotedElement(output, ']', COLOR_SQ_BRACKET);
+            return;
+        }
+
+        TreeFrame root = openValue(output, jsonArray, 0);
+        if (root != null) {
+            formatTree(output, root);
+        }
+    }
+
+    /**
+     * Walks a JSONObject/JSONArray tree with an explicit stack instead of recursion, so deeply
+     * nested input can't overflow the thread stack. Formatting starts with the members of the
+     * given frame, whose opening bracket is already written.
+     */
+    private void formatTree(JsonOutput output, TreeFrame root) throws JSONException, IOException {
+        List<TreeFrame> stack = new ArrayList<TreeFrame>();
+        stack.add(root);
+
+        JsonPathFilter.Cursor cursor = pathFilter != null ? new JsonPathFilter.Cursor(pathFilter) : null;
+
+        while (!stack.isEmpty()) {
+            TreeFrame frame = stack.get(stack.size() - 1);
+            int level = frame.level + 1;
+
+            if (frame.index < frame.end && !isPastElementLimit(frame.index)) {
+                String key = frame.object != null ? frame.keys.next() : null;
+                int index = frame.index++;
+                Object value = key != null ? frame.object.get(key) : frame.array.get(index);
+
+                int action = JsonPathFilter.KEEP;
+                if (cursor != null) {
+                    boolean container = value instanceof JSONObject || value instanceof JSONArray;
+                    action = JsonPathFilter.resolve(pathFilter.enter(cursor, level, key, index), container);
+                }
+                if (action == JsonPathFilter.DROP) {
+                    continue;
+                }
+
+                if (frame.written) {
+                    addNonQuotedElement(output, ',', COLOR_COMMA);
+                }
+                frame.written = true;
+
+                output.append(newLine);
+                addIndent(output, level);
+
+                if (key != null) {
+                    addQuotedElement(output, key, COLOR_KEY);
+                    output.append(keySeparator);
+                }
+
+                if (action == JsonPathFilter.MASK) {
+                    addQuotedElement(output, JsonPathFilter.MASK_TEXT, COLOR_STRING);
+                } else {
+                    TreeFrame child = openValue(output, value, level);
+                    if (child != null) {
+                        stack.add(child);
+                    }
+                }
+
+                if (isOverBudget(output)) {
+                    output.append(newLine);
+                    addMarker(output, " output truncated");
+                    return;
+                }
+
+                output.checkpoint();
+            } else {
+                stack.remove(stack.size() - 1);
+
+                if (frame.index < frame.end) {
+                    if (frame.written) {
+                        addNonQuotedElement(output, ',', COLOR_COMMA);
+                    }
+                    frame.written = true;
+
+                    output.append(newLine);
+                    addIndent(output, level);
+                    addMoreMarker(output, frame.end - frame.index);
+                }
+
+                if (frame.closes) {
+                    if (frame.written) {
+                        output.append(newLine);
+                        addIndent(output, frame.level);
+                    }
+
+                    if (frame.object != null) {
+                        addNonQuotedElement(output, '}', COLOR_BRACES);
+                    } else {
+                        addNonQuotedElement(output, ']', COLOR_SQ_BRACKET);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Writes a member value. For a non empty object or array only the opening bracket is
+     * written, unless it is past the depth limit and is written collapsed.
+     *
+     * @return the frame for the members of the opened object or array, or null if the value is complete.
+     */
+    private TreeFrame openValue(JsonOutput output, Object value, int level) {
+        if (value instanceof JSONObject) {
+            JSONObject object = (JSONObject) value;
+            addNonQuotedElement(output, '{', COLOR_BRACES);
+
+            if (isPastDepthLimit(level) && object.length() > 0) {
+                addItemsMarker(output, object.length());
+                addNonQuotedElement(output, '}', COLOR_BRACES);
+                return null;
+            }
+
+            return new TreeFrame(object, level);
+        } else if (value instanceof JSONArray) {
+            JSONArray array = (JSONArray) value;
+            addNonQuotedElement(output, '[', COLOR_SQ_BRACKET);
+
+            if (isPastDepthLimit(level) && array.length() > 0) {
+                addItemsMarker(output, array.length());
+                addNonQuotedElement(output, ']', COLOR_SQ_BRACKET);
+                return null;
+            }
+
+            return new TreeFrame(array, level, 0, array.length(), true);
+        }
+
+        addValueElement(output, value);
+        return null;
+    }
+
+    /**
+     * Formats the elements from index {@code from} (inclusive) to {@code to} (exclusive) of an
+     * array at the given level, each on a new line and separated by commas.
+     */
+    private void formatElements(JsonOutput output, int level, JSONArray jsonArray, int from, int to) throws JSONException, IOException {
+        formatTree(output, new TreeFrame(jsonArray, level, from, to, false));
+    }
+
+    /**
+     * Formats the elements of a top level array in chunks on the worker threads. The array is
+     * only read, so the workers can share it.
+     */
+    private void formatElementsParallel(JsonOutput output, final JSONArray jsonArray) throws JSONException, IOException {
+        int len = jsonArray.length();
+        int perChunk = Math.max(MIN_PARALLEL_CHUNK, (len + Workers.CHUNK_COUNT - 1) / Workers.CHUNK_COUNT);
+
+        List<Callable<JsonOutput>> chunks = new ArrayList<Callable<JsonOutput>>();
+        for (int from = 0; from < len; from += perChunk) {
+            final int chunkFrom = from;
+            final int chunkTo = Math.min(len, from + perChunk);
+
+            chunks.add(new Callable<JsonOutput>() {
+                @Override
+                public JsonOutput call() throws Exception {
+                    JsonOutput chunk = newChunk(chunkFrom == 0 ? COLOR_SQ_BRACKET : COLOR_COMMA);
+
+                    formatElements(chunk, 0, jsonArray, chunkFrom, chunkTo);
+                    return chunk;
+                }
+            });
+        }
+
+        joinChunks(output, chunks);
+    }
+
+    /**
+     * Adds a JSONObject/JSONArray member value, dispatching on its type so that numbers and
+     * booleans are appended without creating a String first.
+     */
+    private void addValueElement(JsonOutput output, Object element) {
+        if (element instanceof String) {
+            addQuotedElement(output, (String) element, COLOR_STRING);
+        } else if (element == null || JSONObject.NULL.equals(element)) {
+            addNullElement(output);
+        } else if (element instanceof Boolean) {
+            int start = openToken(output, COLOR_BOOLEAN);
+            output.append(((Boolean) element).booleanValue());
+            closeToken(output, COLOR_BOOLEAN, start);
+        } else if (element instanceof Integer || element instanceof Long) {
+            int start = openToken(output, COLOR_NUMBER);
+            output.append(((Number) element).longValue());
+            closeToken(output, COLOR_NUMBER, start);
+        } else if (element instanceof Double) {
+            int start = openToken(output, COLOR_NUMBER);
+            output.append(((Double) element).doubleValue());
+            closeToken(output, COLOR_NUMBER, start);
+        } else {
+            int start = openToken(output, COLOR_NUMBER);
+            output.append(element);
+            closeToken(output, COLOR_NUMBER, start);
+        }
+    }
+
+    private void addNullElement(JsonOutput output) {
+        int start = openToken(output, COLOR_NULL);
+        output.append(NULL_STRING);
+        closeToken(output, COLOR_NULL, start);
+    }
+
+    /**
+     * Adds a decoded key or string value, such as one of a JSONObject.
+     */
+    private void addQuotedElement(JsonOutput output, CharSequence value, int colorRole) {
+        addQuotedElement(output, value, colorRole, false, false);
+    }
+
+    /**
+     * Adds a key or string value read by the tokenizer, which is raw if the tokenizer was set
+     * to keep strings as they are written, or reads bytes.
+     *
+     * @param truncated true if the value is already cut by the tokenizer.
+     */
+    private void addQuotedToken(JsonOutput output, CharSequence value, int colorRole, boolean truncated) {
+        addQuotedElement(output, value, colorRole, truncated, rawStrings || output.isBytes());
+    }
+
+    /**
+     * Adds a key or string value, cut at the string length limit and escaped for the output format.
+     *
+     * @param truncated true if the value is already cut by the tokenizer.
+     * @param raw       true if the value is written as in the input, with its escape sequences.
+     */
+    private void addQuotedElement(JsonOutput output, CharSequence value, int colorRole, boolean truncated, boolean raw) {
+        if (maxStringLength > 0) {
+            int length = getCutLength(output, value, raw, truncated);
+            if (length < value.length()) {
+                value = value.subSequence(0, length);
+                truncated = true;
+            }
+        }
+
+        int start = openToken(output, colorRole);
+        output.append('"');
+        appendEscaped(output, value, raw ? rawEscapes : stringEscapes);
+        if (truncated) {
+            output.append(output.isBytes() ? ELLIPSIS_UTF8 : ELLIPSIS);
+        }
+        output.append('"');
+        closeToken(output, colorRole, start);
+    }
+
+    /**
+     * Appends a value with the chars that have an entry in the escape table replaced. Runs of
+     * chars that need no escaping are appended in bulk, and a value without any such char is
+     * appended as it is.
+     *
+     * @param escapes replacement of each ASCII char, null for chars that are appended as they
+     *                are; or null if nothing needs escaping.
+     */
+    private static void appendEscaped(JsonOutput output, CharSequence value, String[] escapes) {
+        if (escapes == null) {
+            output.append(value);
+            return;
+        }
+
+        int length = value.length();
+        int start = 0;
+        for (int i = 0; i < length; i++) {
+            char c = value.charAt(i);
+            if (c < ESCAPE_TABLE_SIZE && escapes[c] != null) {
+                if (i > start) {
+                    output.append(value, start, i);
+                }
+                output.append(escapes[c]);
+                start = i + 1;
+            }
+        }
+
+        if (start == 0) {
+            output.append(value);
+        } else if (start < length) {
+            output.append(value, start, length);
+        }
+    }
+
+    /**
+     * Builds the escape table for strings. Decoded strings need the JSON escapes for quotes,
+     * backslashes and control chars; raw strings already have them. HTML output additionally
+     * escapes the markup chars.
+     *
+     * @param decoded true for decoded strings, false for raw strings.
+     * @return the table, or null if no char needs escaping.
+     */
+    private String[] buildEscapes(boolean decoded) {
+        String[] escapes = new String[ESCAPE_TABLE_SIZE];
+        boolean any = false;
+
+        if (decoded) {
+            for (int c = 0; c < 0x20; c++) {
+                escapes[c] = String.format(Locale.US, "\\u%04x", c);
+            }
+            escapes['"'] = "\\\"";
+            escapes['\\'] = "\\\\";
+            escapes['\n'] = "\\n";
+            escapes['\r'] = "\\r";
+            escapes['\t'] = "\\t";
+            escapes['\b'] = "\\b";
+            escapes['\f'] = "\\f";
+            any = true;
+        }
+
+        if (isHtml()) {
+            escapes['<'] = "&lt;";
+            escapes['>'] = "&gt;";
+            escapes['&'] = "&amp;";
+            any = true;
+        }
+
+        return any ? escapes : null;
+    }
+
+    /**
+     * Finds where a string is cut at the length limit. Chars are counted as in the decoded
+     * string, like the tokenizer does: an escape sequence of a raw string is one char, and a
+     * UTF-8 sequence of a byte string is one char, or two for a character that needs a
+     * surrogate pair. A cut never splits an escape sequence, a UTF-8 sequence or a surrogate pair.
+     *
+     * @param truncated true if the value is already cut by the tokenizer.
+     * @return the length to keep, the whole length if the value is kept whole.
+     */
+    private int getCutLength(JsonOutput output, CharSequence value, boolean raw, boolean truncated) {
+        int length = value.length();
+        if (!truncated && length <= maxStringLength) {
+            // no char is shorter than one unit of the value
+            return length;
+        }
+
+        boolean utf8 = output.isBytes();
+        int chars = 0;
+        int i = 0;
+        int last = 0;
+        while (i < length) {
+            char c = value.charAt(i);
+            int sequence = 1;
+            int width = 1;
+            if (raw && c == '\\') {
+                sequence = i + 1 < length && value.charAt(i + 1) == 'u' ? 6 : 2;
+            } else if (utf8 && c >= 0x80) {
+                sequence = c < 0xC0 ? 1 : c < 0xE0 ? 2 : c < 0xF0 ? 3 : 4;
+                width = c < 0xC0 ? 0 : sequence == 4 ? 2 : 1;
+            }
+
+            if (chars + width > maxStringLength || i + sequence > length) {
+                truncated = true;
+                break;
+            }
+            chars += width;
+            last = i;
+            i += sequence;
+        }
+
+        // a cut string doesn't end with the first half of a surrogate pair
+        if (truncated && i > 0 && isHighSurrogate(value, last, i, raw)) {
+            i = last;
+        }
+
+        return i;
+    }
+
+    /**
+     * @return true if the char of a value from {@code start} to {@code end} is a high
+     * surrogate, written as it is or as a unicode escape of a raw value.
+     */
+    private static boolean isHighSurrogate(CharSequence value, int start, int end, boolean raw) {
+        if (end - start == 1) {
+            return Character.isHighSurrogate(value.charAt(start));
+        }
+        if (!raw || end - start != 6 || value.charAt(start + 1) != 'u') {
+            return false;
+        }
+
+        int c = 0;
+        for (int i = start + 2; i < end; i++) {
+            c = (c << 4) + Character.digit(value.charAt(i), 16);
+        }
+        return Character.isHighSurrogate((char) c);
+    }
+
+    /**
+     * Adds the marker for members left out at the element limit.
+     */
+    private void addMoreMarker(JsonOutput output, int count) {
+        addMarker(output, count == 1 ? " 1 more item" : " " + count + " more items");
+    }
+
+    /**
+     * Adds the marker for the contents of a container collapsed at the depth limit.
+     */
+    void addItemsMarker(JsonOutput output, int count) {
+        addMarker(output, count == 1 ? " 1 item" : " " + count + " items");
+    }
+
+    /**
+     * Adds an ellipsis followed by the given text, styled like null values.
+     */
+    void addMarker(JsonOutput output, String text) {
+        int start = openToken(output, COLOR_NULL);
+        output
+                .append(output.isBytes() ? ELLIPSIS_UTF8 : ELLIPSIS)
+                .append(text);
+        closeToken(output, COLOR_NULL, start);
+    }
+
+    private void addNonQuotedElement(JsonOutput output, CharSequence value, int colorRole) {
+        int start = openToken(output, colorRole);
+        output.append(value);
+        closeToken(output, colorRole, start);
+    }
+
+    private void addNonQuotedElement(JsonOutput output, char value, int colorRole) {
+        int start = openToken(output, colorRole);
+        output.append(value);
+        closeToken(output, colorRole, start);
     }
 
     /**
-     * Formats the JSONObject instance input. The output will be either in String or HTML format.
+     * Starts a colored token.
      *
-     * @param jsonObject input JSONObject instance.
-     * @return if input is valid, returns formatted output JSON either in String or HTML format; else empty string.
+     * @return the position of the token in the output, to be passed to {@link #closeToken(JsonOutput, int, int)}.
      */
-    public String format(JSONObject jsonObject) {
-        StringBuilder stringBuilder = new StringBuilder();
+    int openToken(JsonOutput output, int colorRole) {
+        int start = output.length();
 
-        try {
-            formatJson(stringBuilder, 0, jsonObject, false);
-        } catch (JSONException e) {
-            Log.e("JsonFormatter", e.getMessage());
+        if (outputFormat == HTML) {
+            output.append(openTags[colorRole]);
+        } else if (outputFormat == HTML_CSS) {
+            int openStyle = output.getOpenStyle();
+            if (openStyle != colorRole) {
+                if (openStyle != JsonOutput.NO_STYLE) {
+                    output.append(CSS_CLOSE_TAG);
+                }
+                output.append(openTags[colorRole]);
+                output.setOpenStyle(colorRole);
+            }
         }
 
-        return stringBuilder.toString();
+        output.markTokenStart();
+        return start;
     }
 
     /**
-     * Formats the JSONArray instance input. The output will be either in String or HTML format.
-     *
-     * @param jsonArray input JSONArray instance.
-     * @return if input is valid, returns formatted output JSON either in String or HTML format; else empty string.
+     * Ends a colored token. In {@link #HTML_CSS} output the span is left open, so that it can be
+     * continued by the next token if that has the same color; {@link #closeStyle(JsonOutput)}
+     * closes it at the end.
      */
-    public String format(JSONArray jsonArray) {
-        StringBuilder stringBuilder = new StringBuilder();
+    void closeToken(JsonOutput output, int colorRole, int start) {
+        output.markTokenEnd();
 
-        try {
-            formatJson(stringBuilder, 0, jsonArray, false);
-        } catch (JSONException e) {
-            Log.e("JsonFormatter", e.getMessage());
+        if (outputFormat == HTML) {
+            output.append(closeTags[colorRole]);
+        } else if (outputFormat == SPANNABLE) {
+            output.addSpan(start, output.length(), spanColors[colorRole], colorRole == COLOR_NULL);
         }
-
-        return stringBuilder.toString();
     }
 
-    private void formatJson(StringBuilder builder, int level, JSONObject jsonObject, boolean isArrayElement) throws JSONException {
-        if (jsonObject != null && builder != null) {
-            String levelZeroTab = tabs(level);
-            String levelOneTab = tabs(level + 1);
-            String newLine = getNewlineString();
+    /**
+     * Escapes a search text the way keys and strings are escaped in the output, so that it can
+     * be matched against the output.
+     */
+    String escapeForSearch(String text) {
+        JsonOutput output = new JsonOutput();
+        appendEscaped(output, text, rawStrings ? rawEscapes : stringEscapes);
 
-            if (isArrayElement) {
-                builder.append(levelZeroTab);
-            }
+        return output.toString();
+    }
 
-            addNonQuotedElement(builder, "{", colorBraces);
+    /**
+     * @return the opening tag of a highlight in HTML output, closed with a {@code </span>}.
+     */
+    String getHighlightTag() {
+        return outputFormat == HTML_CSS
+                ? "<span class=" + CSS_CLASSES[COLOR_HIGHLIGHT] + ">"
+                : "<span style=\"background-color:" + getColorHash(COLOR_HIGHLIGHT) + "\">";
+    }
 
-            if (jsonObject.length() > 0) {
-                Iterator<String> keys = jsonObject.keys();
-                while (keys.hasNext()) {
-                    builder.append(getNewlineString());
+    /**
+     * @return the background color of a highlight in {@link Spanned} text.
+     */
+    int getHighlightColor() {
+        return spanColors[COLOR_HIGHLIGHT];
+    }
 
-                    String key = keys.next();
-                    Object value = jsonObject.get(key);
+    int getOutputFormat() {
+        return outputFormat;
+    }
 
-                    builder.append(levelOneTab);
+    boolean isHtml() {
+        return outputFormat == HTML || outputFormat == HTML_CSS;
+    }
 
-                    addQuotedElement(builder, key, colorKey);
+    /**
+     * Closes the class span left open by the last token of {@link #HTML_CSS} output.
+     */
+    void closeStyle(JsonOutput output) {
+        if (outputFormat == HTML_CSS && output.getOpenStyle() != JsonOutput.NO_STYLE) {
+            output.append(CSS_CLOSE_TAG);
+            output.setOpenStyle(JsonOutput.NO_STYLE);
+        }
+    }
 
-                    builder.append(" : ");
+    void addIndent(JsonOutput output, int level) {
+        int last = indents.length - 1;
+        while (level > last) {
+            output.append(indents[last]);
+            level -= last;
+        }
 
-                    if (value instanceof JSONArray) {
-                        formatJson(builder, level + 1, (JSONArray) value, false);
-                    } else if (value instanceof JSONObject) {
-                        formatJson(builder, level + 1, (JSONObject) value, false);
-                    } else {
-                        addValueElement(builder, value);
-                    }
+        output.append(indents[level]);
+    }
 
-                    if (keys.hasNext()) {
-                        addNonQuotedElement(builder, ",", colorComma);
-                    }
-                }
+    private static String[] buildIndents(String tabString) {
+        String[] indents = new String[INDENT_CACHE_SIZE];
+        indents[0] = "";
+        for (int i = 1; i < INDENT_CACHE_SIZE; i++) {
+            indents[i] = indents[i - 1] + tabString;
+        }
 
-                builder
-                        .append(newLine)
-                        .append(levelZeroTab);
-            }
+        return indents;
+    }
 
-            addNonQuotedElement(builder, "}", colorBraces);
-        }
+    /**
+     * @return a key that is the same for all formatters that produce the same output for the
+     * same input. The parallel threshold doesn't change the output, so it is not part of it.
+     */
+    String getConfigKey() {
+        return configKey;
     }
 
-    private void formatJson(StringBuilder builder, int level, JSONArray jsonArray, boolean isArrayElement) throws JSONException {
-        if (jsonArray != null && builder != null) {
-            int len = jsonArray.length();
-            String levelZeroTab = tabs(level);
-            String levelOneTab = tabs(level + 1);
-            String newLine = getNewlineString();
+    private String buildConfigKey() {
+        StringBuilder key = new StringBuilder()
+                .append(outputFormat).append(',')
+                .append(indentWidth).append(',')
+                .append(maxDepth).append(',')
+                .append(maxElements).append(',')
+                .append(maxStringLength).append(',')
+                .append(outputBudget).append(',')
+                .append(rawStrings);
+
+        if (pathFilter != null) {
+            key.append(',').append(pathFilter.getKey());
+        }
 
-            if (isArrayElement) {
-                builder.append(levelZeroTab);
+        if (isHtml() || outputFormat == SPANNABLE) {
+            for (int i = 0; i < COLOR_COUNT; i++) {
+                key.append(',').append(getColorHash(i));
             }
+        }
 
-            addNonQuotedElement(builder, "[", colorSqBracket);
+        return key.toString();
+    }
 
-            if (len > 0) {
-                for (int i = 0; i < len; i++) {
-                    builder.append(newLine);
+    /**
+     * Returns the style sheet for {@link #HTML_CSS} output, with a rule for the class of each of
+     * the colors of this formatter. Add it once to the page, in a {@code <style>} element.
+     *
+     * @return CSS rules for the classes used in the output.
+     */
+    public String getStyleSheet() {
+        StringBuilder css = new StringBuilder();
+        for (int i = 0; i < COLOR_COUNT; i++) {
+            String colorHash = getColorHash(i);
+            if (TextUtils.isEmpty(colorHash)) {
+                colorHash = "#000";
+            }
 
-                    Object element = jsonArray.get(i);
-                    if (element instanceof JSONArray) {
-                        formatJson(builder, level + 1, (JSONArray) element, true);
-                    } else if (element instanceof JSONObject) {
-                        formatJson(builder, level + 1, (JSONObject) element, true);
-                    } else {
-                        builder.append(levelOneTab);
-                        addValueElement(builder, element);
-                    }
+            css.append('.').append(CSS_CLASSES[i]).append(i == COLOR_HIGHLIGHT ? "{background-color:" : "{color:").append(colorHash);
+            if (i == COLOR_NULL) {
+                css.append(";font-style:italic");
+            }
+            css.append("}\n");
+        }
 
-                    if (len - i != 1) {
-                        addNonQuotedElement(builder, ",", colorComma);
-                    }
-                }
+        return css.toString();
+    }
 
-                builder
-                        .append(newLine)
-                        .append(levelZeroTab);
+    private String[] buildOpenTags() {
+        String[] tags = new String[COLOR_COUNT];
+        if (outputFormat == HTML_CSS) {
+            for (int i = 0; i < COLOR_COUNT; i++) {
+                // the class names don't need quotes in HTML
+                tags[i] = "<span class=" + CSS_CLASSES[i] + ">";
             }
 
-            addNonQuotedElement(builder, "]", colorSqBracket);
+            return tags;
         }
-    }
 
-    private void addValueElement(StringBuilder builder, Object element) {
-        if (element instanceof String) {
-            addQuotedElement(builder, element, colorString);
-        } else if ("null".equals(element.toString())) {
-            addNullElement(builder);
-        } else if (element instanceof Boolean) {
-            addNonQuotedElement(builder, element, colorBoolean);
-        } else {
-            addNonQuotedElement(builder, element, colorNumber);
+        for (int i = 0; i < COLOR_COUNT; i++) {
+            tags[i] = fontTagOpen(i);
         }
-    }
+        tags[COLOR_NULL] = "<i>" + tags[COLOR_NULL];
 
-    private void addNullElement(StringBuilder builder) {
-        if (outputFormat == HTML) {
-            builder
-                    .append("<i>")
-                    .append(fontTagOpen(colorNull))
-                    .append("null")
-                    .append(fontTagClose())
-                    .append("</i>");
-        } else {
-            builder.append("null");
-        }
+        return tags;
     }
 
-    private void addQuotedElement(StringBuilder builder, Object value, String colorHash) {
-        if (outputFormat == HTML) {
-            builder
-                    .append(fontTagOpen(colorHash))
-                    .append("\"")
-                    .append(value)
-                    .append("\"")
-                    .append(fontTagClose());
-        } else {
-            builder.
-                    append("\"")
-                    .append(value)
-                    .append("\"");
+    private String[] buildCloseTags() {
+        String[] tags = new String[COLOR_COUNT];
+        for (int i = 0; i < COLOR_COUNT; i++) {
+            tags[i] = fontTagClose();
         }
-    }
+        tags[COLOR_NULL] = tags[COLOR_NULL] + "</i>";
 
-    private void addNonQuotedElement(StringBuilder builder, Object value, String colorHash) {
-        if (outputFormat == HTML) {
-            builder
-                    .append(fontTagOpen(colorHash))
-                    .append(value)
-                    .append(fontTagClose());
-        } else {
-            builder.append(value);
-        }
+        return tags;
     }
 
-    private String fontTagOpen(String colorHash) {
+    private String fontTagOpen(int colorRole) {
+        String colorHash = getColorHash(colorRole);
         if (TextUtils.isEmpty(colorHash)) {
             colorHash = "#000";
         }
@@ -257,17 +2128,53 @@ public class JsonFormatter {
         return "<font color=\"" + colorHash + "\">";
     }
 
-    private String fontTagClose() {
-        return "</font>";
+    private String getColorHash(int colorRole) {
+        switch (colorRole) {
+            case COLOR_BRACES:
+                return colorBraces;
+            case COLOR_SQ_BRACKET:
+                return colorSqBracket;
+            case COLOR_COMMA:
+                return colorComma;
+            case COLOR_KEY:
+                return colorKey;
+            case COLOR_STRING:
+                return colorString;
+            case COLOR_NUMBER:
+                return colorNumber;
+            case COLOR_BOOLEAN:
+                return colorBoolean;
+            case COLOR_ADDED:
+                return colorAdded;
+            case COLOR_REMOVED:
+                return colorRemoved;
+            case COLOR_HIGHLIGHT:
+                return colorHighlight;
+            case COLOR_NULL:
+            default:
+                return colorNull;
+        }
     }
 
-    private String tabs(int level) {
-        String tabs = "";
-        String tabString = getTabString();
-        for (int i = 0; i < level; i++) {
-            tabs += tabString;
+    /**
+     * Parses the color hash codes once, so {@link #SPANNABLE} output doesn't parse a color per token.
+     */
+    private int[] parseSpanColors() {
+        int[] colors = new int[COLOR_COUNT];
+
+        for (int i = 0; i < COLOR_COUNT; i++) {
+            try {
+                colors[i] = Color.parseColor(getColorHash(i));
+            } catch (Exception e) {
+                colors[i] = Color.BLACK;
+            }
         }
-        return tabs;
+
+        return colors;
+    }
+
+    private String fontTagClose() {
+        return "</font>";
     }
 
     private String getTabString() {
@@ -275,26 +2182,45 @@ public class JsonFormatter {
 
         switch (outputFormat) {
             case HTML:
-                tabString = "&emsp;";
+            case HTML_CSS:
+                tabString = indentWidth > 0 ? repeat("&nbsp;", indentWidth) : "&emsp;";
+                break;
+
+            case COMPACT:
+                tabString = "";
                 break;
 
             case STRING:
             default:
-                tabString = "\t";
+                tabString = indentWidth > 0 ? repeat(" ", indentWidth) : "\t";
 
         }
 
         return tabString;
     }
 
+    private static String repeat(String value, int count) {
+        StringBuilder builder = new StringBuilder(value.length() * count);
+        for (int i = 0; i < count; i++) {
+            builder.append(value);
+        }
+
+        return builder.toString();
+    }
+
     private String getNewlineString() {
         String newlineString;
 
         switch (outputFormat) {
             case HTML:
+            case HTML_CSS:
                 newlineString = "<br>";
                 break;
 
+            case COMPACT:
+                newlineString = "";
+                break;
+
             case STRING:
             default:
                 newlineString = "\n";
@@ -303,73 +2229,719 @@ public class JsonFormatter {
         return newlineString;
     }
 
+    /**
+     * Outcome of {@link #tryFormat(String)} and {@link #formatAsync(String, Callback)}: either the formatted output or the details of why
+     * the input is not valid JSON.
+     */
+    public static class Result {
+        private final CharSequence text;
+        private final String errorMessage;
+        private final int errorLine;
+        private final int errorColumn;
+        private final int errorOffset;
+
+        Result(CharSequence text) {
+            this.text = text;
+            this.errorMessage = null;
+            this.errorLine = -1;
+            this.errorColumn = -1;
+            this.errorOffset = -1;
+        }
+
+        Result(String errorMessage, int errorLine, int errorColumn, int errorOffset) {
+            this.text = "";
+            this.errorMessage = errorMessage;
+            this.errorLine = errorLine;
+            this.errorColumn = errorColumn;
+            this.errorOffset = errorOffset;
+        }
+
+        /**
+         * @return true if the input was valid and formatted.
+         */
+        public boolean isValid() {
+            return errorMessage == null;
+        }
+
+        /**
+         * @return formatted output if the input was valid; else empty string.
+         */
+        public String getOutput() {
+            return text.toString();
+        }
+
+        /**
+         * @return formatted output if the input was valid; else empty string. For {@link #SPANNABLE}
+         * output format this is the colored {@link Spanned} text.
+         */
+        public CharSequence getText() {
+            return text;
+        }
+
+        /**
+         * @return description of the error, or null if the input was valid.
+         */
+        public String getErrorMessage() {
+            return errorMessage;
+        }
+
+        /**
+         * @return 1 based line number of the error, or -1 if not known.
+         */
+        public int getErrorLine() {
+            return errorLine;
+        }
+
+        /**
+         * @return 1 based column number of the error, or -1 if not known.
+         */
+        public int getErrorColumn() {
+            return errorColumn;
+        }
+
+        /**
+         * @return 0 based character offset of the error in the input, or -1 if not known.
+         */
+        public int getErrorOffset() {
+            return errorOffset;
+        }
+
+        @Override
+        public String toString() {
+            return isValid() ? text.toString() : errorMessage + " at line " + errorLine + " column " + errorColumn;
+        }
+    }
+
+    /**
+     * Receives the result of an asynchronous formatting request on the main thread.
+     */
+    public interface Callback {
+
+        /**
+         * @param result formatted output or error details. Never null.
+         */
+        void onFormatted(Result result);
+    }
+
+    /**
+     * Handle of an asynchronous formatting request started with formatAsync(...).
+     */
+    public static class AsyncRequest {
+        private final FutureTask<Result> task;
+
+        AsyncRequest(final Callback callback, Callable<Result> job) {
+            task = new FutureTask<Result>(job) {
+                @Override
+                protected void done() {
+                    if (callback == null || isCancelled()) {
+                        return;
+                    }
+
+                    final Result result = getResult(this);
+                    MainThread.HANDLER.post(new Runnable() {
+                        @Override
+                        public void run() {
+                            // the request can be cancelled while this message waits in the queue
+                            if (!isCancelled()) {
+                                callback.onFormatted(result);
+                            }
+                        }
+                    });
+                }
+            };
+        }
+
+        /**
+         * Cancels the request. The background work is interrupted and stops at the next token,
+         * and the callback is not called even if the result is already waiting to be delivered,
+         * provided this is called on the main thread.
+         *
+         * @return false if the request was already finished and delivered, or cancelled.
+         */
+        public boolean cancel() {
+            return task.cancel(true);
+        }
+
+        public boolean isCancelled() {
+            return task.isCancelled();
+        }
+
+        public boolean isDone() {
+            return task.isDone();
+        }
+
+        /**
+         * Waits for the request to finish. Should not be called on the main thread.
+         *
+         * @return the result, or null if the request was cancelled or interrupted.
+         */
+        public Result get() {
+            Result result = null;
+
+            try {
+                result = task.get();
+            } catch (CancellationException e) {
+                // cancelled, no result
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (ExecutionException e) {
+                result = new Result(String.valueOf(e.getCause()), -1, -1, -1);
+            }
+
+            return result;
+        }
+
+        private static Result getResult(FutureTask<Result> task) {
+            try {
+                return task.get();
+            } catch (Exception e) {
+                return new Result(String.valueOf(e), -1, -1, -1);
+            }
+        }
+    }
+
+    /**
+     * Keeps only the most recent asynchronous request alive. Setting a new request cancels the
+     * previous one, so a result that is out of date never reaches the UI. Meant to be used from
+     * the main thread, e.g. one instance per screen, cancelled in onDestroy().
+     */
+    public static class LatestRequest {
+        private AsyncRequest current;
+
+        /**
+         * Cancels the previous request, if any, and keeps track of the given one.
+         *
+         * @param request the newest request.
+         * @return the given request.
+         */
+        public synchronized AsyncRequest set(AsyncRequest request) {
+            if (current != null && current != request) {
+                current.cancel();
+            }
+            current = request;
+
+            return request;
+        }
+
+        /**
+         * Cancels the current request, if any.
+         */
+        public synchronized void cancel() {
+            set(null);
+        }
+    }
+
+    /**
+     * Shared worker threads for parallel formatting and for records. The chunks and batches
+     * formatted on them never wait for other tasks, so a fixed pool can't deadlock.
+     */
+    static class Workers {
+        static final int THREAD_COUNT = Math.max(2, Runtime.getRuntime().availableProcessors());
+        static final int CHUNK_COUNT = THREAD_COUNT * 4;
+        static final int MAX_IN_FLIGHT = THREAD_COUNT * 2;
+
+        static final ExecutorService EXECUTOR = Executors.newFixedThreadPool(THREAD_COUNT, new ThreadFactory() {
+            private final AtomicInteger count = new AtomicInteger();
+
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "JsonFormatter #" + count.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    private static class MainThread {
+        static final Handler HANDLER = new Handler(Looper.getMainLooper());
+    }
+
+    /**
+     * Receives the formatted output chunk by chunk when formatting into an {@link Appendable}.
+     */
+    public interface ChunkListener {
+
+        /**
+         * Called every time a chunk of the output is ready. Chunks never split a token or a markup tag.
+         *
+         * @param chunk next part of the output. The instance is reused, so copy it if it is needed
+         *              after this method returns.
+         */
+        void onChunk(CharSequence chunk);
+    }
+
+    /**
+     * Receives the records that could not be formatted by
+     * {@link #formatRecords(Reader, Appendable, RecordListener)}.
+     */
+    public interface RecordListener {
+
+        /**
+         * @param line   1 based line number of the record in the input.
+         * @param record text of the line.
+         * @param error  details of why the record is not valid JSON.
+         */
+        void onInvalidRecord(long line, String record, Result error);
+    }
+
+    /**
+     * State of a token by token formatting run, carried from one call of
+     * {@link #formatToken(JsonOutput, JsonTokenizer, int, TokenState)} to the next.
+     */
+    static class TokenState {
+        boolean isFirst = true;
+        boolean stopped;
+        /**
+         * Collects the positions of the objects and arrays, if not null.
+         */
+        JsonIndex index;
+        /**
+         * Level of the tokenizer's top level value in the whole document, when only a part of
+         * the document is formatted.
+         */
+        int baseLevel;
+
+        int skipLevel = -1;
+        boolean collapsed;
+
+        JsonPathFilter.Cursor cursor;
+        int dropLevel = -1;
+        boolean dropOpen;
+        int maskLevel = -1;
+
+        /**
+         * Key of a member that is kept only if its value is an object or array, until the value
+         * comes, or null.
+         */
+        String heldKey;
+        boolean heldKeyTruncated;
+        int heldAction;
+
+        /**
+         * Skips the rest of the container at the given level.
+         *
+         * @param collapsed true if the container is past the depth limit, false if it is past the element limit.
+         */
+        void skip(int level, boolean collapsed) {
+            this.skipLevel = level;
+            this.collapsed = collapsed;
+        }
+
+        /**
+         * Drops a member at the given level, left out by the path rules.
+         *
+         * @param open true if the object or array that is the member's value is already open,
+         *             false if the value is still to come.
+         */
+        void drop(int level, boolean open) {
+            this.dropLevel = level;
+            this.dropOpen = open;
+        }
+
+        /**
+         * Holds back the key of a member until its value shows whether the member is kept.
+         *
+         * @param action action of the path rules, with the {@link JsonPathFilter#PARTIAL} flag.
+         */
+        void hold(String key, boolean truncated, int action) {
+            this.heldKey = key;
+            this.heldKeyTruncated = truncated;
+            this.heldAction = action;
+        }
+
+        /**
+         * @return an independent copy of this state, from which formatting can go on again.
+         */
+        TokenState copy() {
+            TokenState copy = new TokenState();
+            copy.isFirst = isFirst;
+            copy.stopped = stopped;
+            copy.index = index;
+            copy.baseLevel = baseLevel;
+            copy.skipLevel = skipLevel;
+            copy.collapsed = collapsed;
+            copy.cursor = cursor != null ? cursor.copy() : null;
+            copy.dropLevel = dropLevel;
+            copy.dropOpen = dropOpen;
+            copy.maskLevel = maskLevel;
+            copy.heldKey = heldKey;
+            copy.heldKeyTruncated = heldKeyTruncated;
+            copy.heldAction = heldAction;
+
+            return copy;
+        }
+    }
+
+    /**
+     * An object or array of a JSONObject/JSONArray tree whose members are being formatted, or
+     * a range of the elements of an array.
+     */
+    private static class TreeFrame {
+        final JSONObject object;
+        final Iterator<String> keys;
+        final JSONArray array;
+        final int level;
+        final int end;
+        final boolean closes;
+        int index;
+        boolean written;
+
+        TreeFrame(JSONObject object, int level) {
+            this.object = object;
+            this.keys = object.keys();
+            this.array = null;
+            this.level = level;
+            this.end = object.length();
+            this.closes = true;
+        }
+
+        /**
+         * @param closes true to add the closing bracket after the elements.
+         */
+        TreeFrame(JSONArray array, int level, int start, int end, boolean closes) {
+            this.object = null;
+            this.keys = null;
+            this.array = array;
+            this.level = level;
+            this.end = end;
+            this.closes = closes;
+            this.index = start;
+        }
+    }
+
+    /**
+     * Lazily created shared formatters. The holder class is only loaded on first use.
+     */
+    private static class Defaults {
+        static final JsonFormatter STRING_FORMATTER = new Builder().setOutputFormat(STRING).build();
+        static final JsonFormatter HTML_FORMATTER = new Builder().setOutputFormat(HTML).build();
+        static final JsonFormatter SPANNABLE_FORMATTER = new Builder().setOutputFormat(SPANNABLE).build();
+        static final JsonFormatter COMPACT_FORMATTER = new Builder().setOutputFormat(COMPACT).build();
+    }
+
     /**
      * This Builder class is responsible for creating {@link JsonFormatter} instance with
-     * a set of customizations including colors.
+     * a set of customizations including colors. Every call to {@link #build()} creates a new,
+     * immutable formatter, so later changes to the builder don't affect formatters already built.
      */
     public static class Builder {
-        final JsonFormatter formatter;
+        String colorBraces;
+        String colorSqBracket;
+        String colorComma;
+        String colorKey;
+        String colorString;
+        String colorNumber;
+        String colorBoolean;
+        String colorNull;
+        String colorAdded;
+        String colorRemoved;
+        String colorHighlight;
+        int outputFormat;
+        int parallelThreshold;
+        int indentWidth;
+        int maxDepth;
+        int maxElements;
+        int maxStringLength;
+        long outputBudget;
+        List<String> includePaths;
+        List<String> excludePaths;
+        List<String> maskPaths;
+        boolean preserveLiterals;
+        int summarySamples;
+
+        /**
+         * Creates a builder with the configuration of the given formatter.
+         */
+        Builder(JsonFormatter formatter) {
+            colorBraces = formatter.colorBraces;
+            colorSqBracket = formatter.colorSqBracket;
+            colorComma = formatter.colorComma;
+            colorKey = formatter.colorKey;
+            colorString = formatter.colorString;
+            colorNumber = formatter.colorNumber;
+            colorBoolean = formatter.colorBoolean;
+            colorNull = formatter.colorNull;
+            colorAdded = formatter.colorAdded;
+            colorRemoved = formatter.colorRemoved;
+            colorHighlight = formatter.colorHighlight;
+            outputFormat = formatter.outputFormat;
+            parallelThreshold = formatter.parallelThreshold;
+            indentWidth = formatter.indentWidth;
+            maxDepth = formatter.maxDepth;
+            maxElements = formatter.maxElements;
+            maxStringLength = formatter.maxStringLength;
+            outputBudget = formatter.outputBudget;
+            preserveLiterals = formatter.preserveLiterals;
+            summarySamples = formatter.summarySamples;
+
+            if (formatter.pathFilter != null) {
+                includePaths = new ArrayList<String>(formatter.pathFilter.getIncludes());
+                excludePaths = new ArrayList<String>(formatter.pathFilter.getExcludes());
+                maskPaths = new ArrayList<String>(formatter.pathFilter.getMasks());
+            } else {
+                includePaths = new ArrayList<String>();
+                excludePaths = new ArrayList<String>();
+                maskPaths = new ArrayList<String>();
+            }
+        }
 
         public Builder() {
-            formatter = new JsonFormatter();
+            colorBraces = "#729fcf";
+            colorSqBracket = "#a4074f";
+            colorComma = "#370007";
+            colorKey = "#2d4a8e";
+            colorString = "#53a06b";
+            colorNumber = "#af83a8";
+            colorBoolean = "#ddab1f";
+            colorNull = "#c0c3ca";
+            colorAdded = "#2e7d32";
+            colorRemoved = "#c62828";
+            colorHighlight = "#fff59d";
+            outputFormat = STRING;
+            includePaths = new ArrayList<String>();
+            excludePaths = new ArrayList<String>();
+            maskPaths = new ArrayList<String>();
         }
 
         public Builder setObjectBracketColor(String colorHashCode) {
-            formatter.colorBraces = colorHashCode;
+            this.colorBraces = colorHashCode;
 
             return this;
         }
 
         public Builder setArrayBracketColor(String colorHashCode) {
-            formatter.colorSqBracket = colorHashCode;
+            this.colorSqBracket = colorHashCode;
 
             return this;
         }
 
         public Builder setCommaColor(String colorHashCode) {
-            formatter.colorComma = colorHashCode;
+            this.colorComma = colorHashCode;
 
             return this;
         }
 
         public Builder setKeyColor(String colorHashCode) {
-            formatter.colorKey = colorHashCode;
+            this.colorKey = colorHashCode;
 
             return this;
         }
 
         public Builder setValueColorString(String colorHashCode) {
-            formatter.colorString = colorHashCode;
+            this.colorString = colorHashCode;
 
             return this;
         }
 
         public Builder setValueColorNumber(String colorHashCode) {
-            formatter.colorNumber = colorHashCode;
+            this.colorNumber = colorHashCode;
 
             return this;
         }
 
         public Builder setValueColorBoolean(String colorHashCode) {
-            formatter.colorBoolean = colorHashCode;
+            this.colorBoolean = colorHashCode;
 
             return this;
         }
 
         public Builder setValueColorNull(String colorHashCode) {
-            formatter.colorNull = colorHashCode;
+            this.colorNull = colorHashCode;
+
+            return this;
+        }
+
+        /**
+         * Sets the color of the {@code +} prefix of added lines in the output of {@link JsonFormatter#formatDiff(String, String)}.
+         */
+        public Builder setDiffAddedColor(String colorHashCode) {
+            this.colorAdded = colorHashCode;
+
+            return this;
+        }
+
+        /**
+         * Sets the color of the {@code -} prefix of removed lines in the output of {@link JsonFormatter#formatDiff(String, String)}.
+         */
+        public Builder setDiffRemovedColor(String colorHashCode) {
+            this.colorRemoved = colorHashCode;
+
+            return this;
+        }
+
+        /**
+         * Sets the background color of the ranges highlighted with {@link JsonIndex#highlight(int[])}.
+         */
+        public Builder setHighlightColor(String colorHashCode) {
+            this.colorHighlight = colorHashCode;
 
             return this;
         }
 
         public Builder setOutputFormat(int outputFormat) {
-            formatter.outputFormat = outputFormat;
+            this.outputFormat = outputFormat;
+
+            return this;
+        }
+
+        /**
+         * Enables parallel formatting of large inputs. When the top level object or array of a
+         * String input, or a top level JSONArray, has at least this many members, runs of members
+         * are formatted on worker threads and joined in order. Smaller inputs are formatted
+         * sequentially. Parallel formatting is disabled by default, and is not used while any
+         * of the output limits is set.
+         *
+         * @param minMembers minimum number of top level members to format in parallel; 0 disables it.
+         */
+        public Builder setParallelThreshold(int minMembers) {
+            this.parallelThreshold = Math.max(0, minMembers);
+
+            return this;
+        }
+
+        /**
+         * Sets the indentation of the pretty formats. By default every level is indented with a
+         * tab, or an em space in {@link #HTML}. {@link #COMPACT} output is never indented.
+         *
+         * @param spaces number of spaces per indent level; 0 indents with tabs.
+         */
+        public Builder setIndentWidth(int spaces) {
+            this.indentWidth = Math.max(0, spaces);
+
+            return this;
+        }
+
+        /**
+         * Limits how deep the output goes. Objects and arrays nested at this level or deeper are
+         * written collapsed, as <code>[&hellip; N items]</code>. The top level value is at level 0, so with
+         * a limit of 1 only the members of the top level container are shown. Limits are
+         * disabled by default; once something is left out, the output is no longer valid JSON.
+         *
+         * @param levels maximum nesting level shown; 0 disables the limit.
+         */
+        public Builder setMaxDepth(int levels) {
+            this.maxDepth = Math.max(0, levels);
+
+            return this;
+        }
+
+        /**
+         * Limits the number of members written for each object or array. The rest are left out
+         * and replaced with a <code>&hellip; N more items</code> line.
+         *
+         * @param count maximum members per container; 0 disables the limit.
+         */
+        public Builder setMaxElements(int count) {
+            this.maxElements = Math.max(0, count);
+
+            return this;
+        }
+
+        /**
+         * Limits the length of keys and string values. Longer strings are cut and end with an ellipsis.
+         * The length is counted in chars of the decoded string whatever the input is, so String,
+         * Reader and UTF-8 byte inputs are cut at the same place, also with
+         * {@link #setPreserveLiterals(boolean)}: an escape sequence counts as the char it stands
+         * for.
+         *
+         * @param length maximum number of chars per string; 0 disables the limit.
+         */
+        public Builder setMaxStringLength(int length) {
+            this.maxStringLength = Math.max(0, length);
+
+            return this;
+        }
+
+        /**
+         * Limits the size of the output. Formatting stops once the output reaches this size and
+         * the rest of the input is neither read nor validated. A <code>&hellip; output truncated</code> line
+         * marks the end.
+         *
+         * @param maxChars maximum number of chars written, markup included; 0 disables the limit.
+         */
+        public Builder setOutputBudget(long maxChars) {
+            this.outputBudget = Math.max(0, maxChars);
+
+            return this;
+        }
+
+        /**
+         * Copies string literals to the output exactly as they are written in the input, escape
+         * sequences included, instead of decoding them. Number literals are always copied as
+         * they are written and are never parsed, so large ids and high precision decimals keep
+         * every digit. Together this makes every value in the output byte identical to the input.
+         * This applies to String, Reader and byte inputs; JSONObject and JSONArray inputs are
+         * already parsed. {@link JsonFormatter#COMPACT} output always preserves literals.
+         *
+         * @param preserve true to copy string literals unchanged.
+         */
+        public Builder setPreserveLiterals(boolean preserve) {
+            this.preserveLiterals = preserve;
+
+            return this;
+        }
+
+        /**
+         * Adds a path to show. Once a path is included, only the included members and the
+         * objects and arrays on the way to them are written. Paths are simple JSONPath like
+         * expressions, for example {@code address[*].city}: keys separated by dots, {@code *}
+         * for any key or element, and {@code [n]} or {@code [*]} for array elements. Members
+         * left out are skipped while reading and are never written. At most 64 include, exclude
+         * and mask paths can be added in total.
+         *
+         * @param path path of the members to show.
+         * @throws IllegalArgumentException if the path is not valid.
+         */
+        public Builder addIncludePath(String path) {
+            JsonPathFilter.validate(path);
+            includePaths.add(path);
+
+            return this;
+        }
+
+        /**
+         * Adds a path to leave out. See {@link #addIncludePath(String)} for the path syntax.
+         *
+         * @param path path of the members to leave out.
+         * @throws IllegalArgumentException if the path is not valid.
+         */
+        public Builder addExcludePath(String path) {
+            JsonPathFilter.validate(path);
+            excludePaths.add(path);
+
+            return this;
+        }
+
+        /**
+         * Adds a path whose values are masked, for example {@code user.phone}. The key is still
+         * written, but the value, even an object or array, is replaced with {@code "***"}. See
+         * {@link #addIncludePath(String)} for the path syntax.
+         *
+         * @param path path of the members to mask.
+         * @throws IllegalArgumentException if the path is not valid.
+         */
+        public Builder addMaskPath(String path) {
+            JsonPathFilter.validate(path);
+            maskPaths.add(path);
+
+            return this;
+        }
+
+        /**
+         * Sets the number of example values kept for every path by the summaries of
+         * {@link JsonFormatter#formatSummary(Reader)}. The examples are picked at random from all
+         * the values of the path, while the document is read. Examples are off by default.
+         *
+         * @param count maximum examples per path; 0 leaves the examples out.
+         */
+        public Builder setSummarySamples(int count) {
+            this.summarySamples = Math.max(0, count);
 
             return this;
         }
 
         public JsonFormatter build() {
-            return formatter;
+            return new JsonFormatter(this);
         }
     }
 }
@@ -0,0 +1,28 @@
+package com.github.rahulrvp.android_utils;
+
+/**
+ * 64 bit FNV-1a hash of texts, shared by {@link JsonTree} and {@link JsonFormatCache}.
+ */
+
+final class JsonHash {
+
+    static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+    static final long FNV_PRIME = 0x100000001b3L;
+
+    private JsonHash() {
+    }
+
+    /**
+     * @return 64 bit FNV-1a hash of the chars of the text.
+     */
+    static long hash(String text) {
+        long hash = FNV_OFFSET_BASIS;
+
+        int length = text.length();
+        for (int i = 0; i < length; i++) {
+            hash = (hash ^ text.charAt(i)) * FNV_PRIME;
+        }
+
+        return hash;
+    }
+}
@@ -0,0 +1,748 @@
+package com.github.rahulrvp.android_utils;
+
+import android.text.SpannableStringBuilder;
+import android.text.Spanned;
+import android.text.style.BackgroundColorSpan;
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Formatted JSON text together with the positions of all of its objects and arrays, built
+ * during the single formatting pass, so that a viewer can fold and unfold any container by
+ * hiding or showing a range of the text, without formatting anything again.
+ * <p>
+ * Containers are numbered in the order they appear in the text, so node 0 is the top level
+ * object or array, and the nodes inside a container follow it directly. For every node the
+ * offsets in the text and in the input, depth, number of members and parent are kept in int
+ * arrays. Folding a node means hiding its content range: the text between the opening and the
+ * closing bracket, including the line breaks, leaving e.g. <code>{&hellip;}</code> on a single
+ * line.
+ * <p>
+ * The keys and values are indexed as well, so searches only look at them and not at the
+ * rest of the text, and lookups by key use a hash table built on the first lookup. Searches
+ * return ranges of the text, as an int array of start and end offsets, which can be
+ * highlighted with {@link #highlight(int[])} without formatting the document again.
+ * <p>
+ * Instances are created with {@link JsonFormatter#formatIndexed(String)}. They are only changed
+ * by {@link JsonFormatter#reformat(JsonIndex, String, int, int, int)}, which updates the text
+ * and the nodes in place after an edit of the input.
+ */
+
+public class JsonIndex {
+
+    public static final int NO_NODE = -1;
+
+    private static final String HIGHLIGHT_CLOSE_TAG = "</span>";
+
+    private final JsonFormatter formatter;
+    private final JsonMembers members;
+    private CharSequence text = "";
+    /**
+     * The text as a String for searching, and the members by key; both created when first needed.
+     */
+    private String plainText;
+    private Map<String, List<Integer>> keyMembers;
+
+    private int[] starts;
+    private int[] contentStarts;
+    private int[] contentEnds;
+    private int[] ends;
+    private int[] depths;
+    private int[] memberCounts;
+    private int[] parents;
+    private int[] inputStarts;
+    private int[] inputEnds;
+    private int nodeCount;
+
+    /**
+     * Innermost node that is still open while formatting; the other open nodes are its parents.
+     */
+    private int current = NO_NODE;
+
+    private JsonIndex(JsonFormatter formatter) {
+        this.formatter = formatter;
+        members = new JsonMembers();
+        starts = new int[64];
+        contentStarts = new int[64];
+        contentEnds = new int[64];
+        ends = new int[64];
+        depths = new int[64];
+        memberCounts = new int[64];
+        parents = new int[64];
+        inputStarts = new int[64];
+        inputEnds = new int[64];
+    }
+
+    /**
+     * Formats the input and collects the index in the same pass, see
+     * {@link JsonFormatter#formatIndexed(String)}.
+     *
+     * @return the index; if the input is not valid, an empty text without nodes.
+     */
+    static JsonIndex format(JsonFormatter formatter, String jsonString) {
+        JsonIndex index = new JsonIndex(formatter);
+        JsonFormatter.TokenState state = new JsonFormatter.TokenState();
+        state.index = index;
+
+        JsonOutput output = new JsonOutput();
+        JsonTokenizer tokenizer = formatter.configure(new JsonTokenizer(jsonString == null ? "" : jsonString, true));
+        JsonFormatter.Result error = formatter.writeDocument(output, tokenizer, state);
+        if (error != null) {
+            Log.e("JsonFormatter", "Input is not a valid JSON. " + error);
+            index.clear();
+        } else {
+            index.finish(output.toText());
+        }
+
+        return index;
+    }
+
+    /**
+     * Formats the input again after an edit, only for the innermost container around the edit
+     * if possible, see {@link JsonFormatter#reformat(JsonIndex, String, int, int, int)}.
+     *
+     * @return previous itself, updated in place, or a new index if the whole input was
+     * formatted again; null if the input is not valid.
+     */
+    static JsonIndex reformat(JsonFormatter formatter, JsonIndex previous, String jsonString,
+                              int editStart, int removedLength, int insertedLength) {
+        if (jsonString == null) {
+            return null;
+        }
+
+        int node = NO_NODE;
+        if (previous != null && !formatter.isLimited() && formatter.getOutputFormat() != JsonFormatter.HTML_CSS
+                && editStart >= 0 && removedLength >= 0 && insertedLength >= 0) {
+            node = previous.findEnclosingNode(editStart, editStart + removedLength);
+        }
+
+        if (node != NO_NODE) {
+            int inputStart = previous.getInputStart(node);
+            int inputEnd = previous.getInputEnd(node) + insertedLength - removedLength;
+
+            if (inputEnd <= jsonString.length()) {
+                JsonIndex fragment = new JsonIndex(formatter);
+                JsonFormatter.TokenState state = new JsonFormatter.TokenState();
+                state.index = fragment;
+                state.baseLevel = previous.getDepth(node);
+
+                JsonOutput output = new JsonOutput();
+                JsonTokenizer tokenizer = formatter.configure(JsonTokenizer.forRange(jsonString, inputStart, inputEnd));
+                if (formatter.writeDocument(output, tokenizer, state) == null) {
+                    fragment.finish(output.toText());
+                    previous.replace(node, fragment, insertedLength - removedLength);
+                    return previous;
+                }
+            }
+        }
+
+        // the edit may have changed the structure around the container
+        JsonIndex index = format(formatter, jsonString);
+        return index.getNodeCount() > 0 ? index : null;
+    }
+
+    /**
+     * @return the formatted text; empty if the input was not valid. For {@link JsonFormatter#SPANNABLE}
+     * output this is the colored {@link Spanned} text. After a
+     * {@link JsonFormatter#reformat(JsonIndex, String, int, int, int)} it is an editable text
+     * that is updated in place.
+     */
+    public CharSequence getText() {
+        return text;
+    }
+
+    /**
+     * @return number of objects and arrays in the text.
+     */
+    public int getNodeCount() {
+        return nodeCount;
+    }
+
+    /**
+     * @return offset of the opening bracket of the node.
+     */
+    public int getStart(int node) {
+        return starts[node];
+    }
+
+    /**
+     * @return offset after the closing bracket of the node.
+     */
+    public int getEnd(int node) {
+        return ends[node];
+    }
+
+    /**
+     * @return start of the range to hide when the node is folded, right after the opening bracket.
+     */
+    public int getContentStart(int node) {
+        return contentStarts[node];
+    }
+
+    /**
+     * @return end of the range to hide when the node is folded, right before the closing bracket.
+     * Equal to {@link #getContentStart(int)} for an empty object or array.
+     */
+    public int getContentEnd(int node) {
+        return contentEnds[node];
+    }
+
+    /**
+     * @return nesting depth of the node, 0 for the top level object or array.
+     */
+    public int getDepth(int node) {
+        return depths[node];
+    }
+
+    /**
+     * @return number of members of the object or elements of the array in the input, including
+     * the ones left out by the limits of the formatter.
+     */
+    public int getMemberCount(int node) {
+        return memberCounts[node];
+    }
+
+    /**
+     * @return the node that contains the node, or {@link #NO_NODE} for the top level node.
+     */
+    public int getParent(int node) {
+        return parents[node];
+    }
+
+    /**
+     * @return offset of the opening bracket of the node in the input.
+     */
+    public int getInputStart(int node) {
+        return inputStarts[node];
+    }
+
+    /**
+     * @return offset after the closing bracket of the node in the input.
+     */
+    public int getInputEnd(int node) {
+        return inputEnds[node];
+    }
+
+    /**
+     * Finds the innermost object or array around an offset of the text, e.g. the one to fold
+     * when the user taps a line.
+     *
+     * @param offset offset in the text.
+     * @return the node, or {@link #NO_NODE} if the offset is outside of the top level node.
+     */
+    public int findNode(int offset) {
+        // nodes are sorted by start, so look for the last one starting at or before the offset
+        int low = 0;
+        int high = nodeCount;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (starts[mid] <= offset) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+
+        int node = low - 1;
+        while (node != NO_NODE && offset >= ends[node]) {
+            node = parents[node];
+        }
+
+        return node;
+    }
+
+    /**
+     * Finds a text in the keys and the string, number, boolean and null values.
+     *
+     * @param query      text to look for. It is matched against the keys and values as they are
+     *                   written in the output, so it is escaped the same way before searching.
+     * @param ignoreCase true to ignore the case of the letters.
+     * @return start and end offset of every match in the text, in order.
+     */
+    public int[] find(String query, boolean ignoreCase) {
+        if (query == null || query.length() == 0) {
+            return new int[0];
+        }
+
+        String pattern = formatter.escapeForSearch(query);
+        boolean html = formatter.isHtml();
+        String plain = getPlainText();
+        Ranges ranges = new Ranges();
+
+        int count = members.getCount();
+        for (int i = 0; i < count; i++) {
+            if (members.getKeyStart(i) >= 0) {
+                findIn(plain, pattern, ignoreCase, html, members.getKeyStart(i), members.getKeyEnd(i), ranges);
+            }
+            if (members.getValueNode(i) == NO_NODE) {
+                findIn(plain, pattern, ignoreCase, html, members.getValueStart(i), members.getValueEnd(i), ranges);
+            }
+        }
+
+        return ranges.toArray();
+    }
+
+    /**
+     * Finds the keys equal to the given key.
+     *
+     * @param key key to look for, without quotes.
+     * @return start and end offset of every matching key in the text, quotes included, in order.
+     */
+    public int[] findKey(String key) {
+        if (key == null) {
+            return new int[0];
+        }
+
+        if (keyMembers == null) {
+            keyMembers = buildKeyMembers();
+        }
+
+        List<Integer> matches = keyMembers.get(formatter.escapeForSearch(key));
+        if (matches == null) {
+            matches = Collections.emptyList();
+        }
+
+        Ranges ranges = new Ranges();
+        for (int member : matches) {
+            ranges.add(members.getKeyStart(member), members.getKeyEnd(member));
+        }
+
+        return ranges.toArray();
+    }
+
+    /**
+     * Finds the values at a path, for example {@code users[*].name} or {@code $.config.*}. See
+     * {@link JsonFormatter.Builder#addIncludePath(String)} for the syntax.
+     *
+     * @param path path of the values.
+     * @return start and end offset of every matching value in the text, in order. An object or
+     * array value covers everything from its opening to its closing bracket.
+     * @throws IllegalArgumentException if the path is not valid.
+     */
+    public int[] findPath(String path) {
+        List<String> none = Collections.emptyList();
+        JsonPathFilter filter = JsonPathFilter.create(none, none, Collections.singletonList(path));
+        JsonPathFilter.Cursor cursor = new JsonPathFilter.Cursor(filter);
+        String plain = getPlainText();
+        Ranges ranges = new Ranges();
+
+        int count = members.getCount();
+        for (int i = 0; i < count; i++) {
+            CharSequence key = null;
+            if (members.getKeyStart(i) >= 0) {
+                key = plain.subSequence(members.getKeyStart(i) + 1, members.getKeyEnd(i) - 1);
+            }
+
+            // the path is a mask rule, which is reported once it is complete
+            if (filter.enter(cursor, members.getDepth(i), key, members.getIndex(i)) == JsonPathFilter.MASK) {
+                int node = members.getValueNode(i);
+                if (node != NO_NODE) {
+                    ranges.add(starts[node], ends[node]);
+                } else {
+                    ranges.add(members.getValueStart(i), members.getValueEnd(i));
+                }
+            }
+        }
+
+        return ranges.toArray();
+    }
+
+    /**
+     * Highlights ranges of the text with the highlight color of the formatter, see
+     * {@link JsonFormatter.Builder#setHighlightColor(String)}. HTML output gets the highlight as
+     * markup; the other formats get a {@link Spanned} text with background color spans, which
+     * keeps the colors of {@link JsonFormatter#SPANNABLE} output. The text of the index is not
+     * changed.
+     *
+     * @param ranges start and end offsets, in order and not overlapping, as returned by the searches.
+     * @return a copy of the text with the ranges highlighted.
+     */
+    public CharSequence highlight(int[] ranges) {
+        if (formatter.isHtml()) {
+            return highlightHtml(ranges);
+        }
+
+        SpannableStringBuilder highlighted = new SpannableStringBuilder(text);
+        for (int i = 0; i + 1 < ranges.length; i += 2) {
+            highlighted.setSpan(new BackgroundColorSpan(formatter.getHighlightColor()), ranges[i], ranges[i + 1],
+                    Spanned.SPAN_EXCLUSIVE_EXCLUSIVE);
+        }
+
+        return highlighted;
+    }
+
+    /**
+     * Highlights ranges of HTML output. Markup within a range is left outside of the highlight,
+     * so the elements stay nested properly.
+     */
+    private String highlightHtml(int[] ranges) {
+        String open = formatter.getHighlightTag();
+        StringBuilder html = new StringBuilder(text.length() + ranges.length * 24);
+
+        int last = 0;
+        for (int i = 0; i + 1 < ranges.length; i += 2) {
+            html.append(text, last, ranges[i]);
+
+            boolean inTag = false;
+            boolean highlighted = false;
+            for (int j = ranges[i]; j < ranges[i + 1]; j++) {
+                char c = text.charAt(j);
+                if (c == '<') {
+                    inTag = true;
+                    if (highlighted) {
+                        html.append(HIGHLIGHT_CLOSE_TAG);
+                        highlighted = false;
+                    }
+                } else if (!inTag && !highlighted) {
+                    html.append(open);
+                    highlighted = true;
+                }
+
+                html.append(c);
+                if (c == '>') {
+                    inTag = false;
+                }
+            }
+
+            if (highlighted) {
+                html.append(HIGHLIGHT_CLOSE_TAG);
+            }
+            last = ranges[i + 1];
+        }
+        html.append(text, last, text.length());
+
+        return html.toString();
+    }
+
+    /**
+     * Finds the innermost object or array that contains a range of the input, without either
+     * of its brackets being part of the range.
+     *
+     * @param start start of the range in the input, inclusive.
+     * @param end   end of the range in the input, exclusive.
+     * @return the node, or {@link #NO_NODE} if there is none.
+     */
+    private int findEnclosingNode(int start, int end) {
+        int low = 0;
+        int high = nodeCount;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (inputStarts[mid] < start) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+
+        int node = low - 1;
+        while (node != NO_NODE && end >= inputEnds[node]) {
+            node = parents[node];
+        }
+
+        return node;
+    }
+
+    /**
+     * Replaces a node and everything inside it with a newly formatted fragment, and moves the
+     * nodes after it by the change in length. This is O(n) in the number of nodes and members
+     * after the node, as their offsets are absolute.
+     *
+     * @param node       node to replace.
+     * @param fragment   index of the node formatted again. Its text offsets start at 0, its
+     *                   input offsets and depths are already those of the whole document.
+     * @param inputDelta change in the length of the input.
+     */
+    private void replace(int node, JsonIndex fragment, int inputDelta) {
+        int outputStart = starts[node];
+        int outputDelta = fragment.text.length() - (ends[node] - outputStart);
+        int parent = parents[node];
+
+        // the member whose value is the node itself starts before its content
+        int firstMember = members.findFirstAfter(contentStarts[node] - 1);
+        int lastMember = members.findFirstAfter(ends[node] - 1);
+
+        replaceText(outputStart, ends[node], fragment.text);
+
+        for (int ancestor = parent; ancestor != NO_NODE; ancestor = parents[ancestor]) {
+            contentEnds[ancestor] += outputDelta;
+            ends[ancestor] += outputDelta;
+            inputEnds[ancestor] += inputDelta;
+        }
+
+        // the nodes inside the replaced node follow it and start before it ends
+        int last = node + 1;
+        while (last < nodeCount && starts[last] < ends[node]) {
+            last++;
+        }
+
+        int countDelta = fragment.nodeCount - (last - node);
+        int newCount = nodeCount + countDelta;
+
+        members.replace(firstMember, lastMember, fragment.members, outputStart, outputDelta, node, last, countDelta);
+        plainText = null;
+        keyMembers = null;
+
+        while (newCount > starts.length) {
+            grow();
+        }
+
+        int tail = nodeCount - last;
+        int[][] arrays = {starts, contentStarts, contentEnds, ends, depths, memberCounts, parents, inputStarts, inputEnds};
+        for (int[] array : arrays) {
+            System.arraycopy(array, last, array, last + countDelta, tail);
+        }
+
+        for (int i = last + countDelta; i < newCount; i++) {
+            starts[i] += outputDelta;
+            contentStarts[i] += outputDelta;
+            contentEnds[i] += outputDelta;
+            ends[i] += outputDelta;
+            inputStarts[i] += inputDelta;
+            inputEnds[i] += inputDelta;
+            if (parents[i] >= node) {
+                parents[i] += countDelta;
+            }
+        }
+
+        for (int i = 0; i < fragment.nodeCount; i++) {
+            int target = node + i;
+            starts[target] = fragment.starts[i] + outputStart;
+            contentStarts[target] = fragment.contentStarts[i] + outputStart;
+            contentEnds[target] = fragment.contentEnds[i] + outputStart;
+            ends[target] = fragment.ends[i] + outputStart;
+            depths[target] = fragment.depths[i];
+            memberCounts[target] = fragment.memberCounts[i];
+            parents[target] = i == 0 ? parent : fragment.parents[i] + node;
+            inputStarts[target] = fragment.inputStarts[i];
+            inputEnds[target] = fragment.inputEnds[i];
+        }
+
+        nodeCount = newCount;
+    }
+
+    /**
+     * Records an object or array whose opening bracket was just written.
+     *
+     * @param start        offset of the opening bracket.
+     * @param contentStart offset after the opening bracket.
+     * @param inputStart   offset of the opening bracket in the input.
+     */
+    void open(int start, int contentStart, int depth, int inputStart) {
+        if (nodeCount == starts.length) {
+            grow();
+        }
+
+        int node = nodeCount++;
+        starts[node] = start;
+        contentStarts[node] = contentStart;
+        contentEnds[node] = contentStart;
+        ends[node] = contentStart;
+        depths[node] = depth;
+        memberCounts[node] = 0;
+        parents[node] = current;
+        inputStarts[node] = inputStart;
+        inputEnds[node] = inputStart + 1;
+
+        current = node;
+    }
+
+    /**
+     * Records the end of the innermost open object or array.
+     *
+     * @param contentEnd offset of the closing bracket.
+     * @param end        offset after the closing bracket.
+     * @param inputEnd   offset after the closing bracket in the input.
+     */
+    void close(int contentEnd, int end, int memberCount, int inputEnd) {
+        if (current == NO_NODE) {
+            return;
+        }
+
+        contentEnds[current] = contentEnd;
+        ends[current] = end;
+        memberCounts[current] = memberCount;
+        inputEnds[current] = inputEnd;
+
+        current = parents[current];
+    }
+
+    /**
+     * Records an object member whose key was just written; see {@link JsonMembers}.
+     */
+    void addKey(int depth, int index, int keyStart, int keyEnd) {
+        members.addKey(depth, index, keyStart, keyEnd);
+    }
+
+    /**
+     * Records an array element, before its value is written.
+     */
+    void addElement(int depth, int index) {
+        members.addElement(depth, index);
+    }
+
+    /**
+     * Records the value of the last member. An object or array value must be opened first.
+     *
+     * @param container true if the value is the object or array opened last.
+     */
+    void setValue(int kind, int start, int end, boolean container) {
+        members.setValue(kind, start, end, container ? current : NO_NODE);
+    }
+
+    /**
+     * Sets the text once the formatting is done. Nodes left open, because the output budget ran
+     * out, end with the text.
+     */
+    private void finish(CharSequence text) {
+        this.text = text;
+
+        while (current != NO_NODE) {
+            contentEnds[current] = text.length();
+            ends[current] = text.length();
+            current = parents[current];
+        }
+    }
+
+    /**
+     * Forgets all the nodes, when the input turns out to be invalid.
+     */
+    private void clear() {
+        members.clear();
+        nodeCount = 0;
+        current = NO_NODE;
+        text = "";
+    }
+
+    private String getPlainText() {
+        if (plainText == null) {
+            plainText = text.toString();
+        }
+
+        return plainText;
+    }
+
+    private Map<String, List<Integer>> buildKeyMembers() {
+        Map<String, List<Integer>> map = new HashMap<String, List<Integer>>();
+        String plain = getPlainText();
+
+        int count = members.getCount();
+        for (int i = 0; i < count; i++) {
+            if (members.getKeyStart(i) < 0) {
+                continue;
+            }
+
+            String key = plain.substring(members.getKeyStart(i) + 1, members.getKeyEnd(i) - 1);
+            List<Integer> list = map.get(key);
+            if (list == null) {
+                list = new ArrayList<Integer>(1);
+                map.put(key, list);
+            }
+            list.add(i);
+        }
+
+        return map;
+    }
+
+    /**
+     * Adds the matches of the pattern within a range of the text. Matches don't overlap.
+     *
+     * @param html true if the text is HTML, where a match must not start inside a character
+     *             entity such as {@code &lt;}. The pattern is escaped the same way, so its
+     *             entities are complete and a match that starts outside of an entity also
+     *             ends outside of one.
+     */
+    private static void findIn(String plain, String pattern, boolean ignoreCase, boolean html, int start, int end,
+                               Ranges ranges) {
+        int length = pattern.length();
+        int last = end - length;
+        boolean inEntity = false;
+
+        int i = start;
+        while (i <= last) {
+            if (!inEntity && plain.regionMatches(ignoreCase, i, pattern, 0, length)) {
+                ranges.add(i, i + length);
+                i += length;
+            } else {
+                if (html) {
+                    char c = plain.charAt(i);
+                    if (c == '&') {
+                        inEntity = true;
+                    } else if (c == ';') {
+                        inEntity = false;
+                    }
+                }
+                i++;
+            }
+        }
+    }
+
+    /**
+     * Replaces a range of the text, turning it into an editable text on the first edit so that
+     * later edits don't copy it again.
+     */
+    private void replaceText(int start, int end, CharSequence replacement) {
+        if (text instanceof Spanned || replacement instanceof Spanned) {
+            SpannableStringBuilder builder = text instanceof SpannableStringBuilder
+                    ? (SpannableStringBuilder) text
+                    : new SpannableStringBuilder(text);
+            builder.replace(start, end, replacement);
+            text = builder;
+        } else {
+            StringBuilder builder = text instanceof StringBuilder ? (StringBuilder) text : new StringBuilder(text);
+            builder.replace(start, end, replacement.toString());
+            text = builder;
+        }
+    }
+
+    private void grow() {
+        int capacity = starts.length * 2;
+
+        starts = copyOf(starts, capacity);
+        contentStarts = copyOf(contentStarts, capacity);
+        contentEnds = copyOf(contentEnds, capacity);
+        ends = copyOf(ends, capacity);
+        depths = copyOf(depths, capacity);
+        memberCounts = copyOf(memberCounts, capacity);
+        parents = copyOf(parents, capacity);
+        inputStarts = copyOf(inputStarts, capacity);
+        inputEnds = copyOf(inputEnds, capacity);
+    }
+
+    private int[] copyOf(int[] array, int capacity) {
+        int[] copy = new int[capacity];
+        System.arraycopy(array, 0, copy, 0, nodeCount);
+
+        return copy;
+    }
+
+    /**
+     * Growing list of start and end offsets.
+     */
+    private static class Ranges {
+        private int[] values = new int[16];
+        private int size;
+
+        void add(int start, int end) {
+            if (size + 2 > values.length) {
+                int[] newValues = new int[values.length * 2];
+                System.arraycopy(values, 0, newValues, 0, size);
+                values = newValues;
+            }
+
+            values[size++] = start;
+            values[size++] = end;
+        }
+
+        int[] toArray() {
+            int[] array = new int[size];
+            System.arraycopy(values, 0, array, 0, size);
+
+            return array;
+        }
+    }
+}
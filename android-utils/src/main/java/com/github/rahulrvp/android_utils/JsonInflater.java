@@ -0,0 +1,370 @@
+package com.github.rahulrvp.android_utils;
+
+import java.io.EOFException;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PushbackInputStream;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+import java.util.zip.ZipException;
+
+/**
+ * Inflates compressed JSON as it is read, so that the tokenizer never sees more than a buffer
+ * of it at a time. The format is detected from the first two bytes: gzip (including several
+ * concatenated gzip members, as written by log rotation) is read member by member, checking
+ * the CRC and size of every member, and zlib, as sent with {@code Content-Encoding: deflate},
+ * with an {@link InflaterInputStream}. Anything else is passed through unchanged, so plain
+ * input, including bare values, reaches the tokenizer as it is and any error in it is reported
+ * as a syntax error. Raw deflate data without a zlib header can't be told apart from such input
+ * and is not inflated. A byte order mark at the start of the inflated bytes is skipped.
+ * <p>
+ * Closing this stream releases the inflater; the source stream is not closed.
+ */
+
+class JsonInflater extends FilterInputStream {
+
+    private static final int BUFFER_SIZE = 8192;
+
+    private static final int GZIP_MAGIC_1 = 0x1f;
+    private static final int GZIP_MAGIC_2 = 0x8b;
+    private static final int ZLIB_DEFLATE = 8;
+    private static final int ZLIB_PRESET_DICTIONARY = 0x20;
+
+    private final InputStream source;
+
+    /**
+     * Only set for zlib input, which is inflated with an inflater of its own.
+     */
+    private Inflater inflater;
+    private boolean started;
+
+    JsonInflater(InputStream source) {
+        super(null);
+        this.source = source;
+    }
+
+    @Override
+    public int read() throws IOException {
+        return open().read();
+    }
+
+    @Override
+    public int read(byte[] buffer, int offset, int length) throws IOException {
+        return open().read(buffer, offset, length);
+    }
+
+    @Override
+    public long skip(long count) throws IOException {
+        return open().skip(count);
+    }
+
+    @Override
+    public int available() throws IOException {
+        return started && in != null ? in.available() : 0;
+    }
+
+    @Override
+    public boolean markSupported() {
+        return false;
+    }
+
+    /**
+     * Releases the inflater. The source stream is not closed.
+     */
+    @Override
+    public void close() {
+        if (in != null) {
+            try {
+                // ends the inflater of gzip input; the source itself is not closed
+                in.close();
+            } catch (IOException e) {
+                // nothing is left to release
+            }
+        }
+        if (inflater != null) {
+            inflater.end();
+            inflater = null;
+        }
+        started = true;
+        in = null;
+    }
+
+    /**
+     * @return the stream of inflated bytes, detecting the format on the first call.
+     */
+    private InputStream open() throws IOException {
+        if (!started) {
+            start();
+        }
+        if (in == null) {
+            throw new IOException("Stream closed");
+        }
+
+        return in;
+    }
+
+    /**
+     * Detects the format from the first two bytes and skips a byte order mark.
+     */
+    private void start() throws IOException {
+        started = true;
+
+        // large enough to take back what a gzip member read past its deflate data
+        PushbackInputStream head = new PushbackInputStream(new Unclosed(source), BUFFER_SIZE);
+        int first = head.read();
+        int second = first != -1 ? head.read() : -1;
+        if (second != -1) {
+            head.unread(second);
+        }
+        if (first != -1) {
+            head.unread(first);
+        }
+
+        InputStream data;
+        if (first == GZIP_MAGIC_1 && second == GZIP_MAGIC_2) {
+            data = new GzipMembers(head);
+        } else if (first != -1 && second != -1 && (first & 0x0F) == ZLIB_DEFLATE
+                && (second & ZLIB_PRESET_DICTIONARY) == 0 && ((first << 8) | second) % 31 == 0) {
+            // no JSON document starts like this: the only candidate, '8', would have to be
+            // followed by 'O' or a control character
+            inflater = new Inflater();
+            data = new InflaterInputStream(head, inflater, BUFFER_SIZE);
+        } else {
+            data = head;
+        }
+
+        PushbackInputStream body = new PushbackInputStream(data, 3);
+        byte[] mark = new byte[3];
+        int count = 0;
+        while (count < mark.length) {
+            int read = body.read(mark, count, mark.length - count);
+            if (read == -1) {
+                break;
+            }
+            count += read;
+        }
+        if (count < 3 || mark[0] != (byte) 0xEF || mark[1] != (byte) 0xBB || mark[2] != (byte) 0xBF) {
+            body.unread(mark, 0, count);
+        }
+
+        in = body;
+    }
+
+    /**
+     * Reads the members of gzip input (RFC 1952) one after the other: the header of a member,
+     * its deflate data with an {@link Inflater} of its own, and its trailer, whose CRC and size
+     * are checked. The inflater is fed from a buffer, and the bytes of the buffer left over at
+     * the end of the deflate data are pushed back to the source, so the trailer and the next
+     * member are read from exactly where the data ended, however the source splits its reads.
+     * As with {@link java.util.zip.GZIPInputStream}, data after the last member that is not a
+     * gzip header is ignored.
+     */
+    private static class GzipMembers extends InputStream {
+
+        private static final int FLAG_HEADER_CRC = 2;
+        private static final int FLAG_EXTRA = 4;
+        private static final int FLAG_NAME = 8;
+        private static final int FLAG_COMMENT = 16;
+
+        private final PushbackInputStream source;
+        private final Inflater inflater;
+        private final CRC32 crc;
+        private final byte[] buffer;
+        private final byte[] single = new byte[1];
+        private int bufferLength;
+        /**
+         * Inflated length of the current member.
+         */
+        private long size;
+        private boolean ended;
+
+        GzipMembers(PushbackInputStream source) throws IOException {
+            this.source = source;
+            inflater = new Inflater(true);
+            crc = new CRC32();
+            buffer = new byte[BUFFER_SIZE];
+            readHeader();
+        }
+
+        @Override
+        public int read() throws IOException {
+            return read(single, 0, 1) == -1 ? -1 : single[0] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] bytes, int offset, int length) throws IOException {
+            if (length == 0) {
+                return 0;
+            }
+
+            while (!ended) {
+                if (inflater.finished()) {
+                    readTrailer();
+                    ended = !nextMember();
+                    continue;
+                }
+
+                if (inflater.needsInput()) {
+                    bufferLength = source.read(buffer, 0, buffer.length);
+                    if (bufferLength == -1) {
+                        throw new EOFException("Unexpected end of gzip input");
+                    }
+                    inflater.setInput(buffer, 0, bufferLength);
+                }
+
+                int read;
+                try {
+                    read = inflater.inflate(bytes, offset, length);
+                } catch (DataFormatException e) {
+                    throw new ZipException(e.getMessage() != null ? e.getMessage() : "Invalid deflate data");
+                }
+                if (read > 0) {
+                    crc.update(bytes, offset, read);
+                    size += read;
+                    return read;
+                }
+                if (inflater.needsDictionary()) {
+                    throw new ZipException("Invalid deflate data");
+                }
+            }
+
+            return -1;
+        }
+
+        /**
+         * Ends the inflater. The source is not closed.
+         */
+        @Override
+        public void close() {
+            inflater.end();
+        }
+
+        /**
+         * Reads the header of a member, up to its deflate data.
+         *
+         * @throws ZipException if it is not a gzip header.
+         * @throws EOFException if the header is truncated.
+         */
+        private void readHeader() throws IOException {
+            CRC32 headerCrc = new CRC32();
+            if (readByte(headerCrc) != GZIP_MAGIC_1 || readByte(headerCrc) != GZIP_MAGIC_2) {
+                throw new ZipException("Not in gzip format");
+            }
+            if (readByte(headerCrc) != ZLIB_DEFLATE) {
+                throw new ZipException("Unsupported compression method");
+            }
+
+            int flags = readByte(headerCrc);
+            // modification time, extra flags and operating system
+            for (int i = 0; i < 6; i++) {
+                readByte(headerCrc);
+            }
+
+            if ((flags & FLAG_EXTRA) != 0) {
+                int length = readByte(headerCrc) | readByte(headerCrc) << 8;
+                for (int i = 0; i < length; i++) {
+                    readByte(headerCrc);
+                }
+            }
+            if ((flags & FLAG_NAME) != 0) {
+                while (readByte(headerCrc) != 0) {
+                    // zero terminated file name
+                }
+            }
+            if ((flags & FLAG_COMMENT) != 0) {
+                while (readByte(headerCrc) != 0) {
+                    // zero terminated comment
+                }
+            }
+            if ((flags & FLAG_HEADER_CRC) != 0) {
+                int expected = (int) headerCrc.getValue() & 0xFFFF;
+                if ((readByte(null) | readByte(null) << 8) != expected) {
+                    throw new ZipException("Corrupt gzip header");
+                }
+            }
+        }
+
+        /**
+         * Gives the bytes read past the deflate data back to the source, and checks the trailer
+         * of the member that follows them.
+         */
+        private void readTrailer() throws IOException {
+            int rest = inflater.getRemaining();
+            if (rest > 0) {
+                source.unread(buffer, bufferLength - rest, rest);
+            }
+
+            long expectedCrc = readInt();
+            long expectedSize = readInt();
+            if (expectedCrc != crc.getValue() || expectedSize != (size & 0xFFFFFFFFL)) {
+                throw new ZipException("Corrupt gzip trailer");
+            }
+        }
+
+        /**
+         * @return whether another member follows the one that just ended.
+         */
+        private boolean nextMember() throws IOException {
+            try {
+                readHeader();
+            } catch (ZipException e) {
+                // trailing data
+                return false;
+            } catch (EOFException e) {
+                // the end of the input, or a truncated header, which is ignored as well
+                return false;
+            }
+
+            inflater.reset();
+            crc.reset();
+            size = 0;
+
+            return true;
+        }
+
+        /**
+         * @return the next byte of the source, also added to the given header CRC if not null.
+         */
+        private int readByte(CRC32 headerCrc) throws IOException {
+            int read = source.read();
+            if (read == -1) {
+                throw new EOFException("Unexpected end of gzip input");
+            }
+            if (headerCrc != null) {
+                headerCrc.update(read);
+            }
+
+            return read;
+        }
+
+        /**
+         * @return the next four bytes of the source as an unsigned little endian int.
+         */
+        private long readInt() throws IOException {
+            long value = 0;
+            for (int i = 0; i < 4; i++) {
+                value |= (long) readByte(null) << (8 * i);
+            }
+
+            return value;
+        }
+    }
+
+    /**
+     * Keeps the streams on top of the source from closing it.
+     */
+    private static class Unclosed extends FilterInputStream {
+
+        Unclosed(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public void close() {
+            // the source belongs to the caller
+        }
+    }
+}
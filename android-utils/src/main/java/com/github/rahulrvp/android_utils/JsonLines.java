@@ -0,0 +1,454 @@
+package com.github.rahulrvp.android_utils;
+
+import org.json.JSONException;
+
+import java.io.IOException;
+import java.io.Reader;
+
+/**
+ * Line indexed view of a formatted JSON document, meant to back a virtualized (RecyclerView
+ * style) viewer so that a huge document never has to be laid out as a single text.
+ * <p>
+ * The input is formatted lazily: only as many lines as requested with {@link #getLine(int)} or
+ * {@link #formatMore(int)} are formatted, and the colored text of a line is created only when
+ * that line is asked for. For every formatted line only the start offset and nesting depth are
+ * kept, in int arrays. The formatted text itself is kept for a window of recent lines; at
+ * regular intervals the state of the tokenizer and the formatter is saved, and a line that is
+ * no longer in the window is formatted again from the nearest checkpoint before it. A
+ * {@link Reader} can't be read twice, so the input read from one is kept for that.
+ * <p>
+ * Instances are created with {@link JsonFormatter#formatLines(String)} or
+ * {@link JsonFormatter#formatLines(java.io.Reader)}. This class is not thread safe; use it from
+ * a single thread, typically the main thread.
+ */
+
+public class JsonLines {
+
+    /**
+     * Number of lines between two checkpoints.
+     */
+    private static final int CHECKPOINT_LINES = 128;
+
+    /**
+     * Length of formatted text past which the text before the next checkpoint is dropped.
+     */
+    private static final int WINDOW_SIZE = 32 * 1024;
+
+    private final JsonFormatter formatter;
+    private final CharSequence input;
+    private final JsonTokenizer tokenizer;
+    private final JsonOutput output;
+    private final JsonFormatter.TokenState state;
+
+    private int[] lineStarts;
+    private int[] lineDepths;
+    private int lineStartCount;
+
+    private Checkpoint[] checkpoints;
+    private int checkpointCount;
+    private int checkpointLine;
+
+    /**
+     * Text formatted again for lines before the window of {@link #output}, or null.
+     */
+    private Replay replay;
+
+    private boolean complete;
+    private String errorMessage;
+
+    JsonLines(JsonFormatter formatter, String text) {
+        this(formatter, text, new JsonTokenizer(text, true));
+    }
+
+    JsonLines(JsonFormatter formatter, Reader reader) {
+        this(formatter, new Recorder(reader));
+    }
+
+    private JsonLines(JsonFormatter formatter, Recorder recorder) {
+        this(formatter, recorder.text, new JsonTokenizer(recorder));
+    }
+
+    private JsonLines(JsonFormatter formatter, CharSequence input, JsonTokenizer tokenizer) {
+        this.formatter = formatter;
+        this.input = input;
+        this.tokenizer = formatter.configure(tokenizer);
+        this.output = new JsonOutput();
+        this.lineStarts = new int[256];
+        this.lineDepths = new int[256];
+        this.state = new JsonFormatter.TokenState();
+        this.checkpoints = new Checkpoint[16];
+
+        // the first line starts with the first token
+        lineStarts[0] = 0;
+        lineDepths[0] = 0;
+        lineStartCount = 1;
+        addCheckpoint();
+    }
+
+    /**
+     * @return number of lines formatted so far. This is the total number of lines once
+     * {@link #isComplete()} returns true.
+     */
+    public int getLineCount() {
+        if (complete) {
+            return output.size() == 0 ? 0 : lineStartCount;
+        }
+
+        return lineStartCount - 1;
+    }
+
+    /**
+     * @return true if the whole input is formatted, or the formatting stopped at an error.
+     */
+    public boolean isComplete() {
+        return complete;
+    }
+
+    /**
+     * @return description of the error that stopped the formatting, or null if there was none.
+     * The lines formatted before the error stay available.
+     */
+    public String getErrorMessage() {
+        return errorMessage;
+    }
+
+    /**
+     * Formats more of the input.
+     *
+     * @param lineCount number of additional lines wanted.
+     * @return number of lines actually added, 0 once the input is completely formatted.
+     */
+    public int formatMore(int lineCount) {
+        int before = getLineCount();
+        ensureLine(before + lineCount - 1);
+        return getLineCount() - before;
+    }
+
+    /**
+     * Returns the text of a line, formatting the input up to that line if needed. The text has
+     * the colors of the formatter as spans, and the indentation of the line, without the line break.
+     *
+     * @param index 0 based line index.
+     * @return text of the line, or null if the document has fewer lines.
+     */
+    public CharSequence getLine(int index) {
+        if (!ensureLine(index)) {
+            return null;
+        }
+
+        int start = lineStarts[index];
+        int end = getLineEnd(index);
+        JsonOutput text = getText(start, end);
+        int base = getBase(text);
+
+        return text.toText(start - base, end - base);
+    }
+
+    /**
+     * Same as {@link #getLine(int)} without the colors.
+     */
+    String getPlainLine(int index) {
+        if (!ensureLine(index)) {
+            return null;
+        }
+
+        int start = lineStarts[index];
+        int end = getLineEnd(index);
+        JsonOutput text = getText(start, end);
+        int base = getBase(text);
+
+        return text.substring(start - base, end - base);
+    }
+
+    /**
+     * @param index 0 based line index.
+     * @return nesting depth of the line, or -1 if the document has fewer lines.
+     */
+    public int getDepth(int index) {
+        return ensureLine(index) ? lineDepths[index] : -1;
+    }
+
+    /**
+     * @param index 0 based line index.
+     * @return offset of the first character of the line in the formatted text, or -1 if the
+     * document has fewer lines.
+     */
+    public int getLineStart(int index) {
+        return ensureLine(index) ? lineStarts[index] : -1;
+    }
+
+    /**
+     * @param index 0 based line index.
+     * @return offset after the last character of the line (excluding the line break) in the
+     * formatted text, or -1 if the document has fewer lines.
+     */
+    public int getLineEnd(int index) {
+        if (!ensureLine(index)) {
+            return -1;
+        }
+
+        return index + 1 < lineStartCount ? lineStarts[index + 1] - 1 : (int) output.size();
+    }
+
+    /**
+     * @return number of chars of formatted text held, for the window and the text formatted again.
+     */
+    int getHeldLength() {
+        return output.length() + (replay != null ? replay.output.length() : 0);
+    }
+
+    /**
+     * Formats tokens until the line with the given index is complete or the input ends.
+     *
+     * @return true if the line exists.
+     */
+    private boolean ensureLine(int index) {
+        if (index < 0) {
+            return false;
+        }
+
+        while (!complete && index >= getLineCount()) {
+            formatNextToken();
+        }
+
+        return index < getLineCount();
+    }
+
+    /**
+     * @return the output that holds the formatted text from {@code start} to {@code end},
+     * formatting it again from a checkpoint if it was dropped.
+     */
+    private JsonOutput getText(int start, int end) {
+        if (start >= getBase(output)) {
+            return output;
+        }
+
+        if (replay != null && start >= getBase(replay.output) && end <= replay.output.size()) {
+            return replay.output;
+        }
+
+        // extends the text formatted again only if that is shorter than starting from the
+        // nearest checkpoint, and as long as it is not too long
+        Checkpoint checkpoint = findCheckpoint(start);
+        if (replay == null || start < getBase(replay.output) || checkpoint.outputOffset > replay.output.size()
+                || replay.output.length() > WINDOW_SIZE) {
+            replay = new Replay(checkpoint);
+        }
+        replay.formatTo(end);
+
+        return replay.output;
+    }
+
+    /**
+     * @return offset in the formatted text of the first char held by the given output.
+     */
+    private static int getBase(JsonOutput text) {
+        return (int) (text.size() - text.length());
+    }
+
+    /**
+     * @return the last checkpoint at or before the given offset in the formatted text.
+     */
+    private Checkpoint findCheckpoint(int offset) {
+        int low = 0;
+        int high = checkpointCount - 1;
+        while (low < high) {
+            int mid = (low + high + 1) >>> 1;
+            if (checkpoints[mid].outputOffset <= offset) {
+                low = mid;
+            } else {
+                high = mid - 1;
+            }
+        }
+
+        return checkpoints[low];
+    }
+
+    private void formatNextToken() {
+        try {
+            int token = tokenizer.next();
+            if (token == JsonTokenizer.END_DOCUMENT) {
+                complete = true;
+                return;
+            }
+
+            int start = output.length();
+            formatter.formatToken(output, tokenizer, token, state);
+
+            // a token starts at most one line, plus the marker line when the output budget runs out
+            int base = getBase(output);
+            for (int i = start; i < output.length(); i++) {
+                if (output.charAt(i) == '\n') {
+                    addLine(base + i + 1, tokenizer.getDepth());
+                }
+            }
+
+            if (state.stopped) {
+                complete = true;
+            } else if (lineStartCount - checkpointLine >= CHECKPOINT_LINES) {
+                addCheckpoint();
+            }
+        } catch (IOException e) {
+            stop("I/O error. " + e.getMessage());
+        } catch (JSONException e) {
+            stop(e.getMessage());
+        }
+    }
+
+    /**
+     * Saves the state between the last token and the next one, and drops the formatted text
+     * if the window has grown too large.
+     */
+    private void addCheckpoint() {
+        if (output.length() > WINDOW_SIZE) {
+            output.drop();
+        }
+
+        if (checkpointCount == checkpoints.length) {
+            Checkpoint[] newCheckpoints = new Checkpoint[checkpointCount * 2];
+            System.arraycopy(checkpoints, 0, newCheckpoints, 0, checkpointCount);
+            checkpoints = newCheckpoints;
+        }
+
+        checkpoints[checkpointCount++] = new Checkpoint(tokenizer.getPosition(), state.copy(),
+                (int) output.size(), output.getOpenStyle());
+        checkpointLine = lineStartCount;
+    }
+
+    private void addLine(int start, int depth) {
+        if (lineStartCount == lineStarts.length) {
+            int[] newStarts = new int[lineStartCount * 2];
+            int[] newDepths = new int[lineStartCount * 2];
+            System.arraycopy(lineStarts, 0, newStarts, 0, lineStartCount);
+            System.arraycopy(lineDepths, 0, newDepths, 0, lineStartCount);
+            lineStarts = newStarts;
+            lineDepths = newDepths;
+        }
+
+        lineStarts[lineStartCount] = start;
+        lineDepths[lineStartCount] = depth;
+        lineStartCount++;
+    }
+
+    private void stop(String message) {
+        errorMessage = message;
+        complete = true;
+    }
+
+    /**
+     * State of the formatting between two tokens, from which the text after it can be
+     * formatted again.
+     */
+    private static class Checkpoint {
+        final JsonTokenizer.Position position;
+        final JsonFormatter.TokenState state;
+        final int outputOffset;
+        final int openStyle;
+
+        Checkpoint(JsonTokenizer.Position position, JsonFormatter.TokenState state, int outputOffset, int openStyle) {
+            this.position = position;
+            this.state = state;
+            this.outputOffset = outputOffset;
+            this.openStyle = openStyle;
+        }
+    }
+
+    /**
+     * Formats the text after a checkpoint again, as far as it is asked for.
+     */
+    private class Replay {
+        final JsonTokenizer tokenizer;
+        final JsonFormatter.TokenState state;
+        final JsonOutput output;
+        private boolean ended;
+
+        Replay(Checkpoint checkpoint) {
+            this.tokenizer = formatter.configure(JsonTokenizer.resume(
+                    new InputReader(input, checkpoint.position.offset), checkpoint.position));
+            this.state = checkpoint.state.copy();
+            this.output = new JsonOutput();
+            output.skip(checkpoint.outputOffset);
+            output.setOpenStyle(checkpoint.openStyle);
+        }
+
+        /**
+         * Formats tokens until the text reaches the given offset. The input was formatted up
+         * to there before, so it only ends early where that formatting stopped at an error.
+         */
+        void formatTo(int offset) {
+            try {
+                while (!ended && output.size() < offset) {
+                    int token = tokenizer.next();
+                    if (token == JsonTokenizer.END_DOCUMENT) {
+                        ended = true;
+                    } else {
+                        formatter.formatToken(output, tokenizer, token, state);
+                    }
+                }
+            } catch (IOException e) {
+                ended = true;
+            } catch (JSONException e) {
+                ended = true;
+            }
+        }
+    }
+
+    /**
+     * Reads the input again from a given offset.
+     */
+    private static class InputReader extends Reader {
+        private final CharSequence input;
+        private int pos;
+
+        InputReader(CharSequence input, int pos) {
+            this.input = input;
+            this.pos = pos;
+        }
+
+        @Override
+        public int read(char[] buffer, int offset, int length) {
+            int count = Math.min(length, input.length() - pos);
+            if (count <= 0) {
+                return length == 0 ? 0 : -1;
+            }
+
+            for (int i = 0; i < count; i++) {
+                buffer[offset + i] = input.charAt(pos + i);
+            }
+            pos += count;
+
+            return count;
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
+    /**
+     * Keeps what is read from a reader, so that it can be read again by an {@link InputReader}.
+     */
+    private static class Recorder extends Reader {
+        final StringBuilder text = new StringBuilder();
+        private final Reader reader;
+
+        Recorder(Reader reader) {
+            this.reader = reader;
+        }
+
+        @Override
+        public int read(char[] buffer, int offset, int length) throws IOException {
+            int count = reader.read(buffer, offset, length);
+            if (count > 0) {
+                text.append(buffer, offset, count);
+            }
+
+            return count;
+        }
+
+        @Override
+        public void close() throws IOException {
+            reader.close();
+        }
+    }
+}
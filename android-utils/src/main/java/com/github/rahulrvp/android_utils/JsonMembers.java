@@ -0,0 +1,228 @@
+package com.github.rahulrvp.android_utils;
+
+/**
+ * Keys and values of a {@link JsonIndex}: every object member and array element written to the
+ * text, in document order, with the text ranges of its key and value. The top level value is
+ * not a member. Used to answer searches without looking at the rest of the text.
+ * <p>
+ * Ranges cover the text of a token without its markup, quotes included. A value that is an
+ * object or array refers to its node in the index instead of having a range.
+ */
+
+class JsonMembers {
+
+    private int[] depths;
+    private int[] indexes;
+    private int[] keyStarts;
+    private int[] keyEnds;
+    private int[] kinds;
+    private int[] valueStarts;
+    private int[] valueEnds;
+    private int[] valueNodes;
+    private int count;
+
+    JsonMembers() {
+        depths = new int[64];
+        indexes = new int[64];
+        keyStarts = new int[64];
+        keyEnds = new int[64];
+        kinds = new int[64];
+        valueStarts = new int[64];
+        valueEnds = new int[64];
+        valueNodes = new int[64];
+    }
+
+    int getCount() {
+        return count;
+    }
+
+    /**
+     * @return depth of the member, 1 for the members of the top level object or array.
+     */
+    int getDepth(int member) {
+        return depths[member];
+    }
+
+    /**
+     * @return index of the member among the members of its object or array.
+     */
+    int getIndex(int member) {
+        return indexes[member];
+    }
+
+    /**
+     * @return start of the key, or -1 for an array element.
+     */
+    int getKeyStart(int member) {
+        return keyStarts[member];
+    }
+
+    int getKeyEnd(int member) {
+        return keyEnds[member];
+    }
+
+    /**
+     * @return one of the value token constants of {@link JsonTokenizer}.
+     */
+    int getKind(int member) {
+        return kinds[member];
+    }
+
+    int getValueStart(int member) {
+        return valueStarts[member];
+    }
+
+    int getValueEnd(int member) {
+        return valueEnds[member];
+    }
+
+    /**
+     * @return node of an object or array value, or {@link JsonIndex#NO_NODE} for other values.
+     */
+    int getValueNode(int member) {
+        return valueNodes[member];
+    }
+
+    /**
+     * Adds an object member, whose value is set later with {@link #setValue(int, int, int, int)}.
+     */
+    void addKey(int depth, int index, int keyStart, int keyEnd) {
+        add(depth, index, keyStart, keyEnd);
+    }
+
+    /**
+     * Adds an array element, whose value is set later with {@link #setValue(int, int, int, int)}.
+     */
+    void addElement(int depth, int index) {
+        add(depth, index, -1, -1);
+    }
+
+    /**
+     * Sets the value of the last member added.
+     *
+     * @param node node of an object or array value, or {@link JsonIndex#NO_NODE}.
+     */
+    void setValue(int kind, int start, int end, int node) {
+        int member = count - 1;
+        kinds[member] = kind;
+        valueStarts[member] = start;
+        valueEnds[member] = end;
+        valueNodes[member] = node;
+    }
+
+    /**
+     * @return the first member that starts after the given text offset.
+     */
+    int findFirstAfter(int offset) {
+        int low = 0;
+        int high = count;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (getPosition(mid) <= offset) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+
+        return low;
+    }
+
+    /**
+     * Replaces a run of members with the members of a fragment, and moves the members after
+     * them, see {@link JsonIndex#replace(int, JsonIndex, int)}.
+     *
+     * @param from        first member to replace.
+     * @param to          end of the members to replace, exclusive.
+     * @param fragment    members of the fragment; text offsets start at 0 and nodes at 0.
+     * @param outputStart text offset of the fragment.
+     * @param outputDelta change in the length of the text.
+     * @param firstNode   node number of the first node of the fragment.
+     * @param nextNode    number of the first node after the replaced nodes, before the change.
+     * @param nodeDelta   change in the number of nodes.
+     */
+    void replace(int from, int to, JsonMembers fragment, int outputStart, int outputDelta,
+                 int firstNode, int nextNode, int nodeDelta) {
+        int countDelta = fragment.count - (to - from);
+        int newCount = count + countDelta;
+        while (newCount > depths.length) {
+            grow();
+        }
+
+        int tail = count - to;
+        int[][] arrays = {depths, indexes, keyStarts, keyEnds, kinds, valueStarts, valueEnds, valueNodes};
+        for (int[] array : arrays) {
+            System.arraycopy(array, to, array, to + countDelta, tail);
+        }
+
+        for (int i = to + countDelta; i < newCount; i++) {
+            if (keyStarts[i] >= 0) {
+                keyStarts[i] += outputDelta;
+                keyEnds[i] += outputDelta;
+            }
+            valueStarts[i] += outputDelta;
+            valueEnds[i] += outputDelta;
+            if (valueNodes[i] >= nextNode) {
+                valueNodes[i] += nodeDelta;
+            }
+        }
+
+        for (int i = 0; i < fragment.count; i++) {
+            int target = from + i;
+            depths[target] = fragment.depths[i];
+            indexes[target] = fragment.indexes[i];
+            keyStarts[target] = fragment.keyStarts[i] >= 0 ? fragment.keyStarts[i] + outputStart : -1;
+            keyEnds[target] = fragment.keyEnds[i] >= 0 ? fragment.keyEnds[i] + outputStart : -1;
+            kinds[target] = fragment.kinds[i];
+            valueStarts[target] = fragment.valueStarts[i] + outputStart;
+            valueEnds[target] = fragment.valueEnds[i] + outputStart;
+            valueNodes[target] = fragment.valueNodes[i] != JsonIndex.NO_NODE ? fragment.valueNodes[i] + firstNode : JsonIndex.NO_NODE;
+        }
+
+        count = newCount;
+    }
+
+    void clear() {
+        count = 0;
+    }
+
+    private int getPosition(int member) {
+        return keyStarts[member] >= 0 ? keyStarts[member] : valueStarts[member];
+    }
+
+    private void add(int depth, int index, int keyStart, int keyEnd) {
+        if (count == depths.length) {
+            grow();
+        }
+
+        int member = count++;
+        depths[member] = depth;
+        indexes[member] = index;
+        keyStarts[member] = keyStart;
+        keyEnds[member] = keyEnd;
+        kinds[member] = JsonTokenizer.NULL;
+        valueStarts[member] = keyEnd;
+        valueEnds[member] = keyEnd;
+        valueNodes[member] = JsonIndex.NO_NODE;
+    }
+
+    private void grow() {
+        int capacity = depths.length * 2;
+
+        depths = copyOf(depths, capacity);
+        indexes = copyOf(indexes, capacity);
+        keyStarts = copyOf(keyStarts, capacity);
+        keyEnds = copyOf(keyEnds, capacity);
+        kinds = copyOf(kinds, capacity);
+        valueStarts = copyOf(valueStarts, capacity);
+        valueEnds = copyOf(valueEnds, capacity);
+        valueNodes = copyOf(valueNodes, capacity);
+    }
+
+    private int[] copyOf(int[] array, int capacity) {
+        int[] copy = new int[capacity];
+        System.arraycopy(array, 0, copy, 0, count);
+
+        return copy;
+    }
+}
@@ -0,0 +1,435 @@
+package com.github.rahulrvp.android_utils;
+
+import android.graphics.Typeface;
+import android.text.SpannableString;
+import android.text.Spanned;
+import android.text.style.ForegroundColorSpan;
+import android.text.style.StyleSpan;
+
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * Output buffer used by {@link JsonFormatter}. When created without a target, everything is
+ * collected in memory and can be read with {@link #toString()}. When a target {@link Appendable}
+ * and/or a {@link JsonFormatter.ChunkListener} is given, the buffered output is handed over in
+ * chunks as soon as it grows past the chunk size, so the whole result is never held at once.
+ * <p>
+ * Color spans for {@link JsonFormatter#SPANNABLE} output are recorded as plain int runs while
+ * formatting and only turned into span objects once, in {@link #toText()}. Adjacent runs of the
+ * same style are merged. Spans are not recorded when the output is handed over in chunks.
+ * <p>
+ * Output can also go to a {@link ByteBuffer} or {@link WritableByteChannel}, one byte per char,
+ * for the UTF-8 path of the formatter where chars hold undecoded bytes.
+ */
+
+class JsonOutput {
+
+    static final int DEFAULT_CHUNK_SIZE = 8192;
+    static final int NO_STYLE = -1;
+
+    private final StringBuilder buffer;
+    private final Appendable target;
+    private final JsonFormatter.ChunkListener listener;
+    private final ByteBuffer byteTarget;
+    private final WritableByteChannel channelTarget;
+    private final int chunkSize;
+    private char[] writeBuffer;
+    private ByteBuffer channelBuffer;
+
+    private long flushed;
+
+    private int[] spanRuns;
+    private int spanCount;
+
+    private boolean stopOnInterrupt;
+    private int openStyle = NO_STYLE;
+    private int tokenStart;
+    private int tokenEnd;
+
+    JsonOutput() {
+        this(null, null);
+    }
+
+    JsonOutput(Appendable target, JsonFormatter.ChunkListener listener) {
+        this(target, listener, null, null);
+    }
+
+    /**
+     * Creates an output that writes into the given buffer as single byte chars, see
+     * {@link #writeBytes(ByteBuffer)}.
+     */
+    JsonOutput(ByteBuffer target) {
+        this(null, null, target, null);
+    }
+
+    /**
+     * Creates an output that writes into the given channel as single byte chars, see
+     * {@link #writeBytes(ByteBuffer)}.
+     */
+    JsonOutput(WritableByteChannel target) {
+        this(null, null, null, target);
+    }
+
+    private JsonOutput(Appendable target, JsonFormatter.ChunkListener listener, ByteBuffer byteTarget, WritableByteChannel channelTarget) {
+        this.target = target;
+        this.listener = listener;
+        this.byteTarget = byteTarget;
+        this.channelTarget = channelTarget;
+        this.chunkSize = DEFAULT_CHUNK_SIZE;
+        this.buffer = new StringBuilder(isStreaming() ? chunkSize + chunkSize / 4 : 16);
+    }
+
+    JsonOutput append(CharSequence value) {
+        buffer.append(value);
+        return this;
+    }
+
+    /**
+     * Appends the chars from {@code start} (inclusive) to {@code end} (exclusive) of the value.
+     */
+    JsonOutput append(CharSequence value, int start, int end) {
+        buffer.append(value, start, end);
+        return this;
+    }
+
+    JsonOutput append(Object value) {
+        buffer.append(value);
+        return this;
+    }
+
+    JsonOutput append(char value) {
+        buffer.append(value);
+        return this;
+    }
+
+    JsonOutput append(boolean value) {
+        buffer.append(value);
+        return this;
+    }
+
+    JsonOutput append(long value) {
+        buffer.append(value);
+        return this;
+    }
+
+    JsonOutput append(double value) {
+        buffer.append(value);
+        return this;
+    }
+
+    /**
+     * Appends the text collected by another output, along with its spans.
+     */
+    JsonOutput append(JsonOutput other) {
+        int offset = buffer.length();
+        buffer.append(other.buffer);
+
+        for (int i = 0; i < other.spanCount; i++) {
+            int index = i * 4;
+            addSpan(other.spanRuns[index] + offset, other.spanRuns[index + 1] + offset,
+                    other.spanRuns[index + 2], other.spanRuns[index + 3] != 0);
+        }
+
+        return this;
+    }
+
+    int length() {
+        return buffer.length();
+    }
+
+    /**
+     * @return total number of chars written so far, including the chunks already handed over.
+     */
+    long size() {
+        return flushed + buffer.length();
+    }
+
+    /**
+     * @return true if the output is written as bytes, one per char, see {@link #writeBytes(ByteBuffer)}.
+     */
+    boolean isBytes() {
+        return byteTarget != null || channelTarget != null;
+    }
+
+    /**
+     * Records a color span over the given range of the output.
+     *
+     * @param start  start index, inclusive.
+     * @param end    end index, exclusive.
+     * @param color  color int of the span.
+     * @param italic true if the range should be in italics as well.
+     */
+    void addSpan(int start, int end, int color, boolean italic) {
+        if (isStreaming() || start >= end) {
+            return;
+        }
+
+        int style = italic ? 1 : 0;
+        if (spanCount > 0) {
+            int last = (spanCount - 1) * 4;
+            if (spanRuns[last + 1] == start && spanRuns[last + 2] == color && spanRuns[last + 3] == style) {
+                spanRuns[last + 1] = end;
+                return;
+            }
+        }
+
+        if (spanRuns == null) {
+            spanRuns = new int[64 * 4];
+        } else if (spanCount * 4 == spanRuns.length) {
+            int[] newRuns = new int[spanRuns.length * 2];
+            System.arraycopy(spanRuns, 0, newRuns, 0, spanRuns.length);
+            spanRuns = newRuns;
+        }
+
+        int index = spanCount * 4;
+        spanRuns[index] = start;
+        spanRuns[index + 1] = end;
+        spanRuns[index + 2] = color;
+        spanRuns[index + 3] = style;
+        spanCount++;
+    }
+
+    /**
+     * @return the collected output as a {@link Spanned} text if color spans were recorded,
+     * else as a plain String.
+     */
+    CharSequence toText() {
+        return toText(0, buffer.length());
+    }
+
+    /**
+     * Same as {@link #toText()} for a range of the collected output. Only the spans over the
+     * range are created.
+     *
+     * @param start start index, inclusive.
+     * @param end   end index, exclusive.
+     */
+    CharSequence toText(int start, int end) {
+        int run = findFirstRun(start);
+        if (run == spanCount || spanRuns[run * 4] >= end) {
+            return buffer.substring(start, end);
+        }
+
+        SpannableString text = new SpannableString(buffer.substring(start, end));
+        for (; run < spanCount && spanRuns[run * 4] < end; run++) {
+            int index = run * 4;
+            int spanStart = Math.max(spanRuns[index], start) - start;
+            int spanEnd = Math.min(spanRuns[index + 1], end) - start;
+
+            text.setSpan(new ForegroundColorSpan(spanRuns[index + 2]), spanStart, spanEnd, Spanned.SPAN_EXCLUSIVE_EXCLUSIVE);
+            if (spanRuns[index + 3] != 0) {
+                text.setSpan(new StyleSpan(Typeface.ITALIC), spanStart, spanEnd, Spanned.SPAN_EXCLUSIVE_EXCLUSIVE);
+            }
+        }
+
+        return text;
+    }
+
+    /**
+     * @return the color of the markup element that is still open at the end of the output, or
+     * {@link #NO_STYLE}. Used by {@link JsonFormatter#HTML_CSS} output to merge adjacent
+     * tokens of the same color.
+     */
+    int getOpenStyle() {
+        return openStyle;
+    }
+
+    void setOpenStyle(int style) {
+        this.openStyle = style;
+    }
+
+    /**
+     * Records that the text of a token starts here, after any markup in front of it.
+     */
+    void markTokenStart() {
+        tokenStart = buffer.length();
+    }
+
+    /**
+     * Records that the text of a token ends here, before any markup after it.
+     */
+    void markTokenEnd() {
+        tokenEnd = buffer.length();
+    }
+
+    /**
+     * @return start of the text of the last token, see {@link #markTokenStart()}.
+     */
+    int getTokenStart() {
+        return tokenStart;
+    }
+
+    int getTokenEnd() {
+        return tokenEnd;
+    }
+
+    /**
+     * @return the collected text from {@code start} (inclusive) to {@code end} (exclusive), without spans.
+     */
+    String substring(int start, int end) {
+        return buffer.substring(start, end);
+    }
+
+    char charAt(int index) {
+        return buffer.charAt(index);
+    }
+
+    /**
+     * @return index of the first span run that ends after the given position. Runs are recorded
+     * in output order, so they are sorted by both start and end.
+     */
+    private int findFirstRun(int position) {
+        int low = 0;
+        int high = spanCount;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (spanRuns[mid * 4 + 1] <= position) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+
+        return low;
+    }
+
+    /**
+     * Makes {@link #checkpoint()} abort the formatting once the current thread is interrupted,
+     * which is how cancelled asynchronous requests stop early.
+     */
+    void stopOnInterrupt() {
+        stopOnInterrupt = true;
+    }
+
+    /**
+     * Called by the formatter between tokens. Hands over the buffered output if it has grown
+     * past the chunk size, so a chunk never ends in the middle of a token or markup tag.
+     */
+    void checkpoint() throws IOException {
+        if (stopOnInterrupt && Thread.currentThread().isInterrupted()) {
+            throw new InterruptedIOException("Formatting cancelled");
+        }
+
+        if (buffer.length() >= chunkSize && isStreaming()) {
+            flushBuffer();
+        }
+    }
+
+    /**
+     * Hands over whatever is left in the buffer and flushes the target if it is {@link Flushable}.
+     */
+    void finish() throws IOException {
+        if (isStreaming()) {
+            flushBuffer();
+
+            if (target instanceof Flushable) {
+                ((Flushable) target).flush();
+            }
+        }
+    }
+
+    /**
+     * Drops the collected output and its spans, but keeps counting it in {@link #size()} and
+     * keeps the open style, so that the output goes on as if it were still there.
+     */
+    void drop() {
+        skip(buffer.length());
+        buffer.setLength(0);
+        spanCount = 0;
+    }
+
+    /**
+     * Counts the given number of chars in {@link #size()} as if they were written, for output
+     * that goes on from a point formatted elsewhere.
+     */
+    void skip(long count) {
+        flushed += count;
+    }
+
+    /**
+     * Drops the output that is still buffered. Chunks which are already handed over can't be undone.
+     */
+    void discard() {
+        buffer.setLength(0);
+        spanCount = 0;
+        openStyle = NO_STYLE;
+    }
+
+    @Override
+    public String toString() {
+        return buffer.toString();
+    }
+
+    private boolean isStreaming() {
+        return target != null || listener != null || byteTarget != null || channelTarget != null;
+    }
+
+    private void flushBuffer() throws IOException {
+        if (buffer.length() > 0) {
+            if (target instanceof Writer) {
+                writeTo((Writer) target);
+            } else if (target != null) {
+                target.append(buffer);
+            } else if (byteTarget != null) {
+                writeBytes(byteTarget);
+            } else if (channelTarget != null) {
+                writeTo(channelTarget);
+            }
+
+            if (listener != null) {
+                listener.onChunk(buffer);
+            }
+
+            flushed += buffer.length();
+            buffer.setLength(0);
+        }
+    }
+
+    /**
+     * Writes the buffer into the given byte buffer, one byte per char. Used for output of the
+     * UTF-8 formatting path, where every char holds a single byte of the input or ASCII markup,
+     * so this is the exact UTF-8 encoding without a charset encoder.
+     */
+    private void writeBytes(ByteBuffer bytes) throws IOException {
+        int length = buffer.length();
+        if (bytes.remaining() < length) {
+            throw new IOException("Not enough space in the output buffer");
+        }
+
+        for (int i = 0; i < length; i++) {
+            bytes.put((byte) buffer.charAt(i));
+        }
+    }
+
+    private void writeTo(WritableByteChannel channel) throws IOException {
+        if (channelBuffer == null || channelBuffer.capacity() < buffer.length()) {
+            channelBuffer = ByteBuffer.allocate(buffer.length());
+        }
+
+        channelBuffer.clear();
+        writeBytes(channelBuffer);
+        channelBuffer.flip();
+        while (channelBuffer.hasRemaining()) {
+            channel.write(channelBuffer);
+        }
+    }
+
+    /**
+     * Writes the buffer through a reused char array, as {@link Writer#append(CharSequence)}
+     * would create a new String for every chunk.
+     */
+    private void writeTo(Writer writer) throws IOException {
+        int length = buffer.length();
+        if (writeBuffer == null || writeBuffer.length < length) {
+            writeBuffer = new char[length];
+        }
+
+        buffer.getChars(0, length, writeBuffer, 0);
+        writer.write(writeBuffer, 0, length);
+    }
+}
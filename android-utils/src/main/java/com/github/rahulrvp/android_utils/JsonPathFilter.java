@@ -0,0 +1,369 @@
+package com.github.rahulrvp.android_utils;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Include, exclude and mask rules of a {@link JsonFormatter}, given as simple JSONPath like
+ * paths, for example {@code address[*].city}, {@code $.user.phone} or {@code items[0]}.
+ * <p>
+ * A path is a list of segments separated by dots: a key, {@code *} for any key or element, or a
+ * bracketed element index {@code [n]} or {@code [*]} for any element. A leading {@code $} is
+ * optional. Paths are matched member by member while the document is read, so deciding whether
+ * a member is kept costs a few bit operations and skipped members are never written:
+ * <ul>
+ * <li>exclude: the member is left out.</li>
+ * <li>mask: the value of the member is replaced with {@value #MASK_TEXT}.</li>
+ * <li>include: once there is an include rule, only the members on the way to or inside an
+ * included member are kept. A member is on the way to an included member only if its value is
+ * an object or array, see {@link #PARTIAL}.</li>
+ * </ul>
+ * Instances are immutable; the matching state lives in a {@link Cursor}.
+ */
+
+class JsonPathFilter {
+
+    static final int KEEP = 0;
+    static final int DROP = 1;
+    static final int MASK = 2;
+    /**
+     * Flag added to {@link #KEEP} or {@link #MASK} for a member that is only on the way to an
+     * included member: it is kept only if its value is an object or array. Resolved with
+     * {@link #resolve(int, boolean)} once the value is known.
+     */
+    static final int PARTIAL = 4;
+
+    static final String MASK_TEXT = "***";
+
+    /**
+     * Rules are tracked as bits of a long.
+     */
+    private static final int MAX_RULES = 64;
+
+    private static final int SEGMENT_KEY = 0;
+    private static final int SEGMENT_ANY = 1;
+    private static final int SEGMENT_INDEX = 2;
+    private static final int SEGMENT_ANY_INDEX = 3;
+
+    private final List<String> includes;
+    private final List<String> excludes;
+    private final List<String> masks;
+
+    private final int ruleCount;
+    private final int[][] segmentKinds;
+    private final String[][] segmentKeys;
+    private final int[][] segmentIndexes;
+
+    private final long includeRules;
+    private final long excludeRules;
+    private final long maskRules;
+    /**
+     * Rules whose path has the length of the index, i.e. which are complete at that depth.
+     */
+    private final long[] completeRules;
+
+    private JsonPathFilter(List<String> includes, List<String> excludes, List<String> masks) {
+        this.includes = Collections.unmodifiableList(new ArrayList<String>(includes));
+        this.excludes = Collections.unmodifiableList(new ArrayList<String>(excludes));
+        this.masks = Collections.unmodifiableList(new ArrayList<String>(masks));
+
+        ruleCount = includes.size() + excludes.size() + masks.size();
+        segmentKinds = new int[ruleCount][];
+        segmentKeys = new String[ruleCount][];
+        segmentIndexes = new int[ruleCount][];
+
+        int maxLength = 0;
+        int rule = 0;
+        long[] kinds = new long[3];
+        List<List<String>> lists = new ArrayList<List<String>>();
+        lists.add(includes);
+        lists.add(excludes);
+        lists.add(masks);
+
+        for (int kind = 0; kind < 3; kind++) {
+            for (String path : lists.get(kind)) {
+                parse(path, rule);
+                kinds[kind] |= 1L << rule;
+                maxLength = Math.max(maxLength, segmentKinds[rule].length);
+                rule++;
+            }
+        }
+
+        includeRules = kinds[0];
+        excludeRules = kinds[1];
+        maskRules = kinds[2];
+
+        completeRules = new long[maxLength + 1];
+        for (int i = 0; i < ruleCount; i++) {
+            completeRules[segmentKinds[i].length] |= 1L << i;
+        }
+    }
+
+    /**
+     * @return a filter for the given rules, or null if there are none.
+     * @throws IllegalArgumentException if a path is not valid or there are too many rules.
+     */
+    static JsonPathFilter create(List<String> includes, List<String> excludes, List<String> masks) {
+        if (includes.isEmpty() && excludes.isEmpty() && masks.isEmpty()) {
+            return null;
+        }
+
+        if (includes.size() + excludes.size() + masks.size() > MAX_RULES) {
+            throw new IllegalArgumentException("At most " + MAX_RULES + " path rules are supported");
+        }
+
+        return new JsonPathFilter(includes, excludes, masks);
+    }
+
+    /**
+     * Checks the syntax of a path.
+     *
+     * @throws IllegalArgumentException if the path is not valid.
+     */
+    static void validate(String path) {
+        new JsonPathFilter(Collections.singletonList(path), Collections.<String>emptyList(), Collections.<String>emptyList());
+    }
+
+    List<String> getIncludes() {
+        return includes;
+    }
+
+    List<String> getExcludes() {
+        return excludes;
+    }
+
+    List<String> getMasks() {
+        return masks;
+    }
+
+    /**
+     * Decides what happens with a member and records its match state in the cursor, for the
+     * members inside it.
+     *
+     * @param cursor matching state of the document.
+     * @param depth  depth of the member, 1 for members of the top level container.
+     * @param key    key of an object member, or null for an array element.
+     * @param index  index of an array element, ignored for object members.
+     * @return {@link #DROP}, or {@link #KEEP} or {@link #MASK} possibly with the
+     * {@link #PARTIAL} flag.
+     */
+    int enter(Cursor cursor, int depth, CharSequence key, int index) {
+        long matched = 0;
+
+        int segment = depth - 1;
+        long alive = cursor.alive[segment];
+        while (alive != 0) {
+            int rule = Long.numberOfTrailingZeros(alive);
+            alive &= alive - 1;
+
+            if (segment < segmentKinds[rule].length && matches(rule, segment, key, index)) {
+                matched |= 1L << rule;
+            }
+        }
+
+        long complete = depth < completeRules.length ? matched & completeRules[depth] : 0;
+        if ((complete & excludeRules) != 0) {
+            return DROP;
+        }
+
+        boolean all = cursor.all[segment] || (complete & includeRules) != 0;
+        if (!all && (matched & includeRules) == 0) {
+            return DROP;
+        }
+
+        cursor.set(depth, matched, all);
+
+        int action = (complete & maskRules) != 0 ? MASK : KEEP;
+        return all ? action : action | PARTIAL;
+    }
+
+    /**
+     * @param action    action returned by {@link #enter(Cursor, int, CharSequence, int)}.
+     * @param container true if the value of the member is an object or array.
+     * @return {@link #KEEP}, {@link #DROP} or {@link #MASK} for the member.
+     */
+    static int resolve(int action, boolean container) {
+        if ((action & PARTIAL) == 0) {
+            return action;
+        }
+
+        return container ? action & ~PARTIAL : DROP;
+    }
+
+    private boolean matches(int rule, int segment, CharSequence key, int index) {
+        switch (segmentKinds[rule][segment]) {
+            case SEGMENT_ANY:
+                return true;
+
+            case SEGMENT_ANY_INDEX:
+                return key == null;
+
+            case SEGMENT_INDEX:
+                return key == null && segmentIndexes[rule][segment] == index;
+
+            case SEGMENT_KEY:
+            default:
+                return key != null && segmentKeys[rule][segment].contentEquals(key);
+        }
+    }
+
+    private void parse(String path, int rule) {
+        List<Integer> kinds = new ArrayList<Integer>();
+        List<String> keys = new ArrayList<String>();
+        List<Integer> indexes = new ArrayList<Integer>();
+
+        int length = path == null ? 0 : path.length();
+        int pos = 0;
+        if (pos < length && path.charAt(pos) == '$') {
+            pos++;
+        }
+        if (pos < length && path.charAt(pos) == '.') {
+            pos++;
+        }
+
+        while (pos < length) {
+            char c = path.charAt(pos);
+
+            if (c == '[') {
+                int end = path.indexOf(']', pos);
+                if (end == -1) {
+                    throw invalidPath(path);
+                }
+
+                String content = path.substring(pos + 1, end);
+                if (content.equals("*")) {
+                    kinds.add(SEGMENT_ANY_INDEX);
+                    indexes.add(-1);
+                } else {
+                    int index;
+                    try {
+                        index = Integer.parseInt(content);
+                    } catch (NumberFormatException e) {
+                        throw invalidPath(path);
+                    }
+                    if (index < 0) {
+                        throw invalidPath(path);
+                    }
+                    indexes.add(index);
+                    kinds.add(SEGMENT_INDEX);
+                }
+                keys.add(null);
+
+                pos = end + 1;
+                if (pos < length && path.charAt(pos) == '.') {
+                    pos++;
+                    if (pos == length) {
+                        throw invalidPath(path);
+                    }
+                }
+            } else {
+                int end = pos;
+                while (end < length && path.charAt(end) != '.' && path.charAt(end) != '[') {
+                    end++;
+                }
+                if (end == pos) {
+                    throw invalidPath(path);
+                }
+
+                String name = path.substring(pos, end);
+                kinds.add(name.equals("*") ? SEGMENT_ANY : SEGMENT_KEY);
+                keys.add(name);
+                indexes.add(-1);
+
+                pos = end;
+                if (pos < length && path.charAt(pos) == '.') {
+                    pos++;
+                    if (pos == length) {
+                        throw invalidPath(path);
+                    }
+                }
+            }
+        }
+
+        if (kinds.isEmpty()) {
+            throw invalidPath(path);
+        }
+
+        int count = kinds.size();
+        segmentKinds[rule] = new int[count];
+        segmentKeys[rule] = new String[count];
+        segmentIndexes[rule] = new int[count];
+        for (int i = 0; i < count; i++) {
+            segmentKinds[rule][i] = kinds.get(i);
+            segmentKeys[rule][i] = keys.get(i);
+            segmentIndexes[rule][i] = indexes.get(i);
+        }
+    }
+
+    private static IllegalArgumentException invalidPath(String path) {
+        return new IllegalArgumentException("Invalid path '" + path + "'");
+    }
+
+    /**
+     * @return a key that is equal for filters with the same rules. Every path is prefixed with
+     * its length, so that paths containing separators can't make different rules look the same.
+     */
+    String getKey() {
+        StringBuilder key = new StringBuilder();
+        appendKey(key, 'i', includes);
+        appendKey(key, 'e', excludes);
+        appendKey(key, 'm', masks);
+
+        return key.toString();
+    }
+
+    private static void appendKey(StringBuilder key, char kind, List<String> paths) {
+        for (String path : paths) {
+            key.append(kind).append(path.length()).append(':').append(path);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "include" + includes + " exclude" + excludes + " mask" + masks;
+    }
+
+    /**
+     * Matching state of a document: for every depth of the current path, the rules that still
+     * match and whether the path is inside an included member.
+     */
+    static class Cursor {
+        private long[] alive;
+        private boolean[] all;
+
+        Cursor(JsonPathFilter filter) {
+            alive = new long[16];
+            all = new boolean[16];
+
+            alive[0] = filter.ruleCount == MAX_RULES ? -1L : (1L << filter.ruleCount) - 1;
+            all[0] = filter.includeRules == 0;
+        }
+
+        private Cursor(long[] alive, boolean[] all) {
+            this.alive = alive;
+            this.all = all;
+        }
+
+        /**
+         * @return an independent copy of this state.
+         */
+        Cursor copy() {
+            return new Cursor(alive.clone(), all.clone());
+        }
+
+        private void set(int depth, long matched, boolean included) {
+            if (depth == alive.length) {
+                long[] newAlive = new long[depth * 2];
+                boolean[] newAll = new boolean[depth * 2];
+                System.arraycopy(alive, 0, newAlive, 0, depth);
+                System.arraycopy(all, 0, newAll, 0, depth);
+                alive = newAlive;
+                all = newAll;
+            }
+
+            alive[depth] = matched;
+            all[depth] = included;
+        }
+    }
+}
@@ -0,0 +1,192 @@
+package com.github.rahulrvp.android_utils;
+
+import android.util.Log;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.Reader;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+/**
+ * Formats newline delimited JSON (JSON Lines, NDJSON): every line of the input is a separate
+ * record, formatted on its own and followed by a line break in the output.
+ * <p>
+ * Lines are read on the calling thread and handed to the shared worker threads in batches, so
+ * that small records don't cost a task each. Batches are written in input order, and only a
+ * limited number of them are in flight at a time, so a slow destination holds back the reading
+ * instead of piling up formatted output. A record that is not valid JSON is left out of the
+ * output and reported to the {@link JsonFormatter.RecordListener}; the other records are not
+ * affected. Blank lines are skipped.
+ */
+
+class JsonRecords {
+
+    /**
+     * A batch is handed to the workers once it has this many lines or chars, whichever comes first.
+     */
+    private static final int BATCH_LINES = 256;
+    private static final int BATCH_CHARS = 64 * 1024;
+
+    private final JsonFormatter formatter;
+    private final JsonOutput output;
+    private final JsonFormatter.RecordListener listener;
+
+    JsonRecords(JsonFormatter formatter, JsonOutput output, JsonFormatter.RecordListener listener) {
+        this.formatter = formatter;
+        this.output = output;
+        this.listener = listener;
+    }
+
+    /**
+     * Formats all the records of the reader. The reader is not closed.
+     *
+     * @return true if the whole input was read and the output written, whether or not every
+     * record was valid; false otherwise.
+     */
+    boolean write(Reader reader) {
+        BufferedReader lines = reader instanceof BufferedReader ? (BufferedReader) reader : new BufferedReader(reader);
+        ArrayDeque<Future<Batch>> pending = new ArrayDeque<Future<Batch>>();
+        boolean result = false;
+
+        try {
+            Batch batch = new Batch(1);
+
+            String line;
+            while ((line = lines.readLine()) != null) {
+                if (batch.add(line)) {
+                    submit(pending, batch);
+                    batch = new Batch(batch.nextLine());
+                }
+            }
+
+            if (!batch.isEmpty()) {
+                submit(pending, batch);
+            }
+
+            while (!pending.isEmpty()) {
+                writeBatch(pending.peek());
+                pending.poll();
+            }
+
+            result = true;
+        } catch (IOException e) {
+            Log.e("JsonFormatter", "Unable to format the records. " + e.getMessage());
+        } finally {
+            for (Future<Batch> future : pending) {
+                future.cancel(true);
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * Hands a batch to the workers, after writing the oldest one if too many are in flight.
+     */
+    private void submit(ArrayDeque<Future<Batch>> pending, Batch batch) throws IOException {
+        if (pending.size() >= JsonFormatter.Workers.MAX_IN_FLIGHT) {
+            writeBatch(pending.peek());
+            pending.poll();
+        }
+
+        pending.add(JsonFormatter.Workers.EXECUTOR.submit(batch));
+    }
+
+    /**
+     * Waits for a batch to be formatted, writes its output and reports its invalid records.
+     */
+    private void writeBatch(Future<Batch> future) throws IOException {
+        Batch batch;
+        try {
+            batch = future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Formatting cancelled");
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            throw new IOException(String.valueOf(cause));
+        }
+
+        output.append(batch.output);
+        output.checkpoint();
+
+        if (listener != null) {
+            for (int i = 0; i < batch.errors.size(); i++) {
+                int index = batch.errorIndexes.get(i);
+                listener.onInvalidRecord(batch.firstLine + index, batch.lines.get(index), batch.errors.get(i));
+            }
+        }
+    }
+
+    private class Batch implements Callable<Batch> {
+        final long firstLine;
+        final List<String> lines = new ArrayList<String>();
+        int chars;
+
+        final JsonOutput output = new JsonOutput();
+        final List<Integer> errorIndexes = new ArrayList<Integer>();
+        final List<JsonFormatter.Result> errors = new ArrayList<JsonFormatter.Result>();
+
+        Batch(long firstLine) {
+            this.firstLine = firstLine;
+        }
+
+        /**
+         * @return true if the batch is full.
+         */
+        boolean add(String line) {
+            lines.add(line);
+            chars += line.length();
+
+            return lines.size() >= BATCH_LINES || chars >= BATCH_CHARS;
+        }
+
+        boolean isEmpty() {
+            return lines.isEmpty();
+        }
+
+        long nextLine() {
+            return firstLine + lines.size();
+        }
+
+        @Override
+        public Batch call() throws Exception {
+            output.stopOnInterrupt();
+
+            // a failed record discards what is buffered, so every record is formatted on its own
+            JsonOutput record = new JsonOutput();
+            record.stopOnInterrupt();
+
+            for (int i = 0; i < lines.size(); i++) {
+                String line = lines.get(i);
+                if (line.trim().length() == 0) {
+                    continue;
+                }
+
+                // the records are formatted on the workers already, so they are never split further
+                JsonFormatter.Result error = formatter.writeDocument(record, formatter.configure(new JsonTokenizer(line, false)));
+                if (error != null) {
+                    errorIndexes.add(i);
+                    errors.add(error);
+                    continue;
+                }
+
+                output.append(record);
+                output.append(formatter.getLineBreak());
+                record.discard();
+                output.checkpoint();
+            }
+
+            return this;
+        }
+    }
+}
@@ -0,0 +1,182 @@
+package com.github.rahulrvp.android_utils;
+
+/**
+ * Finds the members of the top level object or array of a JSON text with a quick character
+ * scan, so that runs of members can be formatted independently on different threads. Only
+ * brackets, commas and strings are looked at; the members themselves are validated later by
+ * the {@link JsonTokenizer} that formats them.
+ */
+
+class JsonSplitter {
+
+    final String text;
+    final boolean object;
+    final int close;
+    final int count;
+
+    private final int[] starts;
+    private final int[] lines;
+    private final int[] lineStarts;
+
+    private JsonSplitter(String text, boolean object, int close, int count, int[] starts, int[] lines, int[] lineStarts) {
+        this.text = text;
+        this.object = object;
+        this.close = close;
+        this.count = count;
+        this.starts = starts;
+        this.lines = lines;
+        this.lineStarts = lineStarts;
+    }
+
+    /**
+     * Scans the given text.
+     *
+     * @return the members of the top level container, or null if the text doesn't look like a
+     * single object or array. Such input is left to the sequential formatter, which reports
+     * the exact error.
+     * @throws JsonTokenizer.SyntaxException if the top level container is closed with the
+     *                                       wrong bracket, e.g. {@code [1, 2}.
+     */
+    static JsonSplitter scan(String text) throws JsonTokenizer.SyntaxException {
+        int length = text.length();
+        int line = 1;
+        int lineStart = 0;
+
+        int i = 0;
+        for (; i < length; i++) {
+            char c = text.charAt(i);
+            if (c == '\n') {
+                line++;
+                lineStart = i + 1;
+            } else if (c != ' ' && c != '\t' && c != '\r') {
+                break;
+            }
+        }
+
+        if (i == length || (text.charAt(i) != '{' && text.charAt(i) != '[')) {
+            return null;
+        }
+
+        boolean object = text.charAt(i) == '{';
+        int[] starts = new int[64];
+        int[] lines = new int[64];
+        int[] lineStarts = new int[64];
+        int count = 0;
+        boolean empty = true;
+
+        starts[count] = i + 1;
+        lines[count] = line;
+        lineStarts[count] = lineStart;
+        count++;
+
+        int depth = 0;
+        int close = -1;
+        for (; i < length && close == -1; i++) {
+            char c = text.charAt(i);
+            switch (c) {
+                case '"':
+                    i = skipString(text, i);
+                    if (i == -1) {
+                        return null;
+                    }
+                    empty = false;
+                    break;
+
+                case '{':
+                case '[':
+                    if (depth > 0) {
+                        empty = false;
+                    }
+                    depth++;
+                    break;
+
+                case '}':
+                case ']':
+                    depth--;
+                    if (depth == 0) {
+                        close = i;
+                    }
+                    break;
+
+                case ',':
+                    empty = false;
+                    if (depth == 1) {
+                        if (count == starts.length) {
+                            starts = grow(starts);
+                            lines = grow(lines);
+                            lineStarts = grow(lineStarts);
+                        }
+                        starts[count] = i + 1;
+                        lines[count] = line;
+                        lineStarts[count] = lineStart;
+                        count++;
+                    }
+                    break;
+
+                case '\n':
+                    line++;
+                    lineStart = i + 1;
+                    break;
+
+                case ' ':
+                case '\t':
+                case '\r':
+                    break;
+
+                default:
+                    empty = false;
+            }
+        }
+
+        if (close == -1) {
+            return null;
+        }
+
+        // brackets inside the members are checked by their tokenizers, only this one is not
+        if (text.charAt(close) != (object ? '}' : ']')) {
+            throw new JsonTokenizer.SyntaxException(object ? "Expected ',' or '}'" : "Expected ',' or ']'",
+                    line, close - lineStart + 1, close);
+        }
+
+        for (i = close + 1; i < length; i++) {
+            char c = text.charAt(i);
+            if (c != ' ' && c != '\t' && c != '\r' && c != '\n') {
+                return null;
+            }
+        }
+
+        return new JsonSplitter(text, object, close, empty ? 0 : count, starts, lines, lineStarts);
+    }
+
+    /**
+     * Creates a tokenizer for the members from index {@code from} (inclusive) to {@code to} (exclusive).
+     */
+    JsonTokenizer tokenizer(int from, int to) {
+        int end = to < count ? starts[to] - 1 : close;
+        return JsonTokenizer.forFragment(text, starts[from], end, object, lines[from], lineStarts[from]);
+    }
+
+    /**
+     * @return index of the closing quote of the string starting at the given index, or -1 if
+     * the string is not terminated.
+     */
+    private static int skipString(String text, int start) {
+        int length = text.length();
+        for (int i = start + 1; i < length; i++) {
+            char c = text.charAt(i);
+            if (c == '\\') {
+                i++;
+            } else if (c == '"') {
+                return i;
+            }
+        }
+
+        return -1;
+    }
+
+    private static int[] grow(int[] array) {
+        int[] newArray = new int[array.length * 2];
+        System.arraycopy(array, 0, newArray, 0, array.length);
+        return newArray;
+    }
+}
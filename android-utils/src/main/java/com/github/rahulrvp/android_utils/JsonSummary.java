@@ -0,0 +1,499 @@
+package com.github.rahulrvp.android_utils;
+
+import android.util.Log;
+
+import org.json.JSONException;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Inferred structure of a JSON document, collected in a single streaming pass and written as a
+ * small JSON document of its own, so that it can be formatted like any other input.
+ * <p>
+ * Values are grouped by path, with all the elements of an array sharing a path, so the size of
+ * the summary depends on the number of distinct paths rather than on the size of the document.
+ * For every path the summary has the number of values and of each type, the range of numbers,
+ * the range of string lengths and of array sizes, the keys of objects in the order they were
+ * first seen, and optionally a few example values picked by reservoir sampling, so every value
+ * has the same chance of being an example. The random numbers use a fixed seed, so the same
+ * input always gives the same summary.
+ * <p>
+ * Objects used as maps can have any number of distinct keys; only the first {@value #MAX_KEYS}
+ * keys of a path are summarized, and the members with other keys are only counted. Containers
+ * nested deeper than {@value #MAX_DEPTH} levels are counted, but their content is not
+ * summarized. The path rules of the formatter apply: left out members are not counted, and
+ * masked values are counted as {@code "masked"} without any statistics or examples. Only the
+ * first {@value #MAX_STRING_LENGTH} chars of a key or string are kept while reading, so keys
+ * that only differ after that are summarized together.
+ */
+
+class JsonSummary {
+
+    private static final int MAX_DEPTH = 256;
+    private static final int MAX_KEYS = 1000;
+    /**
+     * Longer string examples are cut and end with an ellipsis.
+     */
+    private static final int MAX_SAMPLE_LENGTH = 80;
+    private static final int MAX_STRING_LENGTH = 1024;
+    private static final long SEED = 0x4a534f4eL;
+    /**
+     * Number of tokens read between two checks for an interrupted thread.
+     */
+    private static final int INTERRUPT_CHECK_INTERVAL = 4096;
+
+    private static final int TYPE_OBJECT = 0;
+    private static final int TYPE_ARRAY = 1;
+    private static final int TYPE_STRING = 2;
+    private static final int TYPE_NUMBER = 3;
+    private static final int TYPE_BOOLEAN = 4;
+    private static final int TYPE_NULL = 5;
+    private static final int TYPE_MASKED = 6;
+    private static final String[] TYPE_NAMES = {"object", "array", "string", "number", "boolean", "null", "masked"};
+
+    private final JsonPathFilter pathFilter;
+    private final int sampleCount;
+    private final Random random;
+
+    private final Shape root;
+    /**
+     * Shape of the open container at each level.
+     */
+    private Shape[] containers;
+
+    private JsonSummary(JsonPathFilter pathFilter, int sampleCount) {
+        this.pathFilter = pathFilter;
+        this.sampleCount = sampleCount;
+        this.random = new Random(SEED);
+
+        root = new Shape();
+        containers = new Shape[32];
+    }
+
+    /**
+     * Summarizes the JSON read from the reader and formats the summary, see
+     * {@link JsonFormatter#formatSummary(Reader)}. The path rules of the formatter are applied
+     * to the input, and the summary is formatted without them.
+     *
+     * @return true if the input was valid and the summary written; false otherwise.
+     */
+    static boolean write(JsonFormatter formatter, JsonOutput output, Reader reader) {
+        if (reader == null) {
+            return false;
+        }
+
+        JsonFormatter.Result error;
+        try {
+            String summary = new JsonSummary(formatter.getPathFilter(), formatter.getSummarySamples())
+                    .read(new JsonTokenizer(reader));
+            error = formatter.forSummary().writeDocument(output, summary);
+        } catch (JsonTokenizer.SyntaxException e) {
+            error = new JsonFormatter.Result(e.reason, e.line, e.column, e.offset);
+        } catch (JSONException e) {
+            error = new JsonFormatter.Result(e.getMessage(), -1, -1, -1);
+        } catch (IOException e) {
+            error = new JsonFormatter.Result("I/O error. " + e.getMessage(), -1, -1, -1);
+        }
+
+        if (error != null) {
+            Log.e("JsonFormatter", "Unable to summarize the input. " + error);
+        }
+
+        return error == null;
+    }
+
+    /**
+     * Reads the whole document and collects its structure.
+     *
+     * @return the summary as a JSON object.
+     * @throws IOException   if the reader fails or the thread is interrupted.
+     * @throws JSONException if the input is not a valid JSON document.
+     */
+    private String read(JsonTokenizer tokenizer) throws IOException, JSONException {
+        JsonPathFilter.Cursor cursor = pathFilter != null ? new JsonPathFilter.Cursor(pathFilter) : null;
+        Shape member = null;
+        int memberAction = JsonPathFilter.KEEP;
+        // key of a member that is kept only if its value is an object or array, or null
+        String heldKey = null;
+        int skipLevel = -1;
+        int tokens = 0;
+        tokenizer.setMaxStringLength(MAX_STRING_LENGTH);
+
+        int token;
+        while ((token = tokenizer.next()) != JsonTokenizer.END_DOCUMENT) {
+            if (++tokens % INTERRUPT_CHECK_INTERVAL == 0 && Thread.currentThread().isInterrupted()) {
+                throw new InterruptedIOException("Formatting cancelled");
+            }
+
+            int level = tokenizer.getDepth();
+            boolean end = token == JsonTokenizer.END_OBJECT || token == JsonTokenizer.END_ARRAY;
+            if (skipLevel >= 0) {
+                if (level == skipLevel && end) {
+                    skipLevel = -1;
+                }
+                continue;
+            }
+
+            if (end) {
+                if (token == JsonTokenizer.END_ARRAY) {
+                    containers[level].addItemCount(tokenizer.getMemberCount());
+                }
+                continue;
+            }
+
+            if (token == JsonTokenizer.NAME) {
+                CharSequence key = tokenizer.getValue();
+                memberAction = cursor != null ? pathFilter.enter(cursor, level, key, -1) : JsonPathFilter.KEEP;
+                member = null;
+                if ((memberAction & JsonPathFilter.PARTIAL) != 0) {
+                    heldKey = key.toString();
+                } else if (memberAction != JsonPathFilter.DROP) {
+                    member = containers[level - 1].getKey(key, tokenizer.getMemberIndex());
+                }
+                continue;
+            }
+
+            boolean container = token == JsonTokenizer.BEGIN_OBJECT || token == JsonTokenizer.BEGIN_ARRAY;
+
+            Shape shape;
+            int action;
+            if (level == 0) {
+                shape = root;
+                action = JsonPathFilter.KEEP;
+            } else if (tokenizer.isArrayElement()) {
+                int index = tokenizer.getMemberIndex();
+                action = cursor != null ? JsonPathFilter.resolve(pathFilter.enter(cursor, level, null, index), container) : JsonPathFilter.KEEP;
+                shape = containers[level - 1].getItems();
+            } else {
+                action = JsonPathFilter.resolve(memberAction, container);
+                if (heldKey != null && action != JsonPathFilter.DROP) {
+                    member = containers[level - 1].getKey(heldKey, tokenizer.getMemberIndex());
+                }
+                heldKey = null;
+                shape = member;
+                member = null;
+            }
+
+            if (shape == null || action == JsonPathFilter.DROP) {
+                // left out, or past the key limit
+                if (container) {
+                    skipLevel = level;
+                }
+                continue;
+            }
+
+            if (action == JsonPathFilter.MASK) {
+                shape.addType(TYPE_MASKED);
+                if (container) {
+                    skipLevel = level;
+                }
+                continue;
+            }
+
+            addValue(shape, token, tokenizer.getValue(), tokenizer.getStringLength());
+
+            if (container) {
+                if (level >= MAX_DEPTH) {
+                    skipLevel = level;
+                } else {
+                    push(level, shape);
+                }
+            }
+        }
+
+        StringBuilder summary = new StringBuilder();
+        write(summary, root);
+
+        return summary.toString();
+    }
+
+    private void push(int level, Shape shape) {
+        if (level == containers.length) {
+            Shape[] newContainers = new Shape[containers.length * 2];
+            System.arraycopy(containers, 0, newContainers, 0, containers.length);
+            containers = newContainers;
+        }
+
+        containers[level] = shape;
+    }
+
+    private void addValue(Shape shape, int token, CharSequence value, int stringLength) {
+        switch (token) {
+            case JsonTokenizer.BEGIN_OBJECT:
+                shape.addType(TYPE_OBJECT);
+                break;
+
+            case JsonTokenizer.BEGIN_ARRAY:
+                shape.addType(TYPE_ARRAY);
+                break;
+
+            case JsonTokenizer.STRING:
+                shape.addType(TYPE_STRING);
+                shape.addStringLength(stringLength);
+                int slot = pickSample(shape);
+                if (slot >= 0) {
+                    shape.samples[slot] = quote(value, MAX_SAMPLE_LENGTH);
+                }
+                break;
+
+            case JsonTokenizer.NUMBER:
+                shape.addType(TYPE_NUMBER);
+                shape.addNumber(value);
+                slot = pickSample(shape);
+                if (slot >= 0) {
+                    shape.samples[slot] = value.toString();
+                }
+                break;
+
+            case JsonTokenizer.BOOLEAN:
+                shape.addType(TYPE_BOOLEAN);
+                slot = pickSample(shape);
+                if (slot >= 0) {
+                    shape.samples[slot] = value.toString();
+                }
+                break;
+
+            case JsonTokenizer.NULL:
+            default:
+                shape.addType(TYPE_NULL);
+        }
+    }
+
+    /**
+     * Keeps a sample of the values of a path: the first values fill the samples, and every
+     * later value replaces a random sample with a chance of samples / values seen. The text of
+     * a value is only created when it is kept.
+     *
+     * @return the sample to replace with the value, or -1 if the value is not kept.
+     */
+    private int pickSample(Shape shape) {
+        if (sampleCount == 0) {
+            return -1;
+        }
+
+        if (shape.samples == null) {
+            shape.samples = new String[sampleCount];
+        }
+
+        long seen = ++shape.sampled;
+        if (seen <= sampleCount) {
+            return (int) seen - 1;
+        }
+
+        long slot = (long) (random.nextDouble() * seen);
+        return slot < sampleCount ? (int) slot : -1;
+    }
+
+    private void write(StringBuilder out, Shape shape) {
+        out.append("{\"count\":").append(shape.count);
+
+        out.append(",\"types\":{");
+        boolean first = true;
+        for (int i = 0; i < TYPE_NAMES.length; i++) {
+            if (shape.types[i] > 0) {
+                if (!first) {
+                    out.append(',');
+                }
+                out.append('"').append(TYPE_NAMES[i]).append("\":").append(shape.types[i]);
+                first = false;
+            }
+        }
+        out.append('}');
+
+        if (shape.types[TYPE_NUMBER] > 0) {
+            out.append(",\"min\":").append(shape.minText);
+            out.append(",\"max\":").append(shape.maxText);
+        }
+
+        if (shape.types[TYPE_STRING] > 0) {
+            out.append(",\"minLength\":").append(shape.minLength);
+            out.append(",\"maxLength\":").append(shape.maxLength);
+        }
+
+        if (shape.types[TYPE_ARRAY] > 0 && shape.minItems >= 0) {
+            out.append(",\"minItems\":").append(shape.minItems);
+            out.append(",\"maxItems\":").append(shape.maxItems);
+        }
+
+        if (shape.items != null) {
+            out.append(",\"items\":");
+            write(out, shape.items);
+        }
+
+        if (shape.keys != null) {
+            out.append(",\"keys\":{");
+            first = true;
+            for (int i = 0; i < shape.keyOrder.size(); i++) {
+                if (i > 0) {
+                    out.append(',');
+                }
+                out.append(quote(shape.keyOrder.get(i), Integer.MAX_VALUE)).append(':');
+                write(out, shape.keyShapes.get(i));
+            }
+            out.append('}');
+        }
+
+        if (shape.otherKeys > 0) {
+            out.append(",\"otherKeys\":").append(shape.otherKeys);
+        }
+
+        if (shape.samples != null) {
+            out.append(",\"samples\":[");
+            int size = (int) Math.min(shape.sampled, sampleCount);
+            for (int i = 0; i < size; i++) {
+                if (i > 0) {
+                    out.append(',');
+                }
+                out.append(shape.samples[i]);
+            }
+            out.append(']');
+        }
+
+        out.append('}');
+    }
+
+    /**
+     * @return the value as a JSON string literal, cut to the given number of chars.
+     */
+    private static String quote(CharSequence value, int maxLength) {
+        boolean cut = value.length() > maxLength;
+        int length = cut ? maxLength : value.length();
+        if (cut && Character.isHighSurrogate(value.charAt(length - 1))) {
+            length--;
+        }
+
+        StringBuilder quoted = new StringBuilder(length + 8).append('"');
+        for (int i = 0; i < length; i++) {
+            char c = value.charAt(i);
+            if (c == '"' || c == '\\') {
+                quoted.append('\\').append(c);
+            } else if (c < 0x20) {
+                quoted.append(String.format(Locale.US, "\\u%04x", (int) c));
+            } else {
+                quoted.append(c);
+            }
+        }
+        if (cut) {
+            quoted.append('\u2026');
+        }
+
+        return quoted.append('"').toString();
+    }
+
+    /**
+     * Statistics of the values of a single path.
+     */
+    private static class Shape {
+        long count;
+        final long[] types = new long[TYPE_NAMES.length];
+
+        double min = Double.POSITIVE_INFINITY;
+        double max = Double.NEGATIVE_INFINITY;
+        /**
+         * The smallest and largest number as written in the input, so no digit is lost.
+         */
+        String minText;
+        String maxText;
+
+        int minLength = Integer.MAX_VALUE;
+        int maxLength;
+
+        int minItems = -1;
+        int maxItems;
+
+        Map<String, Shape> keys;
+        /**
+         * Keys in the order they were first seen, to find the key of a member by its index
+         * without creating a String, as long as the objects of a path list their keys in the
+         * same order.
+         */
+        List<String> keyOrder;
+        List<Shape> keyShapes;
+        long otherKeys;
+        Shape items;
+
+        String[] samples;
+        long sampled;
+
+        void addType(int type) {
+            count++;
+            types[type]++;
+        }
+
+        void addNumber(CharSequence text) {
+            double value;
+            try {
+                value = Double.parseDouble(text.toString());
+            } catch (NumberFormatException e) {
+                return;
+            }
+
+            if (minText == null || value < min) {
+                min = value;
+                minText = text.toString();
+            }
+            if (maxText == null || value > max) {
+                max = value;
+                maxText = text.toString();
+            }
+        }
+
+        void addStringLength(int length) {
+            minLength = Math.min(minLength, length);
+            maxLength = Math.max(maxLength, length);
+        }
+
+        void addItemCount(int itemCount) {
+            minItems = minItems < 0 ? itemCount : Math.min(minItems, itemCount);
+            maxItems = Math.max(maxItems, itemCount);
+        }
+
+        /**
+         * @param index index of the member in its object.
+         * @return shape of the member with the given key, or null if there are too many keys.
+         */
+        Shape getKey(CharSequence key, int index) {
+            if (keys == null) {
+                keys = new HashMap<String, Shape>();
+                keyOrder = new ArrayList<String>();
+                keyShapes = new ArrayList<Shape>();
+            }
+
+            if (index < keyOrder.size() && keyOrder.get(index).contentEquals(key)) {
+                return keyShapes.get(index);
+            }
+
+            String name = key.toString();
+            Shape shape = keys.get(name);
+            if (shape == null) {
+                if (keys.size() >= MAX_KEYS) {
+                    otherKeys++;
+                    return null;
+                }
+
+                shape = new Shape();
+                keys.put(name, shape);
+                keyOrder.add(name);
+                keyShapes.add(shape);
+            }
+
+            return shape;
+        }
+
+        Shape getItems() {
+            if (items == null) {
+                items = new Shape();
+            }
+
+            return items;
+        }
+    }
+}
@@ -0,0 +1,834 @@
+package com.github.rahulrvp.android_utils;
+
+import org.json.JSONException;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+
+/**
+ * A small pull tokenizer used by {@link JsonFormatter} to walk a JSON document without
+ * building a {@link org.json.JSONObject} or {@link org.json.JSONArray} tree. Memory usage
+ * is proportional to the nesting depth of the document and the length of the longest
+ * single literal, not to the size of the document.
+ */
+
+class JsonTokenizer {
+
+    static final int BEGIN_OBJECT = 1;
+    static final int END_OBJECT = 2;
+    static final int BEGIN_ARRAY = 3;
+    static final int END_ARRAY = 4;
+    static final int NAME = 5;
+    static final int STRING = 6;
+    static final int NUMBER = 7;
+    static final int BOOLEAN = 8;
+    static final int NULL = 9;
+    static final int END_DOCUMENT = 10;
+
+    private static final int BUFFER_SIZE = 8192;
+
+    private static final int EMPTY_DOCUMENT = 0;
+    private static final int NONEMPTY_DOCUMENT = 1;
+    private static final int EMPTY_OBJECT = 2;
+    private static final int DANGLING_NAME = 3;
+    private static final int NONEMPTY_OBJECT = 4;
+    private static final int EMPTY_ARRAY = 5;
+    private static final int NONEMPTY_ARRAY = 6;
+
+    private Reader reader;
+    private String text;
+    private int textPos;
+    private int textEnd;
+    private ByteBuffer bytes;
+    private InputStream stream;
+    private byte[] byteBuffer;
+    private final char[] buffer;
+    private int pos;
+    private int limit;
+
+    private int consumed;
+    private int line;
+    private int lineStart;
+
+    private int[] stack;
+    private int[] memberCounts;
+    private int stackSize;
+    private int memberIndex;
+    private int memberCount;
+
+    private final StringBuilder value;
+    private int tokenDepth;
+    private boolean arrayElement;
+
+    private final boolean containerRequired;
+    private boolean fragment;
+    private int rangeStart;
+    private boolean rawStrings;
+    private int maxStringLength;
+    private boolean stringTruncated;
+    private int stringLength;
+
+    JsonTokenizer(Reader reader) {
+        this(reader, false);
+    }
+
+    /**
+     * @param reader            input source.
+     * @param containerRequired if true, the document must be an object or an array. This is
+     *                          checked against the first significant character, so any other
+     *                          input is rejected without reading further.
+     */
+    JsonTokenizer(Reader reader, boolean containerRequired) {
+        this(containerRequired, BUFFER_SIZE);
+        this.reader = reader;
+    }
+
+    /**
+     * Tokenizes a String directly, without a {@link Reader} in between.
+     *
+     * @param text              input JSON.
+     * @param containerRequired see {@link #JsonTokenizer(Reader, boolean)}.
+     */
+    JsonTokenizer(String text, boolean containerRequired) {
+        this(text, 0, text.length(), containerRequired);
+    }
+
+    private JsonTokenizer(String text, int start, int end, boolean containerRequired) {
+        this(containerRequired, Math.max(16, Math.min(BUFFER_SIZE, end - start)));
+        this.text = text;
+        this.textPos = start;
+        this.textEnd = end;
+        this.consumed = start;
+    }
+
+    /**
+     * Tokenizes UTF-8 encoded bytes without decoding them. Every byte is read as a char of the
+     * same value, which is safe because all the JSON syntax is ASCII and the bytes of multi-byte
+     * UTF-8 sequences are never in the ASCII range. Strings are reported as they are written,
+     * escape sequences included, so that the bytes can be written back unchanged. Offsets and
+     * columns in errors count bytes. A leading byte order mark is skipped.
+     *
+     * @param bytes             input JSON, read from its position to its limit.
+     * @param containerRequired see {@link #JsonTokenizer(Reader, boolean)}.
+     */
+    JsonTokenizer(ByteBuffer bytes, boolean containerRequired) {
+        this(containerRequired, BUFFER_SIZE);
+        this.bytes = bytes;
+        this.byteBuffer = new byte[BUFFER_SIZE];
+        this.rawStrings = true;
+
+        if (bytes.remaining() >= 3
+                && bytes.get(bytes.position()) == (byte) 0xEF
+                && bytes.get(bytes.position() + 1) == (byte) 0xBB
+                && bytes.get(bytes.position() + 2) == (byte) 0xBF) {
+            bytes.position(bytes.position() + 3);
+        }
+    }
+
+    /**
+     * Same as {@link #JsonTokenizer(ByteBuffer, boolean)} for UTF-8 encoded bytes read from a
+     * stream, e.g. a {@link JsonInflater}. The bytes are read into a buffer that is reused for
+     * the whole input.
+     *
+     * @param stream            input JSON. It is not closed by the tokenizer.
+     * @param containerRequired see {@link #JsonTokenizer(Reader, boolean)}.
+     */
+    JsonTokenizer(InputStream stream, boolean containerRequired) {
+        this(containerRequired, BUFFER_SIZE);
+        this.stream = stream;
+        this.byteBuffer = new byte[BUFFER_SIZE];
+        this.rawStrings = true;
+    }
+
+    private JsonTokenizer(boolean containerRequired, int bufferSize) {
+        this.containerRequired = containerRequired;
+        this.buffer = new char[bufferSize];
+        this.stack = new int[32];
+        this.memberCounts = new int[32];
+        this.stack[stackSize++] = EMPTY_DOCUMENT;
+        this.value = new StringBuilder();
+        this.line = 1;
+    }
+
+    /**
+     * Makes the tokenizer report strings as they are written, escape sequences included, instead
+     * of decoding them. Must be called before the first token is read.
+     */
+    void setRawStrings(boolean rawStrings) {
+        this.rawStrings = rawStrings;
+    }
+
+    /**
+     * Limits the length of the strings kept by the tokenizer. Longer keys and strings are still
+     * read to the end, but only their beginning is reported by {@link #getValue()}, so a huge
+     * string doesn't have to be held in memory. Must be called before the first token is read.
+     *
+     * The length is counted in chars of the decoded string, also for raw strings and bytes:
+     * an escape sequence counts as the char it stands for, and a UTF-8 sequence as one char, or
+     * as two for a character that needs a surrogate pair. Escape and UTF-8 sequences are never
+     * split.
+     *
+     * @param maxLength maximum number of chars kept; 0 keeps whole strings.
+     */
+    void setMaxStringLength(int maxLength) {
+        this.maxStringLength = maxLength;
+    }
+
+    /**
+     * Creates a tokenizer for a single object or array in a range of the text, e.g. a container
+     * that was edited. Positions in errors are relative to the whole text; the lines before the
+     * range are only counted when an error is reported.
+     *
+     * @param text  input JSON.
+     * @param start offset of the opening bracket.
+     * @param end   offset after the closing bracket.
+     */
+    static JsonTokenizer forRange(String text, int start, int end) {
+        JsonTokenizer tokenizer = new JsonTokenizer(text, start, end, true);
+        tokenizer.rangeStart = start;
+        tokenizer.lineStart = start;
+
+        return tokenizer;
+    }
+
+    /**
+     * Creates a tokenizer for a run of members of a top level object or array, as if they were
+     * read right after the opening bracket or a separating comma. The members are reported at
+     * level 1 and the tokenizer ends at the end of the range instead of expecting the closing
+     * bracket. Positions in errors are relative to the whole text.
+     *
+     * @param text      input JSON.
+     * @param start     start of the members, inclusive.
+     * @param end       end of the members, exclusive.
+     * @param object    true if the members belong to an object, false for an array.
+     * @param line      line number at the start position.
+     * @param lineStart offset of the beginning of that line.
+     */
+    static JsonTokenizer forFragment(String text, int start, int end, boolean object, int line, int lineStart) {
+        JsonTokenizer tokenizer = new JsonTokenizer(text, start, end, false);
+        tokenizer.stack[0] = NONEMPTY_DOCUMENT;
+        tokenizer.push(object ? EMPTY_OBJECT : EMPTY_ARRAY);
+        tokenizer.fragment = true;
+        tokenizer.line = line;
+        tokenizer.lineStart = lineStart;
+
+        return tokenizer;
+    }
+
+    /**
+     * Creates a tokenizer that goes on reading a document from a position saved with
+     * {@link #getPosition()}, e.g. to read a part of the document again.
+     *
+     * @param reader   input source, positioned at {@link Position#offset}.
+     * @param position state of the tokenizer that read the document before.
+     */
+    static JsonTokenizer resume(Reader reader, Position position) {
+        JsonTokenizer tokenizer = new JsonTokenizer(reader);
+        tokenizer.consumed = position.offset;
+        tokenizer.line = position.line;
+        tokenizer.lineStart = position.lineStart;
+        tokenizer.stack = position.stack.clone();
+        tokenizer.memberCounts = position.memberCounts.clone();
+        tokenizer.stackSize = position.stackSize;
+
+        return tokenizer;
+    }
+
+    /**
+     * @return the state of the tokenizer between two tokens, see {@link #resume(Reader, Position)}.
+     */
+    Position getPosition() {
+        int[] savedStack = new int[stackSize];
+        int[] savedCounts = new int[stackSize];
+        System.arraycopy(stack, 0, savedStack, 0, stackSize);
+        System.arraycopy(memberCounts, 0, savedCounts, 0, stackSize);
+
+        return new Position(consumed + pos, line, lineStart, savedStack, savedCounts);
+    }
+
+    /**
+     * Reads the next token from the input.
+     *
+     * @return one of the token constants of this class.
+     * @throws IOException   if the underlying reader fails.
+     * @throws JSONException if the input is not a valid JSON document.
+     */
+    int next() throws IOException, JSONException {
+        int scope = stack[stackSize - 1];
+        int c;
+
+        switch (scope) {
+            case EMPTY_ARRAY:
+            case NONEMPTY_ARRAY:
+                c = nextNonWhitespace();
+                if (c == -1 && fragment && stackSize == 2) {
+                    return endFragment();
+                }
+                if (c == ']') {
+                    return endContainer(END_ARRAY);
+                }
+                if (scope == NONEMPTY_ARRAY) {
+                    if (c != ',') {
+                        throw unexpected(c, "Expected ',' or ']'");
+                    }
+                } else if (c != -1) {
+                    pos--;
+                }
+                stack[stackSize - 1] = NONEMPTY_ARRAY;
+                memberIndex = memberCounts[stackSize - 1]++;
+                return readValue();
+
+            case EMPTY_OBJECT:
+            case NONEMPTY_OBJECT:
+                c = nextNonWhitespace();
+                if (c == -1 && fragment && stackSize == 2) {
+                    return endFragment();
+                }
+                if (c == '}') {
+                    return endContainer(END_OBJECT);
+                }
+                if (scope == NONEMPTY_OBJECT) {
+                    if (c != ',') {
+                        throw unexpected(c, "Expected ',' or '}'");
+                    }
+                    c = nextNonWhitespace();
+                }
+                if (c != '"') {
+                    throw unexpected(c, "Expected a quoted key");
+                }
+                readString();
+                c = nextNonWhitespace();
+                if (c != ':') {
+                    throw unexpected(c, "Expected ':'");
+                }
+                stack[stackSize - 1] = DANGLING_NAME;
+                memberIndex = memberCounts[stackSize - 1]++;
+                tokenDepth = stackSize - 1;
+                arrayElement = false;
+                return NAME;
+
+            case DANGLING_NAME:
+                stack[stackSize - 1] = NONEMPTY_OBJECT;
+                return readValue();
+
+            case EMPTY_DOCUMENT:
+                stack[stackSize - 1] = NONEMPTY_DOCUMENT;
+                return readValue();
+
+            case NONEMPTY_DOCUMENT:
+            default:
+                if (fillAndSkipWhitespace()) {
+                    throw syntaxError("Unexpected content after the end of the document");
+                }
+                tokenDepth = 0;
+                arrayElement = false;
+                return END_DOCUMENT;
+        }
+    }
+
+    /**
+     * @return text of the last NAME, STRING, NUMBER, BOOLEAN or NULL token. The returned
+     * instance is reused by the tokenizer and is only valid until the next call to {@link #next()}.
+     */
+    CharSequence getValue() {
+        return value;
+    }
+
+    /**
+     * @return nesting level of the last token. Top level values are at level 0, members of a
+     * top level container are at level 1 and so on. Closing brackets share the level of their
+     * opening bracket.
+     */
+    int getDepth() {
+        return tokenDepth;
+    }
+
+    /**
+     * @return true if the last token is a value (or the opening bracket of a value) which sits
+     * directly inside an array.
+     */
+    boolean isArrayElement() {
+        return arrayElement;
+    }
+
+    /**
+     * @return 0 based index of the last NAME token among the members of its object, or of the
+     * last array element among the elements of its array.
+     */
+    int getMemberIndex() {
+        return memberIndex;
+    }
+
+    /**
+     * @return number of members of the object or array closed by the last END_OBJECT or END_ARRAY token.
+     */
+    int getMemberCount() {
+        return memberCount;
+    }
+
+    /**
+     * @return offset in the input right after the last token, e.g. after the bracket of a
+     * BEGIN_OBJECT or END_OBJECT token.
+     */
+    int getOffset() {
+        return consumed + pos;
+    }
+
+    /**
+     * @return true if the last NAME or STRING token was longer than the limit set with
+     * {@link #setMaxStringLength(int)}, so {@link #getValue()} only holds its beginning.
+     */
+    boolean isStringTruncated() {
+        return stringTruncated;
+    }
+
+    /**
+     * @return the length of the last NAME or STRING token, including the part past the limit
+     * set with {@link #setMaxStringLength(int)}, counted like the limit.
+     */
+    int getStringLength() {
+        return stringLength;
+    }
+
+    private int readValue() throws IOException, JSONException {
+        int c = nextNonWhitespace();
+        if (c == -1) {
+            throw syntaxError(stackSize == 1 ? "Empty input" : "Unexpected end of input");
+        }
+
+        tokenDepth = stackSize - 1;
+        arrayElement = stack[stackSize - 1] == NONEMPTY_ARRAY;
+
+        if (containerRequired && stackSize == 1 && c != '{' && c != '[') {
+            pos--;
+            throw syntaxError("Expected '{' or '['");
+        }
+
+        switch (c) {
+            case '{':
+                push(EMPTY_OBJECT);
+                return BEGIN_OBJECT;
+
+            case '[':
+                push(EMPTY_ARRAY);
+                return BEGIN_ARRAY;
+
+            case '"':
+                readString();
+                return STRING;
+
+            case 't':
+                readLiteral("true");
+                return BOOLEAN;
+
+            case 'f':
+                readLiteral("false");
+                return BOOLEAN;
+
+            case 'n':
+                readLiteral("null");
+                return NULL;
+
+            default:
+                if (c == '-' || (c >= '0' && c <= '9')) {
+                    pos--;
+                    readNumber();
+                    return NUMBER;
+                }
+                pos--;
+                throw syntaxError("Unexpected character '" + (char) c + "'");
+        }
+    }
+
+    private int endFragment() {
+        stackSize = 1;
+        tokenDepth = 0;
+        arrayElement = false;
+        return END_DOCUMENT;
+    }
+
+    private int endContainer(int token) {
+        memberCount = memberCounts[stackSize - 1];
+        stackSize--;
+        tokenDepth = stackSize - 1;
+        arrayElement = false;
+        return token;
+    }
+
+    private void push(int scope) {
+        if (stackSize == stack.length) {
+            int[] newStack = new int[stackSize * 2];
+            System.arraycopy(stack, 0, newStack, 0, stackSize);
+            stack = newStack;
+
+            int[] newCounts = new int[stackSize * 2];
+            System.arraycopy(memberCounts, 0, newCounts, 0, stackSize);
+            memberCounts = newCounts;
+        }
+        memberCounts[stackSize] = 0;
+        stack[stackSize++] = scope;
+    }
+
+    private void readString() throws IOException, JSONException {
+        value.setLength(0);
+        stringTruncated = false;
+        stringLength = 0;
+
+        while (true) {
+            int start = pos;
+            while (pos < limit) {
+                char c = buffer[pos];
+                if (c == '"') {
+                    appendRun(start, pos);
+                    pos++;
+                    return;
+                } else if (c == '\\') {
+                    appendRun(start, pos);
+                    pos++;
+                    int escapeStart = value.length();
+                    if (rawStrings) {
+                        readRawEscape();
+                    } else {
+                        value.append(readEscape());
+                    }
+                    if (!count(1)) {
+                        value.setLength(escapeStart);
+                    }
+                    start = pos;
+                } else if (c < 0x20) {
+                    // RFC 8259 only allows control characters as escapes
+                    throw syntaxError("Unescaped control character");
+                } else {
+                    pos++;
+                }
+            }
+
+            appendRun(start, pos);
+            if (!fill()) {
+                throw syntaxError("Unterminated string");
+            }
+        }
+    }
+
+    /**
+     * Appends a run of the string being read without escape sequences, up to the length limit.
+     */
+    private void appendRun(int start, int end) {
+        boolean utf8 = byteBuffer != null;
+        if (!utf8 && !stringTruncated && (maxStringLength == 0 || stringLength + end - start <= maxStringLength)) {
+            value.append(buffer, start, end - start);
+            stringLength += end - start;
+            return;
+        }
+
+        int kept = stringTruncated ? start : end;
+        for (int i = start; i < end; i++) {
+            if (!count(utf8 ? getUtf8Width(buffer[i]) : 1) && kept == end) {
+                kept = i;
+            }
+        }
+        value.append(buffer, start, kept - start);
+    }
+
+    /**
+     * @return number of chars a byte of a UTF-8 sequence adds to the decoded string: 0 for the
+     * bytes that continue a sequence, 2 for the start of a character that needs a surrogate
+     * pair, 1 for anything else.
+     */
+    private static int getUtf8Width(char c) {
+        return (c & 0xC0) == 0x80 ? 0 : c >= 0xF0 ? 2 : 1;
+    }
+
+    /**
+     * Counts chars of the decoded string being read against the length limit.
+     *
+     * @return true if they are kept, false if they are past the limit.
+     */
+    private boolean count(int chars) {
+        stringLength += chars;
+        if (maxStringLength > 0 && stringLength > maxStringLength) {
+            stringTruncated = true;
+        }
+
+        return !stringTruncated;
+    }
+
+    private char readEscape() throws IOException, JSONException {
+        int c = read();
+        switch (c) {
+            case 'u':
+                int result = 0;
+                for (int i = 0; i < 4; i++) {
+                    int digit = Character.digit(read(), 16);
+                    if (digit == -1) {
+                        throw syntaxError("Invalid unicode escape");
+                    }
+                    result = (result << 4) + digit;
+                }
+                return (char) result;
+            case 'b':
+                return '\b';
+            case 'f':
+                return '\f';
+            case 'n':
+                return '\n';
+            case 'r':
+                return '\r';
+            case 't':
+                return '\t';
+            case '"':
+            case '\\':
+            case '/':
+                return (char) c;
+            default:
+                throw syntaxError("Invalid escape sequence");
+        }
+    }
+
+    /**
+     * Validates an escape sequence and keeps it as it is written.
+     */
+    private void readRawEscape() throws IOException, JSONException {
+        int c = read();
+        value.append('\\');
+
+        switch (c) {
+            case 'u':
+                value.append('u');
+                for (int i = 0; i < 4; i++) {
+                    int digit = read();
+                    if (Character.digit(digit, 16) == -1) {
+                        throw syntaxError("Invalid unicode escape");
+                    }
+                    value.append((char) digit);
+                }
+                break;
+            case 'b':
+            case 'f':
+            case 'n':
+            case 'r':
+            case 't':
+            case '"':
+            case '\\':
+            case '/':
+                value.append((char) c);
+                break;
+            default:
+                throw syntaxError("Invalid escape sequence");
+        }
+    }
+
+    private void readLiteral(String literal) throws IOException, JSONException {
+        value.setLength(0);
+        value.append(literal.charAt(0));
+
+        for (int i = 1; i < literal.length(); i++) {
+            int c = read();
+            if (c != literal.charAt(i)) {
+                throw unexpected(c, "Expected '" + literal + "'");
+            }
+            value.append(literal.charAt(i));
+        }
+    }
+
+    private void readNumber() throws IOException, JSONException {
+        value.setLength(0);
+
+        int c = peek();
+        if (c == '-') {
+            value.append((char) read());
+            c = peek();
+        }
+
+        if (c == '0') {
+            value.append((char) read());
+        } else if (!readDigits()) {
+            throw syntaxError("Invalid number");
+        }
+
+        if (peek() == '.') {
+            value.append((char) read());
+            if (!readDigits()) {
+                throw syntaxError("Invalid number");
+            }
+        }
+
+        c = peek();
+        if (c == 'e' || c == 'E') {
+            value.append((char) read());
+            c = peek();
+            if (c == '+' || c == '-') {
+                value.append((char) read());
+            }
+            if (!readDigits()) {
+                throw syntaxError("Invalid number");
+            }
+        }
+    }
+
+    private boolean readDigits() throws IOException {
+        boolean found = false;
+        int c;
+        while ((c = peek()) >= '0' && c <= '9') {
+            value.append((char) read());
+            found = true;
+        }
+        return found;
+    }
+
+    private int nextNonWhitespace() throws IOException {
+        return fillAndSkipWhitespace() ? buffer[pos++] : -1;
+    }
+
+    /**
+     * Skips whitespace and leaves {@link #pos} at the next significant character.
+     *
+     * @return false if the end of the input was reached.
+     */
+    private boolean fillAndSkipWhitespace() throws IOException {
+        while (true) {
+            while (pos < limit) {
+                char c = buffer[pos];
+                if (c == '\n') {
+                    line++;
+                    lineStart = consumed + pos + 1;
+                } else if (c != ' ' && c != '\t' && c != '\r') {
+                    return true;
+                }
+                pos++;
+            }
+
+            if (!fill()) {
+                return false;
+            }
+        }
+    }
+
+    private int peek() throws IOException {
+        if (pos == limit && !fill()) {
+            return -1;
+        }
+        return buffer[pos];
+    }
+
+    private int read() throws IOException {
+        if (pos == limit && !fill()) {
+            return -1;
+        }
+        return buffer[pos++];
+    }
+
+    private boolean fill() throws IOException {
+        consumed += limit;
+        pos = 0;
+        limit = 0;
+
+        int count;
+        if (text != null) {
+            count = Math.min(buffer.length, textEnd - textPos);
+            if (count > 0) {
+                text.getChars(textPos, textPos + count, buffer, 0);
+                textPos += count;
+            }
+        } else if (bytes != null) {
+            count = Math.min(buffer.length, bytes.remaining());
+            bytes.get(byteBuffer, 0, count);
+            for (int i = 0; i < count; i++) {
+                buffer[i] = (char) (byteBuffer[i] & 0xFF);
+            }
+        } else if (stream != null) {
+            count = stream.read(byteBuffer, 0, buffer.length);
+            for (int i = 0; i < count; i++) {
+                buffer[i] = (char) (byteBuffer[i] & 0xFF);
+            }
+        } else {
+            count = reader.read(buffer, 0, buffer.length);
+        }
+        if (count > 0) {
+            limit = count;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Saved state of a tokenizer between two tokens: the offset in the input, the line counters
+     * and the scopes of the open containers.
+     */
+    static class Position {
+        final int offset;
+        private final int line;
+        private final int lineStart;
+        private final int[] stack;
+        private final int[] memberCounts;
+        private final int stackSize;
+
+        private Position(int offset, int line, int lineStart, int[] stack, int[] memberCounts) {
+            this.offset = offset;
+            this.line = line;
+            this.lineStart = lineStart;
+            this.stack = stack;
+            this.memberCounts = memberCounts;
+            this.stackSize = stack.length;
+        }
+    }
+
+    /**
+     * Steps back over the offending character, so the error points at it.
+     */
+    private SyntaxException unexpected(int c, String message) {
+        if (c != -1) {
+            pos--;
+        }
+        return syntaxError(message);
+    }
+
+    SyntaxException syntaxError(String message) {
+        int offset = consumed + pos;
+        if (rangeStart > 0) {
+            countLinesBeforeRange();
+        }
+        return new SyntaxException(message, line, offset - lineStart + 1, offset);
+    }
+
+    /**
+     * Adds the lines before the start of a {@link #forRange} tokenizer to its position.
+     */
+    private void countLinesBeforeRange() {
+        int lastNewline = -1;
+        for (int i = 0; i < rangeStart; i++) {
+            if (text.charAt(i) == '\n') {
+                line++;
+                lastNewline = i;
+            }
+        }
+
+        if (lineStart == rangeStart) {
+            // no line break read since the start of the range
+            lineStart = lastNewline + 1;
+        }
+        rangeStart = 0;
+    }
+
+    /**
+     * Thrown when the input is not a valid JSON document. Carries the position of the problem.
+     */
+    static class SyntaxException extends JSONException {
+        private static final long serialVersionUID = 1L;
+
+        final String reason;
+        final int line;
+        final int column;
+        final int offset;
+
+        SyntaxException(String reason, int line, int column, int offset) {
+            super(reason + " at line " + line + " column " + column);
+            this.reason = reason;
+            this.line = line;
+            this.column = column;
+            this.offset = offset;
+        }
+    }
+}
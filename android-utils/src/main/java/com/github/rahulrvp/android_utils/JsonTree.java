@@ -0,0 +1,221 @@
+package com.github.rahulrvp.android_utils;
+
+import org.json.JSONException;
+
+import java.io.IOException;
+
+/**
+ * Compact, read only tree of a JSON document, used by {@link JsonDiff}. Nodes are kept in
+ * parallel arrays indexed by node number instead of as objects, and every node carries a 64 bit
+ * hash of its whole subtree (a Merkle hash), so two subtrees can be compared in constant time.
+ * <p>
+ * Object hashes don't depend on the order of the members, array hashes do. Node types are the
+ * value token constants of {@link JsonTokenizer}. The tree is built in a single pass over the
+ * tokens without recursion.
+ */
+
+class JsonTree {
+
+    static final int ROOT = 0;
+    static final int NONE = -1;
+
+    private int[] types;
+    private long[] hashes;
+    private String[] keys;
+    private String[] values;
+    private int[] firstChildren;
+    private int[] nextSiblings;
+    private int[] childCounts;
+    private int size;
+
+    private JsonTree() {
+        types = new int[64];
+        hashes = new long[64];
+        keys = new String[64];
+        values = new String[64];
+        firstChildren = new int[64];
+        nextSiblings = new int[64];
+        childCounts = new int[64];
+    }
+
+    /**
+     * Reads the whole input of the tokenizer into a tree.
+     */
+    static JsonTree parse(JsonTokenizer tokenizer) throws IOException, JSONException {
+        JsonTree tree = new JsonTree();
+
+        int[] parents = new int[32];
+        int[] lastChildren = new int[32];
+        int depth = 0;
+        String key = null;
+
+        int token;
+        while ((token = tokenizer.next()) != JsonTokenizer.END_DOCUMENT) {
+            switch (token) {
+                case JsonTokenizer.NAME:
+                    key = tokenizer.getValue().toString();
+                    break;
+
+                case JsonTokenizer.END_OBJECT:
+                case JsonTokenizer.END_ARRAY:
+                    depth--;
+                    tree.hashContainer(parents[depth]);
+                    break;
+
+                default:
+                    boolean container = token == JsonTokenizer.BEGIN_OBJECT || token == JsonTokenizer.BEGIN_ARRAY;
+                    int node = tree.addNode(token, key, container ? null : tokenizer.getValue().toString());
+                    key = null;
+
+                    if (depth > 0) {
+                        int parent = parents[depth - 1];
+                        if (lastChildren[depth - 1] == NONE) {
+                            tree.firstChildren[parent] = node;
+                        } else {
+                            tree.nextSiblings[lastChildren[depth - 1]] = node;
+                        }
+                        lastChildren[depth - 1] = node;
+                        tree.childCounts[parent]++;
+                    }
+
+                    if (container) {
+                        if (depth == parents.length) {
+                            int[] newParents = new int[depth * 2];
+                            int[] newLastChildren = new int[depth * 2];
+                            System.arraycopy(parents, 0, newParents, 0, depth);
+                            System.arraycopy(lastChildren, 0, newLastChildren, 0, depth);
+                            parents = newParents;
+                            lastChildren = newLastChildren;
+                        }
+
+                        parents[depth] = node;
+                        lastChildren[depth] = NONE;
+                        depth++;
+                    }
+            }
+        }
+
+        return tree;
+    }
+
+    int getType(int node) {
+        return types[node];
+    }
+
+    /**
+     * @return hash of the whole subtree of the node, including its type but not its key.
+     */
+    long getHash(int node) {
+        return hashes[node];
+    }
+
+    /**
+     * @return key of an object member, or null for array elements and the root.
+     */
+    String getKey(int node) {
+        return keys[node];
+    }
+
+    /**
+     * @return text of a string, number, boolean or null value, or null for objects and arrays.
+     */
+    String getValue(int node) {
+        return values[node];
+    }
+
+    int getFirstChild(int node) {
+        return firstChildren[node];
+    }
+
+    int getNextSibling(int node) {
+        return nextSiblings[node];
+    }
+
+    int getChildCount(int node) {
+        return childCounts[node];
+    }
+
+    boolean isContainer(int node) {
+        return types[node] == JsonTokenizer.BEGIN_OBJECT || types[node] == JsonTokenizer.BEGIN_ARRAY;
+    }
+
+    private int addNode(int type, String key, String value) {
+        if (size == types.length) {
+            grow();
+        }
+
+        int node = size++;
+        types[node] = type;
+        keys[node] = key;
+        values[node] = value;
+        firstChildren[node] = NONE;
+        nextSiblings[node] = NONE;
+        childCounts[node] = 0;
+
+        if (value != null) {
+            hashes[node] = mix(JsonHash.hash(value) + type);
+        }
+
+        return node;
+    }
+
+    /**
+     * Combines the hashes of the children, which are complete once the container is closed.
+     */
+    private void hashContainer(int node) {
+        long hash = types[node];
+
+        if (types[node] == JsonTokenizer.BEGIN_OBJECT) {
+            for (int child = firstChildren[node]; child != NONE; child = nextSiblings[child]) {
+                hash += mix(JsonHash.hash(keys[child]) * JsonHash.FNV_PRIME ^ hashes[child]);
+            }
+        } else {
+            for (int child = firstChildren[node]; child != NONE; child = nextSiblings[child]) {
+                hash = hash * JsonHash.FNV_PRIME + hashes[child];
+            }
+        }
+
+        hashes[node] = mix(hash + childCounts[node]);
+    }
+
+    private void grow() {
+        int capacity = size * 2;
+
+        int[] newTypes = new int[capacity];
+        long[] newHashes = new long[capacity];
+        String[] newKeys = new String[capacity];
+        String[] newValues = new String[capacity];
+        int[] newFirstChildren = new int[capacity];
+        int[] newNextSiblings = new int[capacity];
+        int[] newChildCounts = new int[capacity];
+
+        System.arraycopy(types, 0, newTypes, 0, size);
+        System.arraycopy(hashes, 0, newHashes, 0, size);
+        System.arraycopy(keys, 0, newKeys, 0, size);
+        System.arraycopy(values, 0, newValues, 0, size);
+        System.arraycopy(firstChildren, 0, newFirstChildren, 0, size);
+        System.arraycopy(nextSiblings, 0, newNextSiblings, 0, size);
+        System.arraycopy(childCounts, 0, newChildCounts, 0, size);
+
+        types = newTypes;
+        hashes = newHashes;
+        keys = newKeys;
+        values = newValues;
+        firstChildren = newFirstChildren;
+        nextSiblings = newNextSiblings;
+        childCounts = newChildCounts;
+    }
+
+    /**
+     * Final mixing step of MurmurHash3, so that the sums of object member hashes stay well spread.
+     */
+    private static long mix(long hash) {
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+
+        return hash;
+    }
+}
@@ -0,0 +1,86 @@
+package com.github.rahulrvp.android_utils;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests of {@link JsonDiff}, through {@link JsonFormatter#formatDiff(String, String)}.
+ */
+public class JsonDiffTest {
+
+    @Test
+    public void formatDiff_showsOnlyTheChanges() throws Exception {
+        String oldJson = "{\"a\": 1, \"b\": [1, 2, 3], \"c\": {\"d\": true}, \"e\": \"x\"}";
+        String newJson = "{\"a\": 1, \"b\": [1, 9, 2, 3], \"c\": {\"d\": false}, \"f\": null}";
+
+        String expected = "  {\n"
+                + "  \t\u2026 1 unchanged item\n"
+                + "  \t\"b\" : [\n"
+                + "  \t\t\u2026 1 unchanged item\n"
+                + "+ \t\t9\n"
+                + "  \t\t\u2026 2 unchanged items\n"
+                + "  \t]\n"
+                + "  \t\"c\" : {\n"
+                + "- \t\t\"d\" : true\n"
+                + "+ \t\t\"d\" : false\n"
+                + "  \t}\n"
+                + "- \t\"e\" : \"x\"\n"
+                + "+ \t\"f\" : null\n"
+                + "  }";
+        assertEquals(expected, JsonFormatter.getStringFormatter().formatDiff(oldJson, newJson));
+    }
+
+    @Test
+    public void formatDiff_ignoresTheOrderOfObjectMembers() throws Exception {
+        JsonFormatter formatter = JsonFormatter.getStringFormatter();
+
+        assertEquals("  {\u2026 2 items}", formatter.formatDiff("{\"a\": 1, \"b\": 2}", "{\"b\": 2, \"a\": 1}"));
+        assertEquals("  [\n+ \t2\n  \t\u2026 1 unchanged item\n- \t2\n  ]", formatter.formatDiff("[1, 2]", "[2, 1]"));
+    }
+
+    @Test
+    public void formatDiff_replacesValuesOfAnotherType() throws Exception {
+        assertEquals("- [\n- \t1\n- \t2\n- ]\n+ {\n+ \t\"a\" : 1\n+ }",
+                JsonFormatter.getStringFormatter().formatDiff("[1, 2]", "{\"a\": 1}"));
+    }
+
+    @Test
+    public void formatDiff_invalidInput() throws Exception {
+        JsonFormatter formatter = JsonFormatter.getStringFormatter();
+
+        assertEquals("", formatter.formatDiff("[1, 2", "[1]"));
+        assertEquals("", formatter.formatDiff("[1]", null));
+        assertEquals("", formatter.formatDiff("1", "2"));
+    }
+
+    @Test
+    public void formatDiff_usesTheOutputFormat() throws Exception {
+        assertEquals("  [\n  \u2026 1 unchanged item\n  {\n- \"x\":2\n+ \"x\":3\n  }\n  ]",
+                JsonFormatter.getCompactFormatter().formatDiff("[1, {\"x\": 2}]", "[1, {\"x\": 3}]"));
+
+        String html = JsonFormatter.getHtmlFormatter().formatDiff("[1]", "[2]");
+        assertTrue(html.contains("<br><font color=\"#c62828\">-</font>&nbsp;&emsp;<font color=\"#af83a8\">1</font><br>"));
+        assertTrue(html.contains("<br><font color=\"#2e7d32\">+</font>&nbsp;&emsp;<font color=\"#af83a8\">2</font><br>"));
+    }
+
+    @Test
+    public void formatDiff_handlesDeepNesting() throws Exception {
+        StringBuilder oldJson = new StringBuilder();
+        StringBuilder newJson = new StringBuilder();
+        for (int i = 0; i < 1000; i++) {
+            oldJson.append('[');
+            newJson.append('[');
+        }
+        oldJson.append('1');
+        newJson.append('2');
+        for (int i = 0; i < 1000; i++) {
+            oldJson.append(']');
+            newJson.append(']');
+        }
+
+        String diff = JsonFormatter.getStringFormatter().formatDiff(oldJson.toString(), newJson.toString());
+        assertTrue(diff.contains("\n- "));
+        assertTrue(diff.contains("\n+ "));
+    }
+}
@@ -0,0 +1,137 @@
+package com.github.rahulrvp.android_utils;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests of {@link JsonFollower}.
+ */
+public class JsonFollowerTest {
+
+    private File file;
+    private List<JsonFormatter.Result> documents;
+    private JsonFollower follower;
+
+    @Before
+    public void setUp() throws Exception {
+        file = File.createTempFile("follow", ".json");
+        documents = new ArrayList<JsonFormatter.Result>();
+        follower = JsonFormatter.getCompactFormatter().follow(file, new JsonFollower.Listener() {
+            @Override
+            public void onDocument(JsonFormatter.Result result) {
+                documents.add(result);
+            }
+        });
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        file.delete();
+    }
+
+    @Test
+    public void poll_deliversCompleteDocuments() throws Exception {
+        append("{\"a\": 1}\n[1, 2]{\"b\"");
+        assertEquals(2, follower.poll());
+        assertEquals("{\"a\":1}", documents.get(0).getOutput());
+        assertEquals("[1,2]", documents.get(1).getOutput());
+        assertEquals(4, follower.getPendingLength());
+
+        assertEquals(0, follower.poll());
+
+        append(": \"}]\"}\n");
+        assertEquals(1, follower.poll());
+        assertEquals("{\"b\":\"}]\"}", documents.get(2).getOutput());
+        assertEquals(0, follower.getPendingLength());
+        assertEquals(file.length(), follower.getOffset());
+    }
+
+    @Test
+    public void poll_keepsCharsSplitBetweenWrites() throws Exception {
+        byte[] bytes = "[\"caf\u00e9 \ud83d\ude00\"]".getBytes("UTF-8");
+        for (byte b : bytes) {
+            append(new byte[]{b});
+            follower.poll();
+        }
+
+        assertEquals(1, documents.size());
+        assertEquals("[\"caf\u00e9 \ud83d\ude00\"]", documents.get(0).getOutput());
+    }
+
+    @Test
+    public void poll_deliversTextOutsideOfDocumentsAsInvalid() throws Exception {
+        append("error: disk full\n{\"a\": 1}oops[1]\n{\"b\": x}\n");
+
+        assertEquals(5, follower.poll());
+        assertFalse(documents.get(0).isValid());
+        assertTrue(documents.get(1).isValid());
+        assertFalse(documents.get(2).isValid());
+        assertEquals("[1]", documents.get(3).getOutput());
+        assertFalse(documents.get(4).isValid());
+        assertEquals(1, documents.get(4).getErrorLine());
+        assertEquals(7, documents.get(4).getErrorColumn());
+    }
+
+    @Test
+    public void poll_skipsDocumentsThatAreTooLong() throws Exception {
+        follower.setMaxPendingLength(10);
+
+        append("[1, 2, 3, 4, 5, 6");
+        assertEquals(1, follower.poll());
+        assertFalse(documents.get(0).isValid());
+        assertEquals(0, follower.getPendingLength());
+
+        append(", 7, {\"a\": [8]}]\n[9]\n");
+        assertEquals(1, follower.poll());
+        assertEquals("[9]", documents.get(1).getOutput());
+        assertEquals(0, follower.getPendingLength());
+    }
+
+    @Test
+    public void poll_startsAgainWhenTheFileShrinks() throws Exception {
+        append("[1, 2, 3]\n[4");
+        assertEquals(1, follower.poll());
+
+        FileOutputStream out = new FileOutputStream(file);
+        out.write("[5]".getBytes("UTF-8"));
+        out.close();
+
+        assertEquals(1, follower.poll());
+        assertEquals("[5]", documents.get(1).getOutput());
+        assertEquals(3, follower.getOffset());
+
+        follower.reset();
+        assertEquals(1, follower.poll());
+        assertEquals("[5]", documents.get(2).getOutput());
+    }
+
+    @Test
+    public void poll_failsWithoutTheFile() throws Exception {
+        assertTrue(file.delete());
+
+        assertEquals(-1, follower.poll());
+        assertTrue(documents.isEmpty());
+    }
+
+    private void append(String text) throws IOException {
+        append(text.getBytes("UTF-8"));
+    }
+
+    private void append(byte[] bytes) throws IOException {
+        FileOutputStream out = new FileOutputStream(file, true);
+        try {
+            out.write(bytes);
+        } finally {
+            out.close();
+        }
+    }
+}
@@ -0,0 +1,66 @@
+package com.github.rahulrvp.android_utils;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests of {@link JsonFormatCache}. The {@link android.util.LruCache} behind it is
+ * not functional in local tests, so every lookup misses here.
+ */
+public class JsonFormatCacheTest {
+
+    @Test
+    public void format_returnsTheFormattedOutput() throws Exception {
+        JsonFormatCache cache = new JsonFormatCache(1024 * 1024);
+        JsonFormatter formatter = JsonFormatter.getStringFormatter();
+
+        assertEquals(JsonFormatterTest.SAMPLE_STRING, cache.format(formatter, JsonFormatterTest.SAMPLE));
+        assertEquals(JsonFormatterTest.SAMPLE_STRING, cache.format(formatter, new String(JsonFormatterTest.SAMPLE)));
+        assertEquals("", cache.format(formatter, "[1, 2"));
+        assertEquals("", cache.format(formatter, null));
+        assertEquals("", cache.format(null, JsonFormatterTest.SAMPLE));
+    }
+
+    @Test
+    public void configKey_equalForEqualConfiguration() throws Exception {
+        JsonFormatter first = new JsonFormatter.Builder().setIndentWidth(2).setMaxDepth(3).addExcludePath("$.a").build();
+        JsonFormatter second = new JsonFormatter.Builder().setIndentWidth(2).setMaxDepth(3).addExcludePath("$.a").build();
+
+        assertEquals(first.getConfigKey(), second.getConfigKey());
+        // parallel formatting doesn't change the output
+        assertEquals(first.getConfigKey(),
+                new JsonFormatter.Builder(first).setParallelThreshold(100).build().getConfigKey());
+    }
+
+    @Test
+    public void configKey_differsForDifferentOutput() throws Exception {
+        String key = JsonFormatter.getStringFormatter().getConfigKey();
+
+        JsonFormatter.Builder[] builders = {
+                new JsonFormatter.Builder().setOutputFormat(JsonFormatter.HTML),
+                new JsonFormatter.Builder().setIndentWidth(4),
+                new JsonFormatter.Builder().setMaxDepth(2),
+                new JsonFormatter.Builder().setMaxElements(2),
+                new JsonFormatter.Builder().setMaxStringLength(2),
+                new JsonFormatter.Builder().setOutputBudget(2),
+                new JsonFormatter.Builder().setPreserveLiterals(true),
+                new JsonFormatter.Builder().addIncludePath("$.a"),
+                new JsonFormatter.Builder().addMaskPath("$.a"),
+        };
+        for (JsonFormatter.Builder builder : builders) {
+            assertNotEquals(key, builder.build().getConfigKey());
+        }
+
+        // the paths of a rule list can't be confused with the separators between them
+        assertNotEquals(new JsonFormatter.Builder().addExcludePath("a, b").build().getConfigKey(),
+                new JsonFormatter.Builder().addExcludePath("a").addExcludePath("b").build().getConfigKey());
+        assertNotEquals(new JsonFormatter.Builder().addExcludePath("a").build().getConfigKey(),
+                new JsonFormatter.Builder().addMaskPath("a").build().getConfigKey());
+
+        // colors only matter for colored output
+        assertEquals(key, new JsonFormatter.Builder().setKeyColor("#123456").build().getConfigKey());
+        assertNotEquals(JsonFormatter.getHtmlFormatter().getConfigKey(),
+                new JsonFormatter.Builder().setOutputFormat(JsonFormatter.HTML).setKeyColor("#123456").build().getConfigKey());
+    }
+}
@@ -0,0 +1,717 @@
+package com.github.rahulrvp.android_utils;
+
+import android.text.Spanned;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.Reader;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests of {@link JsonFormatter}.
+ */
+public class JsonFormatterTest {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private static final String LIMITED = "{\"a\": [1, 2, 3, 4, 5], \"b\": {\"c\": {\"d\": 1}, \"e\": []}, \"s\": \"abcdefghij\"}";
+
+    static final String SAMPLE = "{\"a\": [1, true, null, \"x\\n\"], \"b\": {}, \"c\": []}";
+    static final String SAMPLE_STRING = "{\n"
+            + "\t\"a\" : [\n"
+            + "\t\t1,\n"
+            + "\t\ttrue,\n"
+            + "\t\tnull,\n"
+            + "\t\t\"x\\n\"\n"
+            + "\t],\n"
+            + "\t\"b\" : {},\n"
+            + "\t\"c\" : []\n"
+            + "}";
+
+    @Test
+    public void format_string() throws Exception {
+        assertEquals(SAMPLE_STRING, JsonFormatter.getStringFormatter().format(SAMPLE));
+    }
+
+    @Test
+    public void format_reader_matchesString() throws Exception {
+        JsonFormatter formatter = JsonFormatter.getStringFormatter();
+
+        assertEquals(SAMPLE_STRING, formatter.format(new StringReader(SAMPLE)));
+        assertEquals(SAMPLE_STRING, formatter.format(new JsonTokenizerTest.TrickleReader(SAMPLE, 2)));
+        assertEquals(JsonFormatter.getHtmlFormatter().format(SAMPLE),
+                JsonFormatter.getHtmlFormatter().format(new StringReader(SAMPLE)));
+    }
+
+    @Test
+    public void format_reader_invalidInput() throws Exception {
+        assertEquals("", JsonFormatter.getStringFormatter().format(new StringReader("{\"a\": }")));
+        assertEquals("", JsonFormatter.getStringFormatter().format(new StringReader("")));
+        assertEquals("", JsonFormatter.getStringFormatter().format((String) null));
+    }
+
+    @Test
+    public void format_appendable_matchesString() throws Exception {
+        JsonFormatter formatter = JsonFormatter.getStringFormatter();
+        String large = largeArray(20000);
+
+        StringBuilder builder = new StringBuilder();
+        assertTrue(formatter.format(large, builder));
+        assertEquals(formatter.format(large), builder.toString());
+
+        StringWriter writer = new StringWriter();
+        assertTrue(formatter.format(new StringReader(large), writer));
+        assertEquals(formatter.format(large), writer.toString());
+    }
+
+    @Test
+    public void format_appendable_chunkListener() throws Exception {
+        final List<String> chunks = new ArrayList<String>();
+        JsonFormatter formatter = JsonFormatter.getHtmlFormatter();
+        String large = largeArray(20000);
+
+        assertTrue(formatter.format(large, null, new JsonFormatter.ChunkListener() {
+            @Override
+            public void onChunk(CharSequence chunk) {
+                chunks.add(chunk.toString());
+            }
+        }));
+
+        StringBuilder joined = new StringBuilder();
+        for (String chunk : chunks) {
+            // markup is never cut
+            assertTrue(chunk.lastIndexOf('<') < chunk.lastIndexOf('>'));
+            joined.append(chunk);
+        }
+        assertTrue(chunks.size() > 1);
+        assertEquals(formatter.format(large), joined.toString());
+    }
+
+    @Test
+    public void format_appendable_failures() throws Exception {
+        Writer failing = new Writer() {
+            @Override
+            public void write(char[] buffer, int offset, int length) throws IOException {
+                throw new IOException("disk full");
+            }
+
+            @Override
+            public void flush() {
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+
+        assertFalse(JsonFormatter.getStringFormatter().format(largeArray(20000), failing));
+
+        StringBuilder builder = new StringBuilder();
+        assertFalse(JsonFormatter.getStringFormatter().format("[1, 2", builder));
+        assertEquals("", builder.toString());
+    }
+
+    static String largeArray(int count) {
+        StringBuilder json = new StringBuilder("[");
+        for (int i = 0; i < count; i++) {
+            json.append(i == 0 ? "" : ",").append("{\"id\": ").append(i).append(", \"name\": \"item ").append(i).append("\"}");
+        }
+
+        return json.append(']').toString();
+    }
+
+    @Test
+    public void formatText_spannable() throws Exception {
+        JsonFormatter formatter = JsonFormatter.getSpannableFormatter();
+
+        // the text is the same as STRING output, the colors are spans over it
+        assertEquals(SAMPLE_STRING, formatter.format(SAMPLE));
+        assertTrue(formatter.formatText(SAMPLE) instanceof Spanned);
+        assertTrue(formatter.tryFormatText(SAMPLE).getText() instanceof Spanned);
+        assertTrue(formatter.formatText(new StringReader(SAMPLE)) instanceof Spanned);
+
+        // other formats, and spannable output written to an Appendable, are plain text
+        assertEquals(SAMPLE_STRING, JsonFormatter.getStringFormatter().formatText(SAMPLE));
+        StringBuilder builder = new StringBuilder();
+        assertTrue(formatter.format(SAMPLE, builder));
+        assertEquals(SAMPLE_STRING, builder.toString());
+    }
+
+    @Test
+    public void format_indentWidth() throws Exception {
+        JsonFormatter formatter = new JsonFormatter.Builder().setIndentWidth(2).build();
+
+        assertEquals("{\n  \"a\" : [\n    1\n  ]\n}", formatter.format("{\"a\":[1]}"));
+        assertEquals("<font color=\"#729fcf\">{</font><br>&nbsp;&nbsp;<font color=\"#2d4a8e\">\"a\"</font> : "
+                        + "<font color=\"#af83a8\">1</font><br><font color=\"#729fcf\">}</font>",
+                new JsonFormatter.Builder().setIndentWidth(2).setOutputFormat(JsonFormatter.HTML).build().format("{\"a\":1}"));
+    }
+
+    @Test
+    public void format_deepNestingBeyondTheIndentCache() throws Exception {
+        int depth = 40;
+        StringBuilder json = new StringBuilder();
+        for (int i = 0; i < depth; i++) {
+            json.append('[');
+        }
+        json.append('1');
+        for (int i = 0; i < depth; i++) {
+            json.append(']');
+        }
+
+        String[] lines = new JsonFormatter.Builder().setIndentWidth(1).build().format(json.toString()).split("\n");
+        assertEquals(depth * 2 + 1, lines.length);
+        for (int i = 0; i < lines.length; i++) {
+            int level = i <= depth ? i : depth * 2 - i;
+            String expected = i == depth ? "1" : i < depth ? "[" : "]";
+            assertEquals(repeat(' ', level) + expected, lines[i]);
+        }
+    }
+
+    @Test
+    public void format_colors() throws Exception {
+        JsonFormatter formatter = new JsonFormatter.Builder()
+                .setOutputFormat(JsonFormatter.HTML)
+                .setKeyColor("#123456")
+                .setValueColorNull("#abcdef")
+                .setCommaColor("#000001")
+                .build();
+
+        String html = formatter.format("{\"a\": null, \"b\": null}");
+        assertTrue(html.contains("<font color=\"#123456\">\"a\"</font>"));
+        assertTrue(html.contains("<i><font color=\"#abcdef\">null</font></i><font color=\"#000001\">,</font>"));
+    }
+
+    @Test
+    public void format_jsonObjectMatchesString() throws Exception {
+        JsonFormatter formatter = JsonFormatter.getHtmlFormatter();
+
+        assertEquals(formatter.format("{\"a\":[1,\"x\",{\"b\":false}]}"),
+                formatter.format(new JSONObject("{\"a\":[1,\"x\",{\"b\":false}]}")));
+        assertEquals(formatter.format("[1,null]"), formatter.format(new JSONArray("[1,null]")));
+    }
+
+    private static String repeat(char c, int count) {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < count; i++) {
+            text.append(c);
+        }
+
+        return text.toString();
+    }
+
+    @Test
+    public void tryFormat_valid() throws Exception {
+        JsonFormatter.Result result = JsonFormatter.getStringFormatter().tryFormat(SAMPLE);
+
+        assertTrue(result.isValid());
+        assertEquals(SAMPLE_STRING, result.getOutput());
+        assertNull(result.getErrorMessage());
+    }
+
+    @Test
+    public void tryFormat_errorPositions() throws Exception {
+        assertError("Expected '{' or '['", 1, 3, 2, "  42");
+        assertError("Empty input", 1, 1, 0, "");
+        assertError("Empty input", 3, 1, 2, "\n\n");
+        assertError("Expected ',' or '}'", 2, 3, 10, "{\"a\": 1\n  \"b\": 2}");
+        assertError("Expected ':'", 1, 6, 5, "{\"a\" 1}");
+        assertError("Expected a quoted key", 1, 2, 1, "{a: 1}");
+        assertError("Unexpected character 'x'", 3, 3, 8, "[\r\n1,\n  x]");
+        assertError("Unterminated string", 1, 8, 7, "[\"abc\\\"");
+        assertError("Invalid escape sequence", 1, 5, 4, "[\"\\q\"]");
+        assertError("Unescaped control character", 1, 8, 7, "{\"a\":\"x\ny\"}");
+        assertError("Invalid number", 1, 4, 3, "[1.]");
+        assertError("Expected 'true'", 1, 5, 4, "[tru]");
+        assertError("Unexpected end of input", 1, 7, 6, "{\"a\":[");
+        assertError("Unexpected content after the end of the document", 1, 4, 3, "{} {}");
+    }
+
+    private static void assertError(String message, int line, int column, int offset, String json) {
+        JsonFormatter.Result result = JsonFormatter.getStringFormatter().tryFormat(json);
+
+        assertFalse(json, result.isValid());
+        assertEquals(json, message, result.getErrorMessage());
+        assertEquals(json, line, result.getErrorLine());
+        assertEquals(json, column, result.getErrorColumn());
+        assertEquals(json, offset, result.getErrorOffset());
+        assertEquals("", result.getOutput());
+    }
+
+    @Test
+    public void sharedFormatters() throws Exception {
+        assertSame(JsonFormatter.getStringFormatter(), JsonFormatter.getStringFormatter());
+        assertSame(JsonFormatter.getHtmlFormatter(), JsonFormatter.getHtmlFormatter());
+        assertSame(JsonFormatter.getCompactFormatter(), JsonFormatter.getCompactFormatter());
+    }
+
+    @Test
+    public void builder_changesDontAffectBuiltFormatters() throws Exception {
+        JsonFormatter.Builder builder = new JsonFormatter.Builder().setIndentWidth(2);
+        JsonFormatter formatter = builder.build();
+        builder.setIndentWidth(4).setOutputFormat(JsonFormatter.HTML);
+
+        assertEquals("[\n  1\n]", formatter.format("[1]"));
+        assertEquals("[\n    1\n]", builder.setOutputFormat(JsonFormatter.STRING).build().format("[1]"));
+    }
+
+    @Test
+    public void format_concurrentUseOfOneInstance() throws Exception {
+        final JsonFormatter formatter = JsonFormatter.getHtmlFormatter();
+        final String[] inputs = {SAMPLE, largeArray(500), "[\"<&>\", 1.5e3, false]", "{\"a\": {\"b\": {\"c\": []}}}"};
+        final String[] expected = new String[inputs.length];
+        for (int i = 0; i < inputs.length; i++) {
+            expected[i] = formatter.format(inputs[i]);
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<Boolean>> results = new ArrayList<Future<Boolean>>();
+            for (int task = 0; task < 64; task++) {
+                final int first = task;
+                results.add(executor.submit(new Callable<Boolean>() {
+                    @Override
+                    public Boolean call() throws Exception {
+                        for (int i = 0; i < 50; i++) {
+                            int input = (first + i) % inputs.length;
+                            if (!expected[input].equals(formatter.format(inputs[input]))) {
+                                return false;
+                            }
+                        }
+                        return true;
+                    }
+                }));
+            }
+
+            for (Future<Boolean> result : results) {
+                assertTrue(result.get());
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void formatAsync_result() throws Exception {
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            JsonFormatter formatter = JsonFormatter.getStringFormatter();
+
+            JsonFormatter.AsyncRequest request = formatter.formatAsync(SAMPLE, null, null, executor);
+            JsonFormatter.Result result = request.get();
+            assertTrue(result.isValid());
+            assertEquals(SAMPLE_STRING, result.getOutput());
+            assertTrue(request.isDone());
+            assertFalse(request.cancel());
+
+            result = formatter.formatAsync(null, new StringReader("[1,"), null, executor).get();
+            assertFalse(result.isValid());
+            assertEquals(1, result.getErrorLine());
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void formatAsync_cancel() throws Exception {
+        final CountDownLatch started = new CountDownLatch(1);
+        Reader endless = new Reader() {
+            private boolean first = true;
+
+            @Override
+            public int read(char[] buffer, int offset, int length) {
+                started.countDown();
+                int count = 0;
+                if (first) {
+                    buffer[offset + count++] = '[';
+                    first = false;
+                }
+                while (count + 2 <= length) {
+                    buffer[offset + count++] = '1';
+                    buffer[offset + count++] = ',';
+                }
+                return count;
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            JsonFormatter.AsyncRequest request = JsonFormatter.getStringFormatter().formatAsync(null, endless, null, executor);
+            assertTrue(started.await(10, TimeUnit.SECONDS));
+
+            assertTrue(request.cancel());
+            assertTrue(request.isCancelled());
+            assertNull(request.get());
+        } finally {
+            executor.shutdown();
+        }
+
+        // the background work stops at the next token
+        assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void formatUtf8_matchesStringOutput() throws Exception {
+        String json = "{\"name\": \"caf\u00e9 \ud83d\ude00\", \"list\": [1.5, -2, false, null, \"a\\tb\"]}";
+        int[] formats = {JsonFormatter.STRING, JsonFormatter.HTML, JsonFormatter.HTML_CSS, JsonFormatter.COMPACT};
+
+        for (int format : formats) {
+            JsonFormatter formatter = new JsonFormatter.Builder().setOutputFormat(format).build();
+            byte[] expected = formatter.format(json).getBytes(UTF_8);
+
+            ByteBuffer output = ByteBuffer.allocate(expected.length * 2);
+            assertTrue(formatter.formatUtf8(ByteBuffer.wrap(json.getBytes(UTF_8)), output));
+            assertArrayEquals(expected, toBytes(output));
+
+            ByteBuffer direct = ByteBuffer.allocateDirect(json.length() * 4);
+            direct.put(json.getBytes(UTF_8)).flip();
+            ByteArrayOutputStream stream = new ByteArrayOutputStream();
+            assertTrue(formatter.formatUtf8(direct, Channels.newChannel(stream)));
+            assertArrayEquals(expected, stream.toByteArray());
+        }
+    }
+
+    @Test
+    public void formatUtf8_readsFromPositionToLimit() throws Exception {
+        byte[] bytes = ("xx" + SAMPLE + "yy").getBytes(UTF_8);
+        ByteBuffer input = ByteBuffer.wrap(bytes, 2, bytes.length - 4);
+
+        ByteBuffer output = ByteBuffer.allocate(256);
+        assertTrue(JsonFormatter.getStringFormatter().formatUtf8(input, output));
+        assertEquals(SAMPLE_STRING, new String(toBytes(output), UTF_8));
+    }
+
+    @Test
+    public void formatUtf8_failsWithoutSpaceOrOnInvalidInput() throws Exception {
+        JsonFormatter formatter = JsonFormatter.getStringFormatter();
+
+        ByteBuffer input = ByteBuffer.wrap(SAMPLE.getBytes(UTF_8));
+        assertFalse(formatter.formatUtf8(input, ByteBuffer.allocate(SAMPLE_STRING.length() - 1)));
+        assertFalse(formatter.formatUtf8(ByteBuffer.wrap("[1, 2".getBytes(UTF_8)), ByteBuffer.allocate(256)));
+        assertFalse(formatter.formatUtf8((ByteBuffer) null, ByteBuffer.allocate(256)));
+    }
+
+    @Test
+    public void formatUtf8_readsFilesMappedOrStreamed() throws Exception {
+        String json = largeArray(2000);
+        String expected = JsonFormatter.getStringFormatter().format(json);
+
+        File file = File.createTempFile("format", ".json");
+        try {
+            FileOutputStream out = new FileOutputStream(file);
+            try {
+                out.write(new byte[]{(byte) 0xEF, (byte) 0xBB, (byte) 0xBF});
+                out.write(json.getBytes(UTF_8));
+            } finally {
+                out.close();
+            }
+
+            JsonFormatter formatter = JsonFormatter.getStringFormatter();
+            for (long maxMappedSize : new long[]{file.length(), 0}) {
+                RandomAccessFile input = new RandomAccessFile(file, "r");
+                try {
+                    ByteArrayOutputStream output = new ByteArrayOutputStream();
+                    JsonOutput channel = new JsonOutput(Channels.newChannel(output));
+
+                    assertTrue(formatter.writeUtf8(channel, formatter.utf8Tokenizer(input.getChannel(), maxMappedSize)));
+                    assertEquals(expected, new String(output.toByteArray(), UTF_8));
+                } finally {
+                    input.close();
+                }
+            }
+
+            RandomAccessFile input = new RandomAccessFile(file, "r");
+            try {
+                ByteArrayOutputStream output = new ByteArrayOutputStream();
+                assertTrue(formatter.formatUtf8(input.getChannel(), Channels.newChannel(output)));
+                assertEquals(expected, new String(output.toByteArray(), UTF_8));
+            } finally {
+                input.close();
+            }
+        } finally {
+            assertTrue(file.delete());
+        }
+    }
+
+    private static byte[] toBytes(ByteBuffer buffer) {
+        buffer.flip();
+        byte[] bytes = new byte[buffer.remaining()];
+        buffer.get(bytes);
+        return bytes;
+    }
+
+    @Test
+    public void format_compactRemovesOnlyInsignificantWhitespace() throws Exception {
+        String json = " {\n\t\"a b\" : [ 1.0e+3 , -0 ,\r\n true ] ,\n \"c\" : \"x \\u0041\\n y\" , \"d\" : { } } \n";
+        JsonFormatter compact = JsonFormatter.getCompactFormatter();
+
+        String expected = "{\"a b\":[1.0e+3,-0,true],\"c\":\"x \\u0041\\n y\",\"d\":{}}";
+        assertEquals(expected, compact.format(json));
+        assertEquals(expected, compact.format(new JsonTokenizerTest.TrickleReader(json, 3)));
+
+        StringWriter writer = new StringWriter();
+        assertTrue(compact.format(new StringReader(json), writer));
+        assertEquals(expected, writer.toString());
+    }
+
+    @Test
+    public void format_compactRoundTrips() throws Exception {
+        String json = largeArray(500);
+        JsonFormatter formatter = JsonFormatter.getStringFormatter();
+        JsonFormatter compact = JsonFormatter.getCompactFormatter();
+
+        String minified = compact.format(json);
+        assertEquals(-1, minified.indexOf('\n'));
+        assertTrue(minified.length() < json.length());
+        assertEquals(formatter.format(json), formatter.format(minified));
+        assertEquals(minified, compact.format(formatter.format(json)));
+
+        assertEquals("", compact.format("[1, 2"));
+    }
+
+    @Test
+    public void format_compactJsonTree() throws Exception {
+        JsonFormatter compact = JsonFormatter.getCompactFormatter();
+
+        assertEquals("[1,\"x\",null,{\"a\":true}]", compact.format(new JSONArray("[1, \"x\", null, {\"a\": true}]")));
+        assertEquals("{\"a\":[]}", compact.format(new JSONObject("{\"a\": [ ]}")));
+    }
+
+    @Test
+    public void format_maxDepthCollapsesNestedContainers() throws Exception {
+        JsonFormatter formatter = new JsonFormatter.Builder().setMaxDepth(1).build();
+
+        assertEquals("{\n\t\"a\" : [\u2026 5 items],\n\t\"b\" : {\u2026 2 items},\n\t\"s\" : \"abcdefghij\"\n}",
+                formatter.format(LIMITED));
+
+        formatter = new JsonFormatter.Builder().setMaxDepth(2).build();
+        assertTrue(formatter.format(LIMITED).contains("\"c\" : {\u2026 1 item},\n\t\t\"e\" : []"));
+    }
+
+    @Test
+    public void format_maxElementsAddsMoreMarkers() throws Exception {
+        JsonFormatter formatter = new JsonFormatter.Builder().setMaxElements(2).build();
+
+        String formatted = formatter.format(LIMITED);
+        assertTrue(formatted.contains("\t\t2,\n\t\t\u2026 3 more items\n\t],"));
+        assertTrue(formatted.endsWith("\t},\n\t\u2026 1 more item\n}"));
+
+        formatter = new JsonFormatter.Builder().setMaxElements(2).setOutputFormat(JsonFormatter.COMPACT).build();
+        assertEquals("{\"a\":[1,2,\u2026 3 more items],\"b\":{\"c\":{\"d\":1},\"e\":[]},\u2026 1 more item}",
+                formatter.format(LIMITED));
+    }
+
+    @Test
+    public void format_maxStringLengthCutsStrings() throws Exception {
+        JsonFormatter formatter = new JsonFormatter.Builder().setMaxStringLength(4).build();
+
+        assertTrue(formatter.format(LIMITED).contains("\"s\" : \"abcd\u2026\""));
+        assertTrue(formatter.format("[\"abcd\"]").contains("\"abcd\""));
+    }
+
+    @Test
+    public void format_maxStringLengthCountsCharsForEveryInput() throws Exception {
+        String json = "[\"\u00e9\u00e9\u00e9\u00e9\u00e9\u00e9\u00e9\", \"ab\ud83d\ude00cd\", \"abcd\ud83d\ude00\", "
+                + "\"\\u00e9\\u00e9\\u00e9\\u00e9\\u00e9\\u00e9\", \"a\\ud83d\\ude00bcdef\"]";
+        JsonFormatter formatter = new JsonFormatter.Builder().setMaxStringLength(5).build();
+        JsonFormatter preserving = new JsonFormatter.Builder().setMaxStringLength(5).setPreserveLiterals(true).build();
+
+        String text = formatter.format(json);
+        assertTrue(text.contains("\"\u00e9\u00e9\u00e9\u00e9\u00e9\u2026\""));
+        assertTrue(text.contains("\"ab\ud83d\ude00c\u2026\""));
+        assertTrue(text.contains("\"\u00e9\u00e9\u00e9\u00e9\u00e9\u2026\""));
+        assertTrue(text.contains("\"a\ud83d\ude00bc\u2026\""));
+        // a surrogate pair doesn't fit as the fifth char
+        assertTrue(text.contains("\"abcd\u2026\""));
+
+        // escapes count as the char they stand for
+        text = preserving.format(json);
+        assertTrue(text.contains("\"\\u00e9\\u00e9\\u00e9\\u00e9\\u00e9\u2026\""));
+        assertTrue(text.contains("\"a\\ud83d\\ude00bc\u2026\""));
+        assertTrue(text.contains("\"abcd\u2026\""));
+
+        // bytes are read as written, like preserved literals
+        for (JsonFormatter bytes : new JsonFormatter[]{formatter, preserving}) {
+            ByteBuffer output = ByteBuffer.allocate(1024);
+            assertTrue(bytes.formatUtf8(ByteBuffer.wrap(json.getBytes(UTF_8)), output));
+            assertEquals(text, new String(toBytes(output), UTF_8));
+        }
+    }
+
+    @Test
+    public void format_limitsMatchForJsonTrees() throws Exception {
+        JsonFormatter formatter = new JsonFormatter.Builder().setMaxElements(2).setMaxDepth(2).setMaxStringLength(4).build();
+
+        assertEquals(formatter.format(LIMITED), formatter.format(new JSONObject(LIMITED)));
+    }
+
+    @Test
+    public void format_outputBudgetStopsEarly() throws Exception {
+        JsonFormatter formatter = new JsonFormatter.Builder().setOutputBudget(20).build();
+
+        String expected = "{\n\t\"a\" : [\n\t\t1,\n\t\t2,\n\t\t3\n\u2026 output truncated";
+        assertEquals(expected, formatter.format(LIMITED));
+        // the rest of the input is not read
+        assertEquals(expected, formatter.format(LIMITED + " garbage"));
+
+        assertTrue(formatter.format(new StringReader(largeArray(20000))).length() < 100);
+    }
+
+    @Test
+    public void format_limitsStillValidateSkippedContent() throws Exception {
+        assertEquals("", new JsonFormatter.Builder().setMaxElements(2).build().format("[1, 2, 3, x]"));
+        assertEquals("", new JsonFormatter.Builder().setMaxDepth(1).build().format("[[1, x]]"));
+    }
+
+    @Test
+    public void format_maxDepthHandlesVeryDeepInput() throws Exception {
+        StringBuilder json = new StringBuilder();
+        for (int i = 0; i < 100000; i++) {
+            json.append("[");
+        }
+        for (int i = 0; i < 100000; i++) {
+            json.append("]");
+        }
+
+        JsonFormatter formatter = new JsonFormatter.Builder().setMaxDepth(3).build();
+        assertEquals("[\n\t[\n\t\t[\n\t\t\t[\u2026 1 item]\n\t\t]\n\t]\n]", formatter.format(json.toString()));
+    }
+
+    @Test
+    public void format_preserveLiteralsCopiesValuesAsWritten() throws Exception {
+        String json = "[1.50, 1e400, 12345678901234567890123, -0.0, \"\\u00e9\\/\\n\"]";
+        JsonFormatter formatter = new JsonFormatter.Builder().setPreserveLiterals(true).build();
+
+        String expected = "[\n\t1.50,\n\t1e400,\n\t12345678901234567890123,\n\t-0.0,\n\t\"\\u00e9\\/\\n\"\n]";
+        assertEquals(expected, formatter.format(json));
+        assertEquals(expected, formatter.format(new JsonTokenizerTest.TrickleReader(json, 2)));
+
+        // numbers are never parsed, strings are decoded and escaped again by default
+        assertEquals("[\n\t1.50,\n\t1e400,\n\t12345678901234567890123,\n\t-0.0,\n\t\"\u00e9/\\n\"\n]",
+                JsonFormatter.getStringFormatter().format(json));
+    }
+
+    @Test
+    public void builder_copiesPreserveLiterals() throws Exception {
+        JsonFormatter formatter = new JsonFormatter.Builder().setPreserveLiterals(true).build();
+        JsonFormatter copy = new JsonFormatter.Builder(formatter).setIndentWidth(2).build();
+
+        assertEquals("[\n  \"\\u0041\"\n]", copy.format("[\"\\u0041\"]"));
+        assertEquals(formatter.getConfigKey(), new JsonFormatter.Builder(formatter).build().getConfigKey());
+    }
+
+    @Test
+    public void format_escapesKeysAndStrings() throws Exception {
+        String json = "{\"k\\\"<&>\": \"q\\\" b\\\\ \\/ \\b\\f\\n\\r\\t \\u0001 \\u001f \\u00e9 <a href='x'>&amp;</a>\"}";
+
+        assertEquals("{\n\t\"k\\\"<&>\" : \"q\\\" b\\\\ / \\b\\f\\n\\r\\t \\u0001 \\u001f \u00e9 <a href='x'>&amp;</a>\"\n}",
+                JsonFormatter.getStringFormatter().format(json));
+
+        String html = JsonFormatter.getHtmlFormatter().format(json);
+        assertTrue(html.contains(">\"k\\\"&lt;&amp;&gt;\"</font>"));
+        assertTrue(html.contains(">\"q\\\" b\\\\ / \\b\\f\\n\\r\\t \\u0001 \\u001f \u00e9 &lt;a href='x'&gt;&amp;amp;&lt;/a&gt;\"</font>"));
+    }
+
+    @Test
+    public void format_escapedOutputParsesToTheSameValues() throws Exception {
+        StringBuilder value = new StringBuilder();
+        for (char c = 0; c < 0x300; c++) {
+            value.append(c).append("safe run ");
+        }
+        JSONObject json = new JSONObject();
+        json.put("key \"\n", value.toString());
+
+        String formatted = JsonFormatter.getStringFormatter().format(json.toString());
+        assertEquals(value.toString(), new JSONObject(formatted).getString("key \"\n"));
+
+        formatted = JsonFormatter.getStringFormatter().format(json);
+        assertEquals(value.toString(), new JSONObject(formatted).getString("key \"\n"));
+    }
+
+    @Test
+    public void escapeForSearch_matchesTheOutput() throws Exception {
+        assertEquals("a\\\"b\\n", JsonFormatter.getStringFormatter().escapeForSearch("a\"b\n"));
+        assertEquals("&lt;a&amp;\\t", JsonFormatter.getHtmlFormatter().escapeForSearch("<a&\t"));
+    }
+
+    @Test
+    public void format_htmlCssMergesAdjacentTokens() throws Exception {
+        JsonFormatter formatter = new JsonFormatter.Builder().setOutputFormat(JsonFormatter.HTML_CSS).build();
+
+        assertEquals("<span class=ja>[<br>&emsp;</span><span class=jn>1</span><span class=jc>,<br>&emsp;</span>"
+                        + "<span class=jz>null<br></span><span class=ja>]</span>",
+                formatter.format("[1, null]"));
+        assertEquals("<span class=jo>{<br>&emsp;</span><span class=jk>\"a\" : </span><span class=jo>{}<br>}</span>",
+                formatter.format("{\"a\": {}}"));
+    }
+
+    @Test
+    public void format_htmlCssHasTheTextOfHtml() throws Exception {
+        String json = largeArray(300);
+        String html = JsonFormatter.getHtmlFormatter().format(json);
+        JsonFormatter formatter = new JsonFormatter.Builder().setOutputFormat(JsonFormatter.HTML_CSS).build();
+        String css = formatter.format(json);
+
+        assertEquals(stripTags(html), stripTags(css));
+        assertTrue(css.length() < html.length());
+        assertEquals(count(css, "<span"), count(css, "</span>"));
+
+        StringWriter writer = new StringWriter();
+        assertTrue(formatter.format(new StringReader(json), writer));
+        assertEquals(css, writer.toString());
+
+        String limited = new JsonFormatter.Builder(formatter).setMaxElements(3).setMaxDepth(1).build().format(json);
+        assertEquals(count(limited, "<span"), count(limited, "</span>"));
+    }
+
+    @Test
+    public void getStyleSheet_hasARuleForEveryClass() throws Exception {
+        JsonFormatter formatter = new JsonFormatter.Builder().setOutputFormat(JsonFormatter.HTML_CSS).setKeyColor("#123456").build();
+        String css = formatter.getStyleSheet();
+
+        assertTrue(css.contains(".jk{color:#123456}"));
+        assertTrue(css.contains(".jz{color:#c0c3ca;font-style:italic}"));
+        assertTrue(css.contains(".jh{background-color:#fff59d}"));
+        for (String name : new String[]{"jo", "ja", "jc", "jk", "js", "jn", "jb", "jz", "jp", "jm", "jh"}) {
+            assertEquals(name, 1, count(css, "." + name + "{"));
+        }
+    }
+
+    private static String stripTags(String html) {
+        return html.replaceAll("<[^>]*>", "");
+    }
+
+    private static int count(String text, String part) {
+        int count = 0;
+        for (int i = text.indexOf(part); i != -1; i = text.indexOf(part, i + 1)) {
+            count++;
+        }
+        return count;
+    }
+}
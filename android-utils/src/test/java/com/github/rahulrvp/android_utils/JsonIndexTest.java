@@ -0,0 +1,359 @@
+package com.github.rahulrvp.android_utils;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests of {@link JsonIndex}.
+ */
+public class JsonIndexTest {
+
+    private static final String JSON = "{\"a\": [1, {\"b\": null}], \"c\": {}, \"d\": [[], [2, 3]]}";
+
+    @Test
+    public void formatIndexed_recordsEveryContainer() throws Exception {
+        JsonFormatter formatter = JsonFormatter.getStringFormatter();
+        JsonIndex index = formatter.formatIndexed(JSON);
+
+        assertEquals(formatter.format(JSON), index.getText().toString());
+        assertEquals(7, index.getNodeCount());
+
+        int[] depths = {0, 1, 2, 1, 1, 2, 2};
+        int[] parents = {JsonIndex.NO_NODE, 0, 1, 0, 0, 4, 4};
+        int[] members = {3, 2, 1, 0, 2, 0, 2};
+        for (int node = 0; node < index.getNodeCount(); node++) {
+            assertEquals(depths[node], index.getDepth(node));
+            assertEquals(parents[node], index.getParent(node));
+            assertEquals(members[node], index.getMemberCount(node));
+        }
+        assertConsistent(index, JSON);
+    }
+
+    @Test
+    public void folding_hidesTheContentOfANode() throws Exception {
+        JsonIndex index = JsonFormatter.getStringFormatter().formatIndexed(JSON);
+        String text = index.getText().toString();
+
+        int node = 1;
+        String folded = text.substring(0, index.getContentStart(node)) + "\u2026" + text.substring(index.getContentEnd(node));
+        assertTrue(folded.startsWith("{\n\t\"a\" : [\u2026],\n\t\"c\" : {},"));
+
+        folded = text.substring(0, index.getContentStart(0)) + "\u2026" + text.substring(index.getContentEnd(0));
+        assertEquals("{\u2026}", folded);
+
+        node = 3;
+        assertEquals(index.getContentStart(node), index.getContentEnd(node));
+    }
+
+    @Test
+    public void findNode_findsTheInnermostNode() throws Exception {
+        JsonIndex index = JsonFormatter.getStringFormatter().formatIndexed(JSON);
+        String text = index.getText().toString();
+
+        assertEquals(0, index.findNode(0));
+        assertEquals(2, index.findNode(text.indexOf("\"b\"")));
+        assertEquals(1, index.findNode(text.indexOf("1,")));
+        assertEquals(0, index.findNode(text.indexOf("\"c\"")));
+        assertEquals(JsonIndex.NO_NODE, index.findNode(text.length()));
+    }
+
+    @Test
+    public void formatIndexed_countsMembersLeftOutByLimits() throws Exception {
+        JsonFormatter formatter = new JsonFormatter.Builder().setMaxElements(1).build();
+        JsonIndex index = formatter.formatIndexed("[1, 2, 3, [4, 5]]");
+
+        assertEquals(formatter.format("[1, 2, 3, [4, 5]]"), index.getText().toString());
+        assertEquals(1, index.getNodeCount());
+        assertEquals(4, index.getMemberCount(0));
+    }
+
+    @Test
+    public void formatIndexed_invalidInput() throws Exception {
+        JsonIndex index = JsonFormatter.getStringFormatter().formatIndexed("[1, [2]");
+
+        assertEquals(0, index.getNodeCount());
+        assertEquals("", index.getText().toString());
+        assertEquals(JsonIndex.NO_NODE, index.findNode(0));
+    }
+
+    /**
+     * Checks the offsets of every node against the text and the input.
+     */
+    static void assertConsistent(JsonIndex index, String input) {
+        String text = index.getText().toString();
+
+        for (int node = 0; node < index.getNodeCount(); node++) {
+            char open = text.charAt(index.getStart(node));
+            char close = text.charAt(index.getEnd(node) - 1);
+            assertTrue((open == '{' && close == '}') || (open == '[' && close == ']'));
+            assertEquals(open, input.charAt(index.getInputStart(node)));
+            assertEquals(close, input.charAt(index.getInputEnd(node) - 1));
+
+            assertEquals(index.getStart(node) + 1, index.getContentStart(node));
+            assertTrue(index.getContentStart(node) <= index.getContentEnd(node));
+            assertEquals(index.getEnd(node) - 1, index.getContentEnd(node));
+
+            int parent = index.getParent(node);
+            if (parent == JsonIndex.NO_NODE) {
+                assertEquals(0, index.getDepth(node));
+            } else {
+                assertTrue(parent < node);
+                assertEquals(index.getDepth(parent) + 1, index.getDepth(node));
+                assertTrue(index.getContentStart(parent) <= index.getStart(node));
+                assertTrue(index.getEnd(node) <= index.getContentEnd(parent));
+            }
+            if (node > 0) {
+                assertTrue(index.getStart(node - 1) < index.getStart(node));
+            }
+        }
+    }
+
+    /**
+     * Number values and starts of string values, for the random edits.
+     */
+    private static final Pattern NUMBER = Pattern.compile("(?<=[\\[:,] |\\[)\\d");
+    private static final Pattern STRING_VALUE = Pattern.compile("(?<=: \")");
+
+    @Test
+    public void reformat_matchesAFullFormatAfterEdits() throws Exception {
+        JsonFormatter formatter = JsonFormatter.getStringFormatter();
+        String json = "{\"list\": " + JsonFormatterTest.largeArray(50) + ", \"nested\": {\"a\": [1, [2, {\"b\": 3}]], \"c\": {}}}";
+        JsonIndex index = formatter.formatIndexed(json);
+        Random random = new Random(42);
+        int inPlace = 0;
+
+        for (int edit = 0; edit < 500; edit++) {
+            int start;
+            int removed;
+            String inserted;
+
+            switch (random.nextInt(4)) {
+                case 0:
+                    // change a number
+                    start = randomMatch(json, NUMBER, random);
+                    removed = 0;
+                    while (Character.isDigit(json.charAt(start + removed))) {
+                        removed++;
+                    }
+                    inserted = String.valueOf(random.nextInt(1000));
+                    break;
+                case 1:
+                    // add a member or element after a number
+                    start = randomMatch(json, NUMBER, random);
+                    boolean member = json.charAt(start - 2) == ':';
+                    while (Character.isDigit(json.charAt(start))) {
+                        start++;
+                    }
+                    removed = 0;
+                    inserted = (member ? ", \"x\": [" : ", {\"x\": [") + random.nextInt(10) + (member ? "]" : "]}");
+                    break;
+                case 2:
+                    // add text at the start of a string value
+                    start = randomMatch(json, STRING_VALUE, random);
+                    removed = 0;
+                    inserted = random.nextBoolean() ? "it\\\"em " : "entry ";
+                    break;
+                default:
+                    // break the input, which must leave the index unchanged
+                    start = random.nextInt(json.length());
+                    removed = 0;
+                    inserted = "@";
+                    break;
+            }
+
+            String edited = json.substring(0, start) + inserted + json.substring(start + removed);
+            String before = index.getText().toString();
+            JsonIndex updated = formatter.reformat(index, edited, start, removed, inserted.length());
+
+            if (updated == null) {
+                assertEquals("@", inserted);
+                assertEquals(before, index.getText().toString());
+                continue;
+            }
+
+            if (updated == index) {
+                inPlace++;
+            }
+            json = edited;
+            index = updated;
+            assertSameIndex(formatter.formatIndexed(json), index);
+            assertConsistent(index, json);
+        }
+
+        // most edits are inside a nested container, which is formatted again on its own
+        assertTrue(inPlace > 250);
+    }
+
+    @Test
+    public void reformat_searchesMatchAFullFormat() throws Exception {
+        JsonFormatter formatter = JsonFormatter.getStringFormatter();
+        String json = "{\"a\": {\"name\": \"x\", \"list\": [1, 2]}, \"b\": [{\"name\": \"y\"}], \"name\": \"z\"}";
+        JsonIndex index = formatter.formatIndexed(json);
+        index.findKey("name");
+
+        int start = json.indexOf("\"x\"");
+        String edited = json.substring(0, start) + "\"name x\", \"name\": 5" + json.substring(start + 3);
+        index = formatter.reformat(index, edited, start, 3, "\"name x\", \"name\": 5".length());
+        JsonIndex expected = formatter.formatIndexed(edited);
+
+        assertSameIndex(expected, index);
+        assertArrayEquals(expected.findKey("name"), index.findKey("name"));
+        assertArrayEquals(expected.find("name", true), index.find("name", true));
+        assertArrayEquals(expected.findPath("*.name"), index.findPath("*.name"));
+        assertArrayEquals(expected.findPath("*.list[1]"), index.findPath("*.list[1]"));
+    }
+
+    /**
+     * @return offset of a random match of the pattern.
+     */
+    private static int randomMatch(String json, Pattern pattern, Random random) {
+        List<Integer> matches = new ArrayList<Integer>();
+        Matcher matcher = pattern.matcher(json);
+        while (matcher.find()) {
+            matches.add(matcher.start());
+        }
+
+        return matches.get(random.nextInt(matches.size()));
+    }
+
+    private static void assertSameIndex(JsonIndex expected, JsonIndex actual) {
+        assertEquals(expected.getText().toString(), actual.getText().toString());
+        assertEquals(expected.getNodeCount(), actual.getNodeCount());
+
+        for (int node = 0; node < expected.getNodeCount(); node++) {
+            assertEquals(expected.getStart(node), actual.getStart(node));
+            assertEquals(expected.getEnd(node), actual.getEnd(node));
+            assertEquals(expected.getContentStart(node), actual.getContentStart(node));
+            assertEquals(expected.getContentEnd(node), actual.getContentEnd(node));
+            assertEquals(expected.getDepth(node), actual.getDepth(node));
+            assertEquals(expected.getMemberCount(node), actual.getMemberCount(node));
+            assertEquals(expected.getParent(node), actual.getParent(node));
+            assertEquals(expected.getInputStart(node), actual.getInputStart(node));
+            assertEquals(expected.getInputEnd(node), actual.getInputEnd(node));
+        }
+
+        assertArrayEquals(expected.find("item", false), actual.find("item", false));
+        assertArrayEquals(expected.findKey("x"), actual.findKey("x"));
+        assertArrayEquals(expected.findPath("list[*].id"), actual.findPath("list[*].id"));
+    }
+
+    private static final String SEARCHED = "{\"name\": \"Tom & Amp; <amp>\", \"list\": [{\"name\": \"lt\"}, 12, true, null], \"amp\": {\"name\": 1}}";
+
+    @Test
+    public void find_matchesKeysAndValues() throws Exception {
+        JsonIndex index = JsonFormatter.getStringFormatter().formatIndexed(SEARCHED);
+
+        assertEquals("[Amp] [amp] [amp]", matches(index, index.find("amp", true)));
+        assertEquals("[amp] [amp]", matches(index, index.find("amp", false)));
+        assertEquals("[1] [1]", matches(index, index.find("1", false)));
+        assertEquals("[null]", matches(index, index.find("null", false)));
+        assertEquals(0, index.find("list\" :", false).length);
+        assertEquals(0, index.find("", false).length);
+        assertEquals(0, index.find(null, false).length);
+    }
+
+    @Test
+    public void find_skipsEntitiesAndMarkupOfHtml() throws Exception {
+        JsonFormatter[] formatters = {
+                JsonFormatter.getHtmlFormatter(),
+                new JsonFormatter.Builder().setOutputFormat(JsonFormatter.HTML_CSS).build(),
+        };
+        for (JsonFormatter formatter : formatters) {
+            JsonIndex index = formatter.formatIndexed(SEARCHED);
+
+            assertEquals("[Amp] [amp] [amp]", matches(index, index.find("amp", true)));
+            assertEquals("[lt]", matches(index, index.find("lt", false)));
+            assertEquals("[&amp;]", matches(index, index.find("&", false)));
+            assertEquals("[&lt;amp&gt;]", matches(index, index.find("<AMP>", true)));
+            assertEquals("[;]", matches(index, index.find(";", false)));
+            assertEquals(0, index.find("font", false).length);
+            assertEquals(0, index.find("span", false).length);
+        }
+    }
+
+    @Test
+    public void findKey_matchesWholeKeys() throws Exception {
+        JsonIndex index = JsonFormatter.getStringFormatter().formatIndexed(SEARCHED);
+
+        assertEquals("[\"name\"] [\"name\"] [\"name\"]", matches(index, index.findKey("name")));
+        assertEquals("[\"amp\"]", matches(index, index.findKey("amp")));
+        assertEquals(0, index.findKey("nam").length);
+        assertEquals(0, index.findKey(null).length);
+
+        index = JsonFormatter.getHtmlFormatter().formatIndexed("{\"a<b\": 1, \"a\": 2}");
+        assertEquals("[\"a&lt;b\"]", matches(index, index.findKey("a<b")));
+    }
+
+    @Test
+    public void findPath_matchesValues() throws Exception {
+        JsonIndex index = JsonFormatter.getStringFormatter().formatIndexed(SEARCHED);
+
+        assertEquals("[\"lt\"]", matches(index, index.findPath("list[*].name")));
+        assertEquals("[12]", matches(index, index.findPath("$.list[1]")));
+        assertEquals("[1]", matches(index, index.findPath("*.name")));
+        assertEquals("[{\n\t\t\"name\" : 1\n\t}]", matches(index, index.findPath("amp")));
+        assertEquals(0, index.findPath("missing").length);
+
+        try {
+            index.findPath("list[");
+            fail();
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void highlight_keepsHtmlNested() throws Exception {
+        JsonFormatter[] formatters = {
+                JsonFormatter.getHtmlFormatter(),
+                new JsonFormatter.Builder().setOutputFormat(JsonFormatter.HTML_CSS).build(),
+        };
+        for (JsonFormatter formatter : formatters) {
+            JsonIndex index = formatter.formatIndexed(SEARCHED);
+            String text = index.getText().toString();
+
+            String highlighted = index.highlight(index.findPath("amp")).toString();
+            assertEquals(text.replaceAll("<[^>]*>", ""), highlighted.replaceAll("<[^>]*>", ""));
+            assertTrue(isNested(highlighted));
+
+            highlighted = index.highlight(index.find("amp", true)).toString();
+            assertTrue(highlighted.contains("&amp; <span"));
+            assertTrue(isNested(highlighted));
+        }
+    }
+
+    private static String matches(JsonIndex index, int[] ranges) {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < ranges.length; i += 2) {
+            text.append(i > 0 ? " [" : "[").append(index.getText(), ranges[i], ranges[i + 1]).append(']');
+        }
+        return text.toString();
+    }
+
+    /**
+     * @return true if every closing tag of the markup closes the element opened last.
+     */
+    private static boolean isNested(String html) {
+        List<String> open = new ArrayList<String>();
+        Matcher matcher = Pattern.compile("<(/?)(\\w+)[^>]*>").matcher(html);
+        while (matcher.find()) {
+            String name = matcher.group(2);
+            if (name.equals("br")) {
+                continue;
+            }
+            if (matcher.group(1).isEmpty()) {
+                open.add(name);
+            } else if (open.isEmpty() || !open.remove(open.size() - 1).equals(name)) {
+                return false;
+            }
+        }
+        return open.isEmpty();
+    }
+}
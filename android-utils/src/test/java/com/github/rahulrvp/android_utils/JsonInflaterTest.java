@@ -0,0 +1,269 @@
+package com.github.rahulrvp.android_utils;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.StringWriter;
+import java.nio.channels.Channels;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests of {@link JsonInflater}, also through
+ * {@link JsonFormatter#formatCompressed(InputStream)}.
+ */
+public class JsonInflaterTest {
+
+    private static final byte[] BOM = {(byte) 0xEF, (byte) 0xBB, (byte) 0xBF};
+
+    @Test
+    public void formatCompressed_inflatesGzipAndZlib() throws Exception {
+        String json = JsonFormatterTest.largeArray(2000);
+        JsonFormatter formatter = JsonFormatter.getStringFormatter();
+        String expected = formatter.format(json);
+
+        for (byte[] input : new byte[][]{gzip(utf8(json)), zlib(utf8(json))}) {
+            assertEquals(expected, formatter.formatCompressed(new ByteArrayInputStream(input)));
+            assertEquals(expected, formatter.formatCompressed(new TrickleInputStream(input, 1)));
+
+            StringWriter writer = new StringWriter();
+            assertTrue(formatter.formatCompressed(new ByteArrayInputStream(input), writer));
+            assertEquals(expected, writer.toString());
+
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            assertTrue(formatter.formatCompressed(new ByteArrayInputStream(input), Channels.newChannel(bytes)));
+            assertEquals(expected, new String(bytes.toByteArray(), "UTF-8"));
+        }
+    }
+
+    @Test
+    public void formatCompressed_readsAllGzipMembers() throws Exception {
+        String json = "[\"first\", \"second\", \"caf\u00e9\"]";
+        byte[] bytes = utf8(json);
+        int split = json.indexOf("caf") + 3;
+
+        byte[] first = gzip(Arrays.copyOfRange(bytes, 0, split));
+        byte[] second = gzip(Arrays.copyOfRange(bytes, split, bytes.length));
+        byte[] input = concat(first, second);
+
+        JsonFormatter formatter = JsonFormatter.getCompactFormatter();
+        assertEquals("[\"first\",\"second\",\"caf\u00e9\"]", formatter.formatCompressed(new ByteArrayInputStream(input)));
+        assertEquals("[\"first\",\"second\",\"caf\u00e9\"]", formatter.formatCompressed(new TrickleInputStream(input, 3)));
+    }
+
+    @Test
+    public void read_readsShortMembersAndIgnoresTrailingData() throws Exception {
+        StringBuilder json = new StringBuilder();
+        byte[] input = new byte[0];
+        for (int i = 0; i < 50; i++) {
+            json.append(i);
+            input = concat(input, gzip(utf8(String.valueOf(i))));
+        }
+        input = concat(input, new byte[]{0, 0, 0, 0});
+
+        for (InputStream source : new InputStream[]{new ByteArrayInputStream(input), new TrickleInputStream(input, 5)}) {
+            JsonInflater inflater = new JsonInflater(source);
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            int read;
+            while ((read = inflater.read()) != -1) {
+                bytes.write(read);
+            }
+
+            assertEquals(json.toString(), new String(bytes.toByteArray(), "UTF-8"));
+            assertEquals(-1, inflater.read());
+            inflater.close();
+        }
+    }
+
+    @Test
+    public void formatCompressed_skipsOptionalHeaderFields() throws Exception {
+        JsonFormatter formatter = JsonFormatter.getCompactFormatter();
+
+        assertEquals("[1]", formatter.formatCompressed(new ByteArrayInputStream(withHeaderFields(gzip(utf8("[1]"))))));
+        byte[] members = concat(gzip(utf8("[1,")), withHeaderFields(gzip(utf8("2]"))));
+        assertEquals("[1,2]", formatter.formatCompressed(new ByteArrayInputStream(members)));
+        assertEquals("[1,2]", formatter.formatCompressed(new TrickleInputStream(members, 2)));
+
+        // the header CRC is the last field of the header
+        byte[] badCrc = withHeaderFields(gzip(utf8("[1]")));
+        badCrc[30] ^= 0x01;
+        assertEquals("", formatter.formatCompressed(new ByteArrayInputStream(badCrc)));
+    }
+
+    @Test
+    public void formatCompressed_failsOnCorruptInput() throws Exception {
+        byte[] input = gzip(utf8("[1, 2, 3]"));
+        JsonFormatter formatter = JsonFormatter.getCompactFormatter();
+
+        // the CRC of the member is in the first four bytes of the trailer
+        byte[] badCrc = input.clone();
+        badCrc[badCrc.length - 8] ^= 0x01;
+        assertEquals("", formatter.formatCompressed(new ByteArrayInputStream(badCrc)));
+
+        byte[] badSize = input.clone();
+        badSize[badSize.length - 4] ^= 0x01;
+        assertEquals("", formatter.formatCompressed(new ByteArrayInputStream(badSize)));
+
+        byte[] truncated = Arrays.copyOf(input, input.length - 10);
+        assertEquals("", formatter.formatCompressed(new ByteArrayInputStream(truncated)));
+
+        byte[] zlib = zlib(utf8("[1, 2, 3]"));
+        assertEquals("", formatter.formatCompressed(new ByteArrayInputStream(Arrays.copyOf(zlib, zlib.length - 6))));
+
+        StringWriter writer = new StringWriter();
+        assertFalse(formatter.formatCompressed(new ByteArrayInputStream(badCrc), writer));
+    }
+
+    @Test
+    public void formatCompressed_passesPlainInputThrough() throws Exception {
+        JsonFormatter formatter = JsonFormatter.getCompactFormatter();
+
+        assertEquals("[1,2]", formatter.formatCompressed(new ByteArrayInputStream(utf8(" [1, 2] "))));
+        assertEquals("42", formatter.formatCompressed(new ByteArrayInputStream(utf8("42"))));
+        // '8' followed by '0' passes the header checksum of zlib, but not its flags
+        assertEquals("80", formatter.formatCompressed(new ByteArrayInputStream(utf8("80"))));
+        assertEquals("8", formatter.formatCompressed(new ByteArrayInputStream(utf8("8"))));
+        assertEquals("", formatter.formatCompressed(new ByteArrayInputStream(new byte[0])));
+        assertEquals("", formatter.formatCompressed(new ByteArrayInputStream(utf8("[1, x]"))));
+        assertEquals("", formatter.formatCompressed(null));
+    }
+
+    @Test
+    public void formatCompressed_skipsAByteOrderMark() throws Exception {
+        JsonFormatter formatter = JsonFormatter.getCompactFormatter();
+        byte[] json = concat(BOM, utf8("{\"a\": \"\u00e9\"}"));
+
+        assertEquals("{\"a\":\"\u00e9\"}", formatter.formatCompressed(new ByteArrayInputStream(json)));
+        assertEquals("{\"a\":\"\u00e9\"}", formatter.formatCompressed(new ByteArrayInputStream(gzip(json))));
+        assertEquals("{\"a\":\"\u00e9\"}", formatter.formatCompressed(new ByteArrayInputStream(zlib(json))));
+
+        // a bare value may be shorter than a byte order mark
+        assertEquals("1", formatter.formatCompressed(new ByteArrayInputStream(gzip(utf8("1")))));
+    }
+
+    @Test
+    public void close_leavesTheSourceOpen() throws Exception {
+        CloseTrackingInputStream source = new CloseTrackingInputStream(gzip(utf8("[1]")));
+        assertEquals("[1]", JsonFormatter.getCompactFormatter().formatCompressed(source));
+        assertFalse(source.closed);
+
+        source = new CloseTrackingInputStream(concat(zlib(utf8("[1]")), utf8("rest")));
+        JsonInflater inflater = new JsonInflater(source);
+        assertEquals('[', inflater.read());
+        inflater.close();
+        assertFalse(source.closed);
+
+        try {
+            inflater.read();
+            fail();
+        } catch (IOException e) {
+            assertEquals("Stream closed", e.getMessage());
+        }
+    }
+
+    @Test
+    public void read_returnsTheInflatedBytes() throws Exception {
+        byte[] json = utf8(JsonFormatterTest.largeArray(100));
+        JsonInflater inflater = new JsonInflater(new TrickleInputStream(gzip(json), 7));
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        byte[] buffer = new byte[100];
+        int read;
+        while ((read = inflater.read(buffer, 0, buffer.length)) != -1) {
+            bytes.write(buffer, 0, read);
+        }
+        inflater.close();
+
+        assertArrayEquals(json, bytes.toByteArray());
+        assertFalse(inflater.markSupported());
+    }
+
+    private static byte[] utf8(String text) throws IOException {
+        return text.getBytes("UTF-8");
+    }
+
+    private static byte[] gzip(byte[] data) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        GZIPOutputStream out = new GZIPOutputStream(bytes);
+        out.write(data);
+        out.close();
+        return bytes.toByteArray();
+    }
+
+    /**
+     * @return the gzip member with an extra field, a file name, a comment and a header CRC
+     * added to its header.
+     */
+    private static byte[] withHeaderFields(byte[] member) throws IOException {
+        ByteArrayOutputStream header = new ByteArrayOutputStream();
+        header.write(member, 0, 10);
+        header.write(new byte[]{3, 0, 'x', 'y', 'z'});
+        header.write(utf8("a.json\0comment\0"));
+        byte[] fields = header.toByteArray();
+        fields[3] = 2 | 4 | 8 | 16;
+
+        CRC32 crc = new CRC32();
+        crc.update(fields);
+        byte[] headerCrc = {(byte) crc.getValue(), (byte) (crc.getValue() >> 8)};
+
+        return concat(concat(fields, headerCrc), Arrays.copyOfRange(member, 10, member.length));
+    }
+
+    private static byte[] zlib(byte[] data) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DeflaterOutputStream out = new DeflaterOutputStream(bytes);
+        out.write(data);
+        out.close();
+        return bytes.toByteArray();
+    }
+
+    private static byte[] concat(byte[] first, byte[] second) {
+        byte[] bytes = Arrays.copyOf(first, first.length + second.length);
+        System.arraycopy(second, 0, bytes, first.length, second.length);
+        return bytes;
+    }
+
+    /**
+     * Returns at most a few bytes per read, like a slow network stream.
+     */
+    static class TrickleInputStream extends FilterInputStream {
+        private final int step;
+
+        TrickleInputStream(byte[] bytes, int step) {
+            super(new ByteArrayInputStream(bytes));
+            this.step = step;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            return super.read(buffer, offset, Math.min(length, step));
+        }
+
+        @Override
+        public int available() {
+            return 0;
+        }
+    }
+
+    private static class CloseTrackingInputStream extends ByteArrayInputStream {
+        boolean closed;
+
+        CloseTrackingInputStream(byte[] bytes) {
+            super(bytes);
+        }
+
+        @Override
+        public void close() throws IOException {
+            closed = true;
+            super.close();
+        }
+    }
+}
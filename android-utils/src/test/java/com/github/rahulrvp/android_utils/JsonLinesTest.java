@@ -0,0 +1,95 @@
+package com.github.rahulrvp.android_utils;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.StringReader;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests of {@link JsonLines}.
+ */
+public class JsonLinesTest {
+
+    @Test
+    public void lines_matchTheFormattedText() throws Exception {
+        String text = JsonFormatter.getStringFormatter().format(JsonFormatterTest.SAMPLE);
+        String[] expected = text.split("\n");
+
+        JsonLines lines = JsonFormatter.getStringFormatter().formatLines(JsonFormatterTest.SAMPLE);
+        int[] depths = {0, 1, 2, 2, 2, 2, 1, 1, 1, 0};
+        for (int i = 0; i < expected.length; i++) {
+            assertEquals(expected[i], text.substring(lines.getLineStart(i), lines.getLineEnd(i)));
+            assertEquals(depths[i], lines.getDepth(i));
+        }
+
+        assertEquals(-1, lines.getLineStart(expected.length));
+        assertNull(lines.getLine(expected.length));
+        assertTrue(lines.isComplete());
+        assertEquals(expected.length, lines.getLineCount());
+        assertNull(lines.getErrorMessage());
+    }
+
+    @Test
+    public void lines_areFormattedLazily() throws Exception {
+        final int[] read = new int[1];
+        String json = JsonFormatterTest.largeArray(100000);
+        JsonLines lines = JsonFormatter.getStringFormatter().formatLines(new StringReader(json) {
+            @Override
+            public int read(char[] buffer, int offset, int length) throws IOException {
+                int count = super.read(buffer, offset, length);
+                read[0] += Math.max(0, count);
+                return count;
+            }
+        });
+
+        assertEquals(2, lines.getDepth(2));
+        assertFalse(lines.isComplete());
+        assertTrue(read[0] < json.length() / 10);
+
+        int added = lines.formatMore(100);
+        assertEquals(100, added);
+        assertTrue(lines.getLineCount() >= 100);
+        assertFalse(lines.isComplete());
+    }
+
+    @Test
+    public void lines_keptBeforeAnError() throws Exception {
+        JsonLines lines = JsonFormatter.getStringFormatter().formatLines("[\n1,\n2,\nx]");
+
+        assertEquals(-1, lines.getDepth(10));
+        assertTrue(lines.isComplete());
+        assertEquals("Unexpected character 'x' at line 4 column 1", lines.getErrorMessage());
+        assertEquals(3, lines.getLineCount());
+        assertEquals(1, lines.getDepth(2));
+    }
+
+    @Test
+    public void lines_areFormattedAgainOnceDropped() throws Exception {
+        String json = JsonFormatterTest.largeArray(20000);
+        JsonFormatter formatter = new JsonFormatter.Builder(JsonFormatter.getStringFormatter())
+                .addMaskPath("[*].name")
+                .setMaxStringLength(20)
+                .build();
+        String text = formatter.format(json);
+        String[] expected = text.split("\n");
+
+        for (JsonLines lines : new JsonLines[]{formatter.formatLines(json), formatter.formatLines(new StringReader(json))}) {
+            for (int i = 0; i < expected.length; i++) {
+                assertEquals(expected[i], lines.getPlainLine(i));
+            }
+            assertTrue(lines.isComplete());
+            assertEquals(expected.length, lines.getLineCount());
+
+            // only a window of the text is held, the rest is formatted again from a checkpoint
+            assertTrue(lines.getHeldLength() < text.length() / 10);
+            int third = expected.length / 3;
+            for (int i : new int[]{0, 1, third, third + 500, third - 1, expected.length - 1, 5}) {
+                assertEquals(expected[i], lines.getPlainLine(i));
+                assertEquals(expected[i], text.substring(lines.getLineStart(i), lines.getLineEnd(i)));
+                assertTrue(lines.getHeldLength() < text.length() / 10);
+            }
+        }
+    }
+}
@@ -0,0 +1,114 @@
+package com.github.rahulrvp.android_utils;
+
+import android.text.Spanned;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests of {@link JsonOutput}.
+ */
+public class JsonOutputTest {
+
+    @Test
+    public void toString_collectsEverythingWithoutTarget() throws Exception {
+        JsonOutput output = new JsonOutput();
+        output.append("ab").append('c').append(1L).append(true).append("xyz", 1, 2);
+        output.checkpoint();
+        output.finish();
+
+        assertEquals("abc1truey", output.toString());
+        assertEquals(9, output.size());
+    }
+
+    @Test
+    public void checkpoint_handsOverChunksToTheTarget() throws Exception {
+        StringWriter writer = new StringWriter();
+        final List<String> chunks = new ArrayList<String>();
+        JsonOutput output = new JsonOutput(writer, new JsonFormatter.ChunkListener() {
+            @Override
+            public void onChunk(CharSequence chunk) {
+                chunks.add(chunk.toString());
+            }
+        });
+
+        StringBuilder expected = new StringBuilder();
+        for (int i = 0; i < 3000; i++) {
+            String token = "token" + i + ",";
+            output.append(token);
+            output.checkpoint();
+            expected.append(token);
+        }
+        assertTrue(output.length() < JsonOutput.DEFAULT_CHUNK_SIZE);
+        assertEquals(expected.length(), output.size());
+
+        output.finish();
+        assertEquals(expected.toString(), writer.toString());
+        assertTrue(chunks.size() > 1);
+
+        StringBuilder joined = new StringBuilder();
+        for (String chunk : chunks) {
+            // chunks are only cut between tokens
+            assertTrue(chunk.endsWith(","));
+            joined.append(chunk);
+        }
+        assertEquals(expected.toString(), joined.toString());
+    }
+
+    @Test
+    public void discard_dropsTheBufferedOutput() throws Exception {
+        StringBuilder target = new StringBuilder();
+        JsonOutput output = new JsonOutput(target, null);
+        output.append("partial");
+        output.discard();
+        output.finish();
+
+        assertEquals("", target.toString());
+    }
+
+    @Test(expected = IOException.class)
+    public void checkpoint_stopsOnInterrupt() throws Exception {
+        JsonOutput output = new JsonOutput();
+        output.stopOnInterrupt();
+
+        Thread.currentThread().interrupt();
+        try {
+            output.checkpoint();
+        } finally {
+            Thread.interrupted();
+        }
+    }
+
+    @Test
+    public void toText_onlyCreatesSpannedTextOverSpans() throws Exception {
+        JsonOutput output = new JsonOutput();
+        output.append("  ");
+        output.append("key");
+        output.addSpan(2, 5, 0xff0000ff, false);
+        output.append(" : ");
+
+        assertTrue(output.toText() instanceof Spanned);
+        assertTrue(output.toText(2, 4) instanceof Spanned);
+        assertEquals("  ", output.toText(0, 2));
+        assertEquals(" : ", output.toText(5, 8));
+
+        output.discard();
+        output.append("plain");
+        assertEquals("plain", output.toText());
+    }
+
+    @Test
+    public void addSpan_ignoredWhenStreaming() throws Exception {
+        JsonOutput output = new JsonOutput(new StringBuilder(), null);
+        output.append("key");
+        output.addSpan(0, 3, 0xff0000ff, true);
+
+        assertEquals("key", output.toText());
+    }
+}
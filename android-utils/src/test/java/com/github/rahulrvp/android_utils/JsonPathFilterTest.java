@@ -0,0 +1,95 @@
+package com.github.rahulrvp.android_utils;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests of {@link JsonPathFilter}, through the include, exclude and mask paths of
+ * {@link JsonFormatter.Builder}.
+ */
+public class JsonPathFilterTest {
+
+    private static final String JSON = "{\"user\": {\"name\": \"n\", \"phone\": \"123\", \"tags\": [1, 2]}, "
+            + "\"address\": [{\"city\": \"a\", \"zip\": 1}, {\"city\": \"b\", \"zip\": 2}], \"items\": [10, 20, 30]}";
+
+    @Test
+    public void includePath_keepsOnlyTheWayToTheIncludedMembers() throws Exception {
+        assertEquals("{\"address\":[{\"city\":\"a\"},{\"city\":\"b\"}]}",
+                compact().addIncludePath("address[*].city").build().format(JSON));
+        assertEquals("{\"user\":{\"name\":\"n\",\"phone\":\"123\",\"tags\":[1,2]},\"items\":[20]}",
+                compact().addIncludePath("$.user").addIncludePath("items[1]").build().format(JSON));
+        assertEquals("{}", compact().addIncludePath("nothing").build().format(JSON));
+    }
+
+    @Test
+    public void includePath_dropsScalarsOnTheWay() throws Exception {
+        JsonFormatter formatter = compact().addIncludePath("a.b").build();
+        assertEquals("{}", formatter.format("{\"a\": 1, \"c\": 2}"));
+        assertEquals("{\"a\":{\"b\":1}}", formatter.format("{\"a\": {\"b\": 1, \"d\": 2}, \"c\": 2}"));
+
+        formatter = compact().addIncludePath("items[*].id").build();
+        String json = "{\"items\": [1, {\"id\": 2, \"n\": 3}, [4]]}";
+        assertEquals("{\"items\":[{\"id\":2},[]]}", formatter.format(json));
+        assertEquals(formatter.format(json), formatter.format(new JSONObject(json)));
+    }
+
+    @Test
+    public void excludePath_leavesMembersOut() throws Exception {
+        assertEquals("{\"user\":{\"name\":\"n\",\"tags\":[1,2]},\"address\":[{\"zip\":1},{\"zip\":2}],\"items\":[10,30]}",
+                compact().addExcludePath("$.user.phone").addExcludePath("address[*].city").addExcludePath("items[1]")
+                        .build().format(JSON));
+        assertEquals("{\"user\":{\"name\":\"n\",\"phone\":\"123\"}}",
+                compact().addIncludePath("user").addExcludePath("user.tags").build().format(JSON));
+    }
+
+    @Test
+    public void maskPath_replacesValues() throws Exception {
+        String formatted = new JsonFormatter.Builder().addMaskPath("user.phone").addMaskPath("address").build().format(JSON);
+
+        assertTrue(formatted.contains("\t\t\"phone\" : \"***\",\n"));
+        assertTrue(formatted.contains("\t\"address\" : \"***\",\n"));
+        assertFalse(formatted.contains("123"));
+        assertFalse(formatted.contains("city"));
+    }
+
+    @Test
+    public void wildcards_matchAnyKeyOrElement() throws Exception {
+        assertEquals("{\"user\":{\"name\":\"n\"},\"address\":[],\"items\":[]}",
+                compact().addIncludePath("*.name").build().format(JSON));
+        assertEquals("{\"user\":{\"name\":\"n\",\"phone\":\"123\",\"tags\":[]},\"address\":[{\"city\":\"a\"},{\"city\":\"b\"}],\"items\":[10,20,30]}",
+                compact().addExcludePath("*.*.zip").addExcludePath("user.tags[*]").build().format(JSON));
+    }
+
+    @Test
+    public void paths_applyToJsonTrees() throws Exception {
+        String json = "[{\"a\": 1, \"b\": [2, 3]}, {\"a\": 4}]";
+        JsonFormatter formatter = new JsonFormatter.Builder().addMaskPath("[0].a").addExcludePath("[*].b[0]").build();
+
+        assertEquals(formatter.format(json), formatter.format(new JSONArray(json)));
+    }
+
+    @Test
+    public void paths_skippedContentIsStillValidated() throws Exception {
+        assertEquals("", compact().addExcludePath("a").build().format("{\"a\": [1, x], \"b\": 2}"));
+    }
+
+    @Test
+    public void addPath_rejectsInvalidPaths() throws Exception {
+        String[] paths = {null, "", "$", "a..b", "a.", "a[", "a[x]", "a[-1]", "[]"};
+        for (String path : paths) {
+            try {
+                new JsonFormatter.Builder().addIncludePath(path);
+                fail(path);
+            } catch (IllegalArgumentException e) {
+                // expected
+            }
+        }
+    }
+
+    private static JsonFormatter.Builder compact() {
+        return new JsonFormatter.Builder().setOutputFormat(JsonFormatter.COMPACT);
+    }
+}
@@ -0,0 +1,87 @@
+package com.github.rahulrvp.android_utils;
+
+import org.junit.Test;
+
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests of {@link JsonRecords}, through
+ * {@link JsonFormatter#formatRecords(java.io.Reader, Appendable, JsonFormatter.RecordListener)}.
+ */
+public class JsonRecordsTest {
+
+    @Test
+    public void formatRecords_formatsEveryLine() throws Exception {
+        String input = "{\"a\": 1}\n42\n\"ok\"\nnull\n\n  \n[true]\r\n";
+        StringWriter output = new StringWriter();
+
+        assertTrue(JsonFormatter.getStringFormatter().formatRecords(new StringReader(input), output, null));
+        assertEquals("{\n\t\"a\" : 1\n}\n42\n\"ok\"\nnull\n[\n\ttrue\n]\n", output.toString());
+
+        output = new StringWriter();
+        assertTrue(JsonFormatter.getCompactFormatter().formatRecords(new StringReader(input), output, null));
+        assertEquals("{\"a\":1}\n42\n\"ok\"\nnull\n[true]\n", output.toString());
+    }
+
+    @Test
+    public void formatRecords_reportsInvalidLines() throws Exception {
+        String input = "[1]\n[1, 2\n\n{\"a\": x}\n3\n";
+        final List<String> invalid = new ArrayList<String>();
+        final Thread caller = Thread.currentThread();
+
+        StringWriter output = new StringWriter();
+        assertTrue(JsonFormatter.getCompactFormatter().formatRecords(new StringReader(input), output,
+                new JsonFormatter.RecordListener() {
+                    @Override
+                    public void onInvalidRecord(long line, String record, JsonFormatter.Result error) {
+                        assertSame(caller, Thread.currentThread());
+                        invalid.add(line + ":" + record + ":" + error.getErrorColumn());
+                    }
+                }));
+
+        assertEquals("[1]\n3\n", output.toString());
+        assertEquals(2, invalid.size());
+        assertEquals("2:[1, 2:6", invalid.get(0));
+        assertEquals("4:{\"a\": x}:7", invalid.get(1));
+    }
+
+    @Test
+    public void formatRecords_keepsTheOrderAcrossBatches() throws Exception {
+        StringBuilder input = new StringBuilder();
+        StringBuilder expected = new StringBuilder();
+        for (int i = 0; i < 5000; i++) {
+            String record = i % 1000 == 999 ? "[" + i : "{\"id\":" + i + ",\"name\":\"record " + i + "\"}";
+            input.append(record).append('\n');
+            if (i % 1000 != 999) {
+                expected.append(record).append('\n');
+            }
+        }
+
+        final List<Long> invalid = new ArrayList<Long>();
+        StringWriter output = new StringWriter();
+        assertTrue(JsonFormatter.getCompactFormatter().formatRecords(new StringReader(input.toString()), output,
+                new JsonFormatter.RecordListener() {
+                    @Override
+                    public void onInvalidRecord(long line, String record, JsonFormatter.Result error) {
+                        invalid.add(line);
+                    }
+                }));
+
+        assertEquals(expected.toString(), output.toString());
+        assertEquals("[1000, 2000, 3000, 4000, 5000]", invalid.toString());
+    }
+
+    @Test
+    public void formatRecords_withoutInput() throws Exception {
+        StringWriter output = new StringWriter();
+
+        assertFalse(JsonFormatter.getStringFormatter().formatRecords(null, output, null));
+        assertTrue(JsonFormatter.getStringFormatter().formatRecords(new StringReader(""), output, null));
+        assertEquals("", output.toString());
+    }
+}
@@ -0,0 +1,95 @@
+package com.github.rahulrvp.android_utils;
+
+import org.json.JSONArray;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests of {@link JsonSplitter} and parallel formatting.
+ */
+public class JsonSplitterTest {
+
+    @Test
+    public void scan_findsTopLevelMembers() throws Exception {
+        JsonSplitter splitter = JsonSplitter.scan(" {\"a\": [1, 2], \"b,\": {\"c\": 3}, \"d\": \"}\"} \n");
+
+        assertNotNull(splitter);
+        assertTrue(splitter.object);
+        assertEquals(3, splitter.count);
+
+        splitter = JsonSplitter.scan("[[], {}, \"\\\"]\", 4]");
+        assertFalse(splitter.object);
+        assertEquals(4, splitter.count);
+
+        assertEquals(0, JsonSplitter.scan("[ ]").count);
+    }
+
+    @Test
+    public void scan_leavesOtherInputToTheSequentialFormatter() throws Exception {
+        assertNull(JsonSplitter.scan("42"));
+        assertNull(JsonSplitter.scan("[1, 2"));
+        assertNull(JsonSplitter.scan("[\"1, 2]"));
+        assertNull(JsonSplitter.scan("[1] x"));
+    }
+
+    @Test
+    public void scan_rejectsMismatchedBrackets() throws Exception {
+        try {
+            JsonSplitter.scan("[1,2,3}");
+            fail();
+        } catch (JsonTokenizer.SyntaxException e) {
+            assertEquals(6, e.offset);
+        }
+
+        try {
+            JsonSplitter.scan("{\"a\":1,\n \"b\":2]");
+            fail();
+        } catch (JsonTokenizer.SyntaxException e) {
+            assertEquals(2, e.line);
+            assertEquals(7, e.column);
+        }
+    }
+
+    @Test
+    public void format_parallelMatchesSequential() throws Exception {
+        String array = JsonFormatterTest.largeArray(5000);
+        String object = "{" + array.substring(1, array.length() - 1).replaceAll("\\{\"id\": (\\d+)", "\"k$1\": {\"id\": $1") + "}";
+
+        int[] formats = {JsonFormatter.STRING, JsonFormatter.HTML, JsonFormatter.HTML_CSS, JsonFormatter.COMPACT};
+        for (int format : formats) {
+            JsonFormatter sequential = new JsonFormatter.Builder().setOutputFormat(format).build();
+            JsonFormatter parallel = new JsonFormatter.Builder().setOutputFormat(format).setParallelThreshold(100).build();
+
+            assertEquals(sequential.format(array), parallel.format(array));
+            assertEquals(sequential.format(object), parallel.format(object));
+
+            JSONArray tree = new JSONArray(array);
+            assertEquals(sequential.format(tree), parallel.format(tree));
+        }
+    }
+
+    @Test
+    public void format_parallelErrorsMatchSequential() throws Exception {
+        JsonFormatter sequential = JsonFormatter.getStringFormatter();
+        JsonFormatter parallel = new JsonFormatter.Builder().setParallelThreshold(2).build();
+
+        String[] inputs = {
+                "[1,2,3}",
+                "{\"a\":1,\n \"b\":2]",
+                "[1,\n2,\n[3}, 4]",
+                "[1, 2, 3, x, 5]",
+                "{\"a\": 1, \"b\" 2, \"c\": 3}",
+        };
+        for (String input : inputs) {
+            JsonFormatter.Result expected = sequential.tryFormat(input);
+            JsonFormatter.Result actual = parallel.tryFormat(input);
+
+            assertFalse(input, actual.isValid());
+            assertEquals(input, expected.getErrorMessage(), actual.getErrorMessage());
+            assertEquals(input, expected.getErrorOffset(), actual.getErrorOffset());
+            assertEquals(input, expected.getErrorLine(), actual.getErrorLine());
+            assertEquals(input, expected.getErrorColumn(), actual.getErrorColumn());
+        }
+    }
+}
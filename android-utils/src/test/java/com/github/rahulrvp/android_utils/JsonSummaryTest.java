@@ -0,0 +1,159 @@
+package com.github.rahulrvp.android_utils;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.Test;
+
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.Locale;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests of {@link JsonSummary}, through {@link JsonFormatter#formatSummary(java.io.Reader)}.
+ */
+public class JsonSummaryTest {
+
+    private static final String USERS = "{\"users\": [{\"id\": 1, \"name\": \"a\", \"score\": 1.50}, "
+            + "{\"id\": 20, \"name\": \"bbb\", \"tags\": [], \"score\": null}, {\"id\": -3e2, \"name\": \"cc\", \"ok\": true}], "
+            + "\"meta\": {\"count\": 3}}";
+
+    @Test
+    public void formatSummary_countsValuesByPath() throws Exception {
+        JSONObject summary = summarize(JsonFormatter.getCompactFormatter(), USERS);
+
+        assertEquals(1, summary.getInt("count"));
+        assertEquals(1, summary.getJSONObject("types").getInt("object"));
+
+        JSONObject users = summary.getJSONObject("keys").getJSONObject("users");
+        assertEquals(3, users.getInt("minItems"));
+        assertEquals(3, users.getInt("maxItems"));
+
+        JSONObject items = users.getJSONObject("items");
+        assertEquals(3, items.getInt("count"));
+
+        JSONObject keys = items.getJSONObject("keys");
+        assertEquals(5, keys.length());
+
+        JSONObject id = keys.getJSONObject("id");
+        assertEquals(3, id.getJSONObject("types").getInt("number"));
+
+        JSONObject score = keys.getJSONObject("score");
+        assertEquals(2, score.getInt("count"));
+        assertEquals(1, score.getJSONObject("types").getInt("null"));
+
+        JSONObject name = keys.getJSONObject("name");
+        assertEquals(1, name.getInt("minLength"));
+        assertEquals(3, name.getInt("maxLength"));
+
+        assertEquals(1, keys.getJSONObject("ok").getJSONObject("types").getInt("boolean"));
+        assertFalse(name.has("samples"));
+    }
+
+    @Test
+    public void formatSummary_keepsKeyOrderAndNumberLiterals() throws Exception {
+        String summary = JsonFormatter.getCompactFormatter().formatSummary(new StringReader(USERS)).toString();
+
+        int id = summary.indexOf("\"id\":{");
+        int name = summary.indexOf("\"name\":{");
+        int score = summary.indexOf("\"score\":{");
+        int tags = summary.indexOf("\"tags\":{");
+        int ok = summary.indexOf("\"ok\":{");
+        assertTrue(0 < id && id < name && name < score && score < tags && tags < ok);
+
+        assertTrue(summary.contains("\"min\":-3e2,\"max\":20"));
+        assertTrue(summary.contains("\"min\":1.50,\"max\":1.50"));
+    }
+
+    @Test
+    public void formatSummary_samplesAreRepeatable() throws Exception {
+        JsonFormatter formatter = new JsonFormatter.Builder().setSummarySamples(2).setOutputFormat(JsonFormatter.COMPACT).build();
+
+        String summary = formatter.formatSummary(new StringReader(USERS)).toString();
+        assertEquals(summary, formatter.formatSummary(new StringReader(USERS)).toString());
+
+        JSONArray samples = new JSONObject(summary).getJSONObject("keys").getJSONObject("users")
+                .getJSONObject("items").getJSONObject("keys").getJSONObject("name").getJSONArray("samples");
+        assertEquals(2, samples.length());
+        assertTrue("[\"a\",\"bbb\",\"cc\"]".contains("\"" + samples.getString(0) + "\""));
+        assertTrue("[\"a\",\"bbb\",\"cc\"]".contains("\"" + samples.getString(1) + "\""));
+    }
+
+    @Test
+    public void formatSummary_keepsTheLengthOfLongStrings() throws Exception {
+        StringBuilder value = new StringBuilder();
+        for (int i = 0; i < 3000; i++) {
+            value.append((char) ('a' + i % 26));
+        }
+        JsonFormatter formatter = new JsonFormatter.Builder().setSummarySamples(1).setOutputFormat(JsonFormatter.COMPACT).build();
+
+        JSONObject summary = summarize(formatter, "[\"" + value + "\"]").getJSONObject("items");
+        assertEquals(3000, summary.getInt("minLength"));
+        assertEquals(3000, summary.getInt("maxLength"));
+        assertEquals(value.substring(0, 80) + "\u2026", summary.getJSONArray("samples").getString(0));
+    }
+
+    @Test
+    public void formatSummary_limitsTheKeysOfAPath() throws Exception {
+        StringBuilder json = new StringBuilder("{");
+        for (int i = 0; i < 1005; i++) {
+            json.append(i == 0 ? "" : ",").append("\"k").append(i).append("\":").append(i);
+        }
+        json.append('}');
+
+        JSONObject summary = summarize(JsonFormatter.getCompactFormatter(), json.toString());
+        assertEquals(1000, summary.getJSONObject("keys").length());
+        assertEquals(5, summary.getInt("otherKeys"));
+    }
+
+    @Test
+    public void formatSummary_appliesPathRules() throws Exception {
+        JsonFormatter formatter = new JsonFormatter.Builder().setOutputFormat(JsonFormatter.COMPACT)
+                .addExcludePath("meta").addMaskPath("users[*].name").setSummarySamples(3).build();
+
+        JSONObject summary = summarize(formatter, USERS);
+        assertFalse(summary.getJSONObject("keys").has("meta"));
+
+        JSONObject name = summary.getJSONObject("keys").getJSONObject("users").getJSONObject("items")
+                .getJSONObject("keys").getJSONObject("name");
+        assertEquals(3, name.getJSONObject("types").getInt("masked"));
+        assertFalse(name.has("samples"));
+        assertFalse(name.has("maxLength"));
+    }
+
+    @Test
+    public void formatSummary_doesNotDependOnTheLocale() throws Exception {
+        JsonFormatter formatter = new JsonFormatter.Builder().setSummarySamples(1).setOutputFormat(JsonFormatter.COMPACT).build();
+        String json = "[\"a\\u0001\", 1.5]";
+        String expected = formatter.formatSummary(new StringReader(json)).toString();
+        assertTrue(expected.contains("\"a\\u0001\""));
+
+        Locale locale = Locale.getDefault();
+        try {
+            Locale.setDefault(new Locale("ar", "EG"));
+            assertEquals(expected, formatter.formatSummary(new StringReader(json)).toString());
+            Locale.setDefault(Locale.GERMANY);
+            assertEquals(expected, formatter.formatSummary(new StringReader(json)).toString());
+        } finally {
+            Locale.setDefault(locale);
+        }
+    }
+
+    @Test
+    public void formatSummary_invalidInput() throws Exception {
+        JsonFormatter formatter = JsonFormatter.getStringFormatter();
+
+        assertEquals("", formatter.formatSummary(new StringReader("[1, 2")).toString());
+
+        StringWriter writer = new StringWriter();
+        assertFalse(formatter.formatSummary(new StringReader("{\"a\" 1}"), writer));
+        assertTrue(formatter.formatSummary(new StringReader("42"), writer));
+        assertEquals("{\n\t\"count\" : 1,\n\t\"types\" : {\n\t\t\"number\" : 1\n\t},\n\t\"min\" : 42,\n\t\"max\" : 42\n}",
+                writer.toString());
+    }
+
+    private static JSONObject summarize(JsonFormatter formatter, String json) throws Exception {
+        return new JSONObject(formatter.formatSummary(new StringReader(json)).toString());
+    }
+}
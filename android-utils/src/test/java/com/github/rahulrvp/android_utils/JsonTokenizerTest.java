@@ -0,0 +1,221 @@
+package com.github.rahulrvp.android_utils;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests of {@link JsonTokenizer}.
+ */
+public class JsonTokenizerTest {
+
+    @Test
+    public void next_reportsTokensInOrder() throws Exception {
+        JsonTokenizer tokenizer = new JsonTokenizer("{\"a\": [1, \"x\", true, null], \"b\": {}}", true);
+
+        assertEquals("{:0 a:5:1 [:1 7:2 6:2 8:2 9:2 ]:1 b:5:1 {:1 }:1 }:0 $", readAll(tokenizer));
+    }
+
+    @Test
+    public void next_readsAcrossReaderBuffers() throws Exception {
+        StringBuilder json = new StringBuilder("[");
+        for (int i = 0; i < 5000; i++) {
+            json.append(i == 0 ? "" : ", ").append("\"value \\u00e9 ").append(i).append('"');
+        }
+        json.append(']');
+
+        JsonTokenizer tokenizer = new JsonTokenizer(new TrickleReader(json.toString(), 3), true);
+        assertEquals(JsonTokenizer.BEGIN_ARRAY, tokenizer.next());
+        for (int i = 0; i < 5000; i++) {
+            assertEquals(JsonTokenizer.STRING, tokenizer.next());
+            assertEquals("value \u00e9 " + i, tokenizer.getValue().toString());
+        }
+        assertEquals(JsonTokenizer.END_ARRAY, tokenizer.next());
+        assertEquals(JsonTokenizer.END_DOCUMENT, tokenizer.next());
+    }
+
+    @Test
+    public void next_decodesEscapes() throws Exception {
+        JsonTokenizer tokenizer = new JsonTokenizer("[\"\\\"\\\\\\/\\b\\f\\n\\r\\t\\ud83d\\ude00\"]", true);
+
+        tokenizer.next();
+        assertEquals(JsonTokenizer.STRING, tokenizer.next());
+        assertEquals("\"\\/\b\f\n\r\t\ud83d\ude00", tokenizer.getValue().toString());
+    }
+
+    @Test
+    public void setRawStrings_keepsEscapes() throws Exception {
+        JsonTokenizer tokenizer = new JsonTokenizer("[\"a\\u0041\\n\"]", true);
+        tokenizer.setRawStrings(true);
+
+        tokenizer.next();
+        tokenizer.next();
+        assertEquals("a\\u0041\\n", tokenizer.getValue().toString());
+    }
+
+    @Test
+    public void next_rejectsControlCharactersInStrings() throws Exception {
+        for (String c : new String[]{"\n", "\r", "\t", "\u0000", "\u001f"}) {
+            try {
+                readAll(new JsonTokenizer("[\"x" + c + "y\"]", true));
+                fail();
+            } catch (JsonTokenizer.SyntaxException e) {
+                assertEquals("Unescaped control character", e.reason);
+                assertEquals(3, e.offset);
+            }
+        }
+
+        JsonTokenizer tokenizer = new JsonTokenizer("[\"x\\ny\u007f\"]", true);
+        tokenizer.next();
+        assertEquals(JsonTokenizer.STRING, tokenizer.next());
+        assertEquals("x\ny\u007f", tokenizer.getValue().toString());
+    }
+
+    @Test
+    public void next_handlesDeepNesting() throws Exception {
+        StringBuilder json = new StringBuilder();
+        for (int i = 0; i < 1000; i++) {
+            json.append('[');
+        }
+        for (int i = 0; i < 1000; i++) {
+            json.append(']');
+        }
+
+        JsonTokenizer tokenizer = new JsonTokenizer(json.toString(), true);
+        int maxDepth = 0;
+        while (tokenizer.next() != JsonTokenizer.END_DOCUMENT) {
+            maxDepth = Math.max(maxDepth, tokenizer.getDepth());
+        }
+        assertEquals(999, maxDepth);
+    }
+
+    @Test
+    public void next_acceptsBareValuesUnlessContainerRequired() throws Exception {
+        JsonTokenizer tokenizer = new JsonTokenizer(" -1.5e3 ", false);
+        assertEquals(JsonTokenizer.NUMBER, tokenizer.next());
+        assertEquals("-1.5e3", tokenizer.getValue().toString());
+        assertEquals(JsonTokenizer.END_DOCUMENT, tokenizer.next());
+
+        try {
+            new JsonTokenizer(" -1.5e3 ", true).next();
+            fail();
+        } catch (JsonTokenizer.SyntaxException e) {
+            assertEquals("Expected '{' or '['", e.reason);
+        }
+    }
+
+    @Test
+    public void next_rejectsContentAfterTheDocument() throws Exception {
+        JsonTokenizer tokenizer = new JsonTokenizer("{} []", true);
+        tokenizer.next();
+        tokenizer.next();
+
+        try {
+            tokenizer.next();
+            fail();
+        } catch (JsonTokenizer.SyntaxException e) {
+            assertEquals(3, e.offset);
+        }
+    }
+
+    @Test
+    public void next_reportsTheEndOfAnUnterminatedArray() throws Exception {
+        for (String json : new String[]{"[", "[ ", "{\"a\":["}) {
+            try {
+                readAll(new JsonTokenizer(json, true));
+                fail();
+            } catch (JsonTokenizer.SyntaxException e) {
+                assertEquals("Unexpected end of input", e.reason);
+                assertEquals(json.length(), e.offset);
+            }
+        }
+    }
+
+    @Test
+    public void forRange_reportsPositionsInTheWholeText() throws Exception {
+        String text = "{\n  \"a\": {\"b\": x},\n  \"c\": 1\n}";
+        int start = text.indexOf("{\"b\"");
+        JsonTokenizer tokenizer = JsonTokenizer.forRange(text, start, text.indexOf('}') + 1);
+
+        try {
+            readAll(tokenizer);
+            fail();
+        } catch (JsonTokenizer.SyntaxException e) {
+            assertEquals(text.indexOf('x'), e.offset);
+            assertEquals(2, e.line);
+            assertEquals(14, e.column);
+        }
+
+        text = "[\n  {\"a\":\n    y}]";
+        tokenizer = JsonTokenizer.forRange(text, text.indexOf('{'), text.length() - 1);
+        try {
+            readAll(tokenizer);
+            fail();
+        } catch (JsonTokenizer.SyntaxException e) {
+            assertEquals(3, e.line);
+            assertEquals(5, e.column);
+        }
+    }
+
+    private static String readAll(JsonTokenizer tokenizer) throws Exception {
+        List<String> tokens = new ArrayList<String>();
+        int token;
+        while ((token = tokenizer.next()) != JsonTokenizer.END_DOCUMENT) {
+            switch (token) {
+                case JsonTokenizer.BEGIN_OBJECT:
+                    tokens.add("{:" + tokenizer.getDepth());
+                    break;
+                case JsonTokenizer.END_OBJECT:
+                    tokens.add("}:" + tokenizer.getDepth());
+                    break;
+                case JsonTokenizer.BEGIN_ARRAY:
+                    tokens.add("[:" + tokenizer.getDepth());
+                    break;
+                case JsonTokenizer.END_ARRAY:
+                    tokens.add("]:" + tokenizer.getDepth());
+                    break;
+                case JsonTokenizer.NAME:
+                    tokens.add(tokenizer.getValue() + ":" + token + ":" + tokenizer.getDepth());
+                    break;
+                default:
+                    tokens.add(token + ":" + tokenizer.getDepth());
+            }
+        }
+        tokens.add("$");
+
+        StringBuilder text = new StringBuilder();
+        for (String item : tokens) {
+            text.append(text.length() > 0 ? " " : "").append(item);
+        }
+
+        return text.toString();
+    }
+
+    /**
+     * Returns at most a few chars per read, so that tokens are split between reads.
+     */
+    static class TrickleReader extends Reader {
+        private final Reader reader;
+        private final int step;
+
+        TrickleReader(String text, int step) {
+            this.reader = new StringReader(text);
+            this.step = step;
+        }
+
+        @Override
+        public int read(char[] buffer, int offset, int length) throws IOException {
+            return reader.read(buffer, offset, Math.min(length, step));
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
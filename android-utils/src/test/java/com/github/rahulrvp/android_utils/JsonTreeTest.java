@@ -0,0 +1,63 @@
+package com.github.rahulrvp.android_utils;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests of {@link JsonTree}.
+ */
+public class JsonTreeTest {
+
+    @Test
+    public void parse_buildsNodesInOrder() throws Exception {
+        JsonTree tree = parse("{\"a\": [1, \"x\"], \"b\": null}");
+
+        assertEquals(JsonTokenizer.BEGIN_OBJECT, tree.getType(JsonTree.ROOT));
+        assertEquals(2, tree.getChildCount(JsonTree.ROOT));
+
+        int a = tree.getFirstChild(JsonTree.ROOT);
+        assertEquals("a", tree.getKey(a));
+        assertTrue(tree.isContainer(a));
+        assertEquals(2, tree.getChildCount(a));
+        assertEquals("1", tree.getValue(tree.getFirstChild(a)));
+        assertEquals("x", tree.getValue(tree.getNextSibling(tree.getFirstChild(a))));
+
+        int b = tree.getNextSibling(a);
+        assertEquals("b", tree.getKey(b));
+        assertFalse(tree.isContainer(b));
+    }
+
+    @Test
+    public void hash_dependsOnArrayOrderOnly() throws Exception {
+        long hash = hash("{\"a\": [1, 2], \"b\": {\"c\": \"d\"}}");
+
+        assertEquals(hash, hash("{\"b\": {\"c\": \"d\"}, \"a\": [1, 2]}"));
+        assertNotEquals(hash, hash("{\"a\": [2, 1], \"b\": {\"c\": \"d\"}}"));
+        assertNotEquals(hash, hash("{\"a\": [1, 2], \"b\": {\"c\": \"e\"}}"));
+        assertNotEquals(hash, hash("{\"a\": [1, 2], \"c\": {\"c\": \"d\"}}"));
+        assertNotEquals(hash("[1]"), hash("[\"1\"]"));
+        assertNotEquals(hash("[[]]"), hash("[{}]"));
+    }
+
+    @Test
+    public void parse_handlesDeepNesting() throws Exception {
+        StringBuilder json = new StringBuilder();
+        for (int i = 0; i < 100000; i++) {
+            json.append('[');
+        }
+        for (int i = 0; i < 100000; i++) {
+            json.append(']');
+        }
+
+        assertEquals(1, parse(json.toString()).getChildCount(JsonTree.ROOT));
+    }
+
+    private static long hash(String json) throws Exception {
+        return parse(json).getHash(JsonTree.ROOT);
+    }
+
+    private static JsonTree parse(String json) throws Exception {
+        return JsonTree.parse(new JsonTokenizer(json, true));
+    }
+}
@@ -4,7 +4,6 @@ import android.content.Context;
 import android.os.AsyncTask;
 import android.os.Bundle;
 import android.support.v7.app.AppCompatActivity;
-import android.text.Html;
 import android.view.View;
 import android.widget.TextView;
 
@@ -14,6 +13,7 @@ import com.github.rahulrvp.android_utils.TextViewUtils;
 public class JsonActivity extends AppCompatActivity {
 
     private TextView mTextView;
+    private final JsonFormatter.LatestRequest mFormatRequest = new JsonFormatter.LatestRequest();
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
@@ -23,18 +23,26 @@ public class JsonActivity extends AppCompatActivity {
         mTextView = (TextView) findViewById(R.id.json_output_text);
     }
 
+    @Override
+    protected void onDestroy() {
+        mFormatRequest.cancel();
+        super.onDestroy();
+    }
+
+    private void showFormatted(JsonFormatter formatter, String json) {
+        mFormatRequest.set(formatter.formatAsync(json, new JsonFormatter.Callback() {
+            @Override
+            public void onFormatted(JsonFormatter.Result result) {
+                TextViewUtils.setText(mTextView, result.getText());
+            }
+        }));
+    }
+
     public void onParseColoredClicked(View view) {
         new JsonTask(this, new JsonTask.Callback() {
             @Override
             public void onReceive(String json) {
-                String formatted =
-                        new JsonFormatter
-                                .Builder()
-                                .setOutputFormat(JsonFormatter.HTML)
-                                .build()
-                                .format(json);
-
-                TextViewUtils.setText(mTextView, Html.fromHtml(formatted));
+                showFormatted(JsonFormatter.getSpannableFormatter(), json);
             }
         }).execute();
     }
@@ -43,8 +51,7 @@ public class JsonActivity extends AppCompatActivity {
         new JsonTask(this, new JsonTask.Callback() {
             @Override
             public void onReceive(String json) {
-                String formatted = new JsonFormatter.Builder().build().format(json);
-                TextViewUtils.setText(mTextView, formatted);
+                showFormatted(JsonFormatter.getStringFormatter(), json);
             }
         }).execute();
     }